@@ -0,0 +1,255 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.microsoftopentechnologies.intellij.components;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.TableView;
+import com.intellij.util.ui.ColumnInfo;
+import com.intellij.util.ui.ListTableModel;
+import com.microsoftopentechnologies.intellij.helpers.UIHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.BlobTransfer;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.BlobTransferManager;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lists the blob transfers of the transfer manager: the running ones, the queued ones and the
+// finished ones until they are cleared. Changes reported by the manager are coalesced into one
+// update of the table on the event dispatch thread; the progress of the running transfers is
+// repainted every second. The listener and the timer go away with the project.
+public class BlobTransfersToolWindowFactory implements ToolWindowFactory {
+    public static final String TOOL_WINDOW_ID = "Azure Blob Transfers";
+    private static final int REFRESH_INTERVAL_MS = 1000;
+
+    private TableView<BlobTransfer> table;
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        table = new TableView<BlobTransfer>(new ListTableModel<BlobTransfer>(NAME, STATUS, PROGRESS, THROUGHPUT,
+                TIME_LEFT, SIZE));
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent me) {
+                showPopup(me);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent me) {
+                showPopup(me);
+            }
+        });
+
+        toolWindow.getComponent().add(new JBScrollPane(table));
+
+        final BlobTransferManager.Listener listener = new BlobTransferManager.Listener() {
+            @Override
+            public void transfersChanged() {
+                if (updatePending.compareAndSet(false, true)) {
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            updatePending.set(false);
+                            updateTransfers();
+                        }
+                    });
+                }
+            }
+        };
+        BlobTransferManager.getManager().addListener(listener);
+
+        final Timer timer = new Timer(REFRESH_INTERVAL_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                table.repaint();
+            }
+        });
+        timer.start();
+
+        // the manager outlives the project
+        Disposer.register(project, new Disposable() {
+            @Override
+            public void dispose() {
+                BlobTransferManager.getManager().removeListener(listener);
+                timer.stop();
+            }
+        });
+
+        updateTransfers();
+    }
+
+    private void updateTransfers() {
+        List<BlobTransfer> selection = table.getSelectedObjects();
+
+        table.getListTableModel().setItems(BlobTransferManager.getManager().getTransfers());
+        table.setSelection(selection);
+    }
+
+    private void showPopup(@NotNull MouseEvent me) {
+        if (!me.isPopupTrigger()) {
+            return;
+        }
+
+        int row = table.rowAtPoint(me.getPoint());
+
+        if (row >= 0 && !table.isRowSelected(row)) {
+            table.setRowSelectionInterval(row, row);
+        }
+
+        JPopupMenu menu = new JPopupMenu();
+
+        JMenuItem cancelMenu = new JMenuItem("Cancel");
+        cancelMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                for (BlobTransfer transfer : table.getSelectedObjects()) {
+                    BlobTransferManager.getManager().cancel(transfer);
+                }
+            }
+        });
+        cancelMenu.setEnabled(hasUnfinishedSelection());
+
+        JMenuItem clearMenu = new JMenuItem("Clear Finished");
+        clearMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                BlobTransferManager.getManager().clearFinished();
+            }
+        });
+
+        menu.add(cancelMenu);
+        menu.add(clearMenu);
+        menu.show(me.getComponent(), me.getX(), me.getY());
+    }
+
+    private boolean hasUnfinishedSelection() {
+        for (BlobTransfer transfer : table.getSelectedObjects()) {
+            if (!transfer.isFinished()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @NotNull
+    private static String formatTime(long ms) {
+        long seconds = ms / 1000;
+
+        if (seconds >= 3600) {
+            return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+        }
+
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    private class ProgressBarRenderer implements TableCellRenderer {
+        private final JProgressBar progressBar = new JProgressBar();
+
+        public ProgressBarRenderer() {
+            progressBar.setMaximum(100);
+            progressBar.setStringPainted(true);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(@NotNull JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+            progressBar.setValue((Integer) value);
+            return progressBar;
+        }
+    }
+
+    private final ColumnInfo<BlobTransfer, String> NAME = new ColumnInfo<BlobTransfer, String>("Name") {
+        public String valueOf(BlobTransfer transfer) {
+            return transfer.getDirection() == BlobTransfer.Direction.Upload
+                    ? transfer.getFile().getName() + " to " + transfer.getStorageAccount().getName() + "/" +
+                    transfer.getBlobContainer().getName() + "/" + transfer.getBlobPath()
+                    : transfer.getStorageAccount().getName() + "/" + transfer.getBlobFile().getContainerName() + "/" +
+                    transfer.getBlobPath() + " to " + transfer.getFile().getPath();
+        }
+    };
+
+    private final ColumnInfo<BlobTransfer, String> STATUS = new ColumnInfo<BlobTransfer, String>("Status") {
+        public String valueOf(BlobTransfer transfer) {
+            BlobTransfer.State state = transfer.getState();
+
+            if (state == BlobTransfer.State.Failed) {
+                return "Failed: " + transfer.getErrorMessage();
+            } else if (state == BlobTransfer.State.Running) {
+                return transfer.getDirection() == BlobTransfer.Direction.Upload ? "Uploading" : "Downloading";
+            }
+
+            return state.toString();
+        }
+    };
+
+    private final ColumnInfo<BlobTransfer, Integer> PROGRESS = new ColumnInfo<BlobTransfer, Integer>("Progress") {
+        private TableCellRenderer renderer = new ProgressBarRenderer();
+
+        public Integer valueOf(BlobTransfer transfer) {
+            if (transfer.getState() == BlobTransfer.State.Completed) {
+                return 100;
+            }
+
+            return transfer.getTotalBytes() > 0
+                    ? (int) (transfer.getTransferredBytes() * 100 / transfer.getTotalBytes()) : 0;
+        }
+
+        public TableCellRenderer getRenderer(BlobTransfer transfer) {
+            return renderer;
+        }
+    };
+
+    private final ColumnInfo<BlobTransfer, String> THROUGHPUT = new ColumnInfo<BlobTransfer, String>("Speed") {
+        public String valueOf(BlobTransfer transfer) {
+            return transfer.getState() == BlobTransfer.State.Running && transfer.getThroughput() > 0
+                    ? UIHelper.readableFileSize(transfer.getThroughput()) + "/s" : "";
+        }
+    };
+
+    private final ColumnInfo<BlobTransfer, String> TIME_LEFT = new ColumnInfo<BlobTransfer, String>("Time Left") {
+        public String valueOf(BlobTransfer transfer) {
+            if (transfer.isFinished()) {
+                return formatTime(transfer.getElapsedTime()) + " elapsed";
+            }
+
+            long timeLeft = transfer.getTimeLeft();
+
+            return timeLeft >= 0 ? formatTime(timeLeft) : "";
+        }
+    };
+
+    private final ColumnInfo<BlobTransfer, String> SIZE = new ColumnInfo<BlobTransfer, String>("Size") {
+        public String valueOf(BlobTransfer transfer) {
+            return UIHelper.readableFileSize(transfer.getTotalBytes());
+        }
+    };
+}
@@ -25,6 +25,17 @@ public class PluginSettings {
     private String adAuthority;
     private String graphApiVersion;
     private String pluginVersion;
+    private int maxConnectionsPerHost;
+    private int maxParallelRequests;
+    private int maxParallelBlockTransfers;
+    private int blobListPageSize;
+    private int blobListPageWindow;
+    private int maxConcurrentTransfers;
+    private int maxTransfersPerAccount;
+    private long maxTransferBytesPerSecond;
+    private int maxParallelBlobDeletes;
+    private int maxParallelSubscriptions;
+    private int maxPrefetchedNodes;
 
     public String getClientId() {
         return clientId;
@@ -57,4 +68,48 @@ public class PluginSettings {
     public String getPluginVersion() {
         return pluginVersion;
     }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public int getMaxParallelRequests() {
+        return maxParallelRequests;
+    }
+
+    public int getMaxParallelBlockTransfers() {
+        return maxParallelBlockTransfers;
+    }
+
+    public int getBlobListPageSize() {
+        return blobListPageSize;
+    }
+
+    public int getBlobListPageWindow() {
+        return blobListPageWindow;
+    }
+
+    public int getMaxConcurrentTransfers() {
+        return maxConcurrentTransfers;
+    }
+
+    public int getMaxTransfersPerAccount() {
+        return maxTransfersPerAccount;
+    }
+
+    public long getMaxTransferBytesPerSecond() {
+        return maxTransferBytesPerSecond;
+    }
+
+    public int getMaxParallelBlobDeletes() {
+        return maxParallelBlobDeletes;
+    }
+
+    public int getMaxParallelSubscriptions() {
+        return maxParallelSubscriptions;
+    }
+
+    public int getMaxPrefetchedNodes() {
+        return maxPrefetchedNodes;
+    }
 }
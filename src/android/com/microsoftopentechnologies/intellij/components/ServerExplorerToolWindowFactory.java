@@ -16,13 +16,18 @@
 
 package com.microsoftopentechnologies.intellij.components;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.icons.AllIcons;
 import com.intellij.ide.util.treeView.NodeRenderer;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowFactory;
 import com.intellij.openapi.wm.ex.ToolWindowEx;
@@ -31,14 +36,19 @@ import com.intellij.ui.treeStructure.Tree;
 import com.microsoftopentechnologies.intellij.forms.ManageSubscriptionForm;
 import com.microsoftopentechnologies.intellij.helpers.UIHelper;
 import com.microsoftopentechnologies.intellij.helpers.collections.ListChangeListener;
+import com.microsoftopentechnologies.intellij.helpers.collections.ListChangedAction;
 import com.microsoftopentechnologies.intellij.helpers.collections.ListChangedEvent;
 import com.microsoftopentechnologies.intellij.helpers.collections.ObservableList;
 import com.microsoftopentechnologies.intellij.serviceexplorer.azure.AzureServiceModule;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeAction;
+import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
+import com.microsoftopentechnologies.intellij.serviceexplorer.ServiceExplorerSnapshot;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -47,20 +57,79 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 
 public class ServerExplorerToolWindowFactory implements ToolWindowFactory, PropertyChangeListener {
+    private static final int DEFAULT_MAX_PREFETCHED_NODES = 3;
+    private static final int SNAPSHOT_DELAY_MS = 2000;
+
+    private Project project;
     private JTree tree;
     private AzureServiceModule azureServiceModule;
     private DefaultTreeModel treeModel;
 
+    // writes the service explorer snapshot once the tree has been left alone for a moment
+    private Timer snapshotTimer;
+
+    // changes to the nodes that haven't reached the tree model yet; all three
+    // are guarded by "pendingChanges"
+    private final List<PendingListChange> pendingChanges = new ArrayList<PendingListChange>();
+    private final Set<Node> changedNodes = new LinkedHashSet<Node>();
+    private boolean flushScheduled = false;
+
     @Override
     public void createToolWindowContent(@NotNull final Project project, @NotNull final ToolWindow toolWindow) {
+        this.project = project;
+
         // initialize azure service module
         azureServiceModule = new AzureServiceModule(project);
 
+        // show the tree as it was last time as soon as the snapshot has been
+        // read; the modules it restores are refreshed in the background
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                final ServiceExplorerSnapshot snapshot = ServiceExplorerSnapshot.read(project);
+
+                if(snapshot != null) {
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(!project.isDisposed()) {
+                                azureServiceModule.restore(snapshot);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+
+        snapshotTimer = new Timer(SNAPSHOT_DELAY_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveSnapshot();
+            }
+        });
+        snapshotTimer.setRepeats(false);
+
+        // no snapshot is written once the tool window is gone
+        Disposer.register(toolWindow.getContentManager(), new Disposable() {
+            @Override
+            public void dispose() {
+                snapshotTimer.stop();
+                snapshotTimer = null;
+            }
+        });
+
         // initialize with all the service modules
         treeModel = new DefaultTreeModel(initRoot());
 
@@ -70,6 +139,22 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
         tree.setCellRenderer(new NodeTreeCellRenderer());
         tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 
+        // load the child nodes of a node when it is expanded for the first time
+        tree.addTreeWillExpandListener(new TreeWillExpandListener() {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                Object value = ((DefaultMutableTreeNode) event.getPath().getLastPathComponent()).getUserObject();
+
+                if(value instanceof Node && !(value instanceof PlaceholderNode)) {
+                    nodeWillExpand((Node) value);
+                }
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
+            }
+        });
+
         // add a click handler for the tree
         tree.addMouseListener(new MouseAdapter() {
             @Override
@@ -88,15 +173,97 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
     private DefaultMutableTreeNode initRoot() {
         DefaultMutableTreeNode root = new DefaultMutableTreeNode();
 
-        // add the azure service root service module
+        // add the azure service root service module; nothing is loaded
+        // until the user expands it
         root.add(createTreeNode(azureServiceModule));
 
-        // kick-off asynchronous load of child nodes on all the modules
-        azureServiceModule.load();
-
         return root;
     }
 
+    private void saveSnapshot() {
+        // the timer may have fired just before it was stopped
+        if(snapshotTimer == null || project.isDisposed()) {
+            return;
+        }
+
+        // names carry a "(Refreshing...)" suffix while their node loads
+        if(isLoading(azureServiceModule)) {
+            snapshotTimer.restart();
+            return;
+        }
+
+        final ServiceExplorerSnapshot snapshot = ServiceExplorerSnapshot.create(azureServiceModule);
+
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshot.write(project);
+                } catch (IOException ignored) {
+                    // the snapshot is only a cache
+                }
+            }
+        });
+    }
+
+    private static boolean isLoading(Node node) {
+        if(node.isLoading()) {
+            return true;
+        }
+
+        for(Node childNode : node.getChildNodes().snapshot()) {
+            if(isLoading(childNode)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Loads the child nodes of "node" if they haven't been loaded yet and then prefetches the
+    // child nodes of the first few of them in the background, so that expanding those doesn't
+    // have to wait. At most maxPrefetchedNodes nodes are prefetched per expanded node and nodes
+    // that would query every subscription are never prefetched.
+    private void nodeWillExpand(final Node node) {
+        ListenableFuture<List<Node>> future = node.loadChildNodesIfNeeded();
+
+        if(future == null) {
+            prefetch(node);
+            return;
+        }
+
+        Futures.addCallback(future, new FutureCallback<List<Node>>() {
+            @Override
+            public void onSuccess(List<Node> nodes) {
+                prefetch(node);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                // reported by the node's loader
+            }
+        });
+    }
+
+    private static void prefetch(Node node) {
+        int budget = DEFAULT_MAX_PREFETCHED_NODES;
+
+        if(MSOpenTechToolsApplication.getCurrent() != null &&
+                MSOpenTechToolsApplication.getCurrent().getSettings() != null) {
+            budget = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxPrefetchedNodes();
+        }
+
+        for(Node childNode : node.getChildNodes().snapshot()) {
+            if(budget <= 0) {
+                break;
+            }
+
+            if(childNode.canPrefetchChildNodes() && childNode.loadChildNodesIfNeeded() != null) {
+                budget--;
+            }
+        }
+    }
+
     private void treeMousePressed(MouseEvent e) {
         // get the tree node associated with this mouse click
         TreePath treePath = tree.getPathForLocation(e.getX(), e.getY());
@@ -161,58 +328,344 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
         node.addPropertyChangeListener(this);
 
         // listen for structure changes on the node, i.e. when child nodes are
-        // added or removed
-        node.getChildNodes().addChangeListener(new NodeListChangeListener(treeNode));
+        // added or removed; the child nodes are loaded on background threads,
+        // so the tree node is built from the child nodes the node had when
+        // the listener was added and every later change comes as an event
+        List<Node> childNodes = node.getChildNodes().observe(new NodeListChangeListener(treeNode));
 
         // create child tree nodes for each child node
-        if(node.hasChildNodes()) {
-            for (Node childNode : node.getChildNodes()) {
+        if(!childNodes.isEmpty()) {
+            for (Node childNode : childNodes) {
                 treeNode.add(createTreeNode(childNode));
             }
+        } else if(node.hasLazyChildNodes() && !node.isChildNodesLoaded()) {
+            // the placeholder makes the node expandable until its child
+            // nodes have been loaded
+            treeNode.add(new DefaultMutableTreeNode(new PlaceholderNode(node), false));
         }
 
         return treeNode;
     }
 
+    // Stops listening to "node" and its descendants. The nodes are left as
+    // they are; only the threads that load them change them.
     private void removeEventHandlers(Node node) {
         node.removePropertyChangeListener(this);
 
         ObservableList<Node> childNodes = node.getChildNodes();
         childNodes.removeAllChangeListeners();
 
-        if(node.hasChildNodes()) {
-            // this remove call should cause the NodeListChangeListener object
-            // registered on it's child nodes to fire which should recursively
-            // clean up event handlers on it's children
-            node.removeAllChildNodes();
+        for(Node childNode : childNodes.snapshot()) {
+            removeEventHandlers(childNode);
         }
     }
 
     @Override
     public void propertyChange(final PropertyChangeEvent evt) {
-        // if we are not running on the dispatch thread then switch
-        // to dispatch thread
-        if(!ApplicationManager.getApplication().isDispatchThread()) {
-            ApplicationManager.getApplication().invokeAndWait(new Runnable() {
-                @Override
-                public void run() {
-                    propertyChange(evt);
-                }
-            }, ModalityState.any());
-
-            return;
-        }
-
         // this event is fired whenever a property on a node in the
         // model changes; we respond by triggering a node change
-        // event in the tree's model
+        // event in the tree's model with the next flush
         Node node = (Node)evt.getSource();
 
+        synchronized (pendingChanges) {
+            changedNodes.add(node);
+        }
+
+        scheduleFlush();
+    }
+
+    // Queues the nodes added to or removed from the node shown by "treeNode"; "index" is the
+    // position of the first added node in the list. A change that follows one of the same kind
+    // on the same node is merged into it so that it reaches the tree model as a single bulk
+    // event; additions are only merged when they are next to each other.
+    private void queueListChange(DefaultMutableTreeNode treeNode, ListChangedAction action,
+                                 Collection<Node> nodes, Collection<Node> oldNodes, int index) {
+        synchronized (pendingChanges) {
+            PendingListChange last = pendingChanges.isEmpty() ? null : pendingChanges.get(pendingChanges.size() - 1);
+
+            if(last != null && last.treeNode == treeNode && last.action == action &&
+                    (action != ListChangedAction.add || last.index + last.nodes.size() == index)) {
+                last.nodes.addAll(nodes);
+                last.oldNodes.addAll(oldNodes);
+            } else {
+                pendingChanges.add(new PendingListChange(treeNode, action, nodes, oldNodes, index));
+            }
+        }
+
+        scheduleFlush();
+    }
+
+    // Changes are always applied by one invokeLater that takes everything queued until it runs,
+    // also those made on the dispatch thread: the lists notify their listeners from whichever
+    // thread changed them, and applying a change there could run into the locks of other nodes
+    // and would apply it ahead of the changes that are still queued.
+    private void scheduleFlush() {
+        synchronized (pendingChanges) {
+            if(flushScheduled) {
+                return;
+            }
+
+            flushScheduled = true;
+        }
+
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, ModalityState.any());
+    }
+
+    private void flush() {
+        List<PendingListChange> listChanges;
+        List<Node> nodes;
+
+        synchronized (pendingChanges) {
+            listChanges = new ArrayList<PendingListChange>(pendingChanges);
+            nodes = new ArrayList<Node>(changedNodes);
+            pendingChanges.clear();
+            changedNodes.clear();
+            flushScheduled = false;
+        }
+
+        for(PendingListChange listChange : listChanges) {
+            applyListChange(listChange);
+        }
+
+        if(snapshotTimer != null && (!listChanges.isEmpty() || !nodes.isEmpty())) {
+            snapshotTimer.restart();
+        }
+
         // the treeModel object can be null before it is initialized
         // from createToolWindowContent; we ignore property change
         // notifications till we have a valid model object
         if(treeModel != null) {
-            treeModel.nodeChanged((TreeNode) node.getViewData());
+            for(Node node : nodes) {
+                DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) node.getViewData();
+
+                if(treeNode != null) {
+                    if(node.isChildNodesLoaded()) {
+                        removePlaceholder(treeNode);
+                    } else {
+                        updatePlaceholder(treeNode, node.getChildNodesLoadError() != null);
+                    }
+
+                    treeModel.nodeChanged(treeNode);
+                }
+            }
+        }
+    }
+
+    private void applyListChange(PendingListChange listChange) {
+        DefaultMutableTreeNode treeNode = listChange.treeNode;
+
+        // changes queued for a node that has been removed from the tree since
+        if(treeModel != null && treeNode.getRoot() != treeModel.getRoot()) {
+            return;
+        }
+
+        // only the inserted and removed rows are reported to the tree model;
+        // reloading the whole node would collapse everything below it
+        switch (listChange.action) {
+            case add:
+                removePlaceholder(treeNode);
+
+                // create child tree nodes for the new nodes; the changes are applied in
+                // order, so the rows match the list up to this change and the nodes go
+                // where the list has them
+                List<Integer> insertedIndices = new ArrayList<Integer>();
+                int insertIndex = Math.min(Math.max(listChange.index, 0), treeNode.getChildCount());
+
+                for(Node childNode : listChange.nodes) {
+                    // a node added right after its parent is already part of
+                    // the tree node created for the parent
+                    TreeNode childTreeNode = (TreeNode) childNode.getViewData();
+
+                    if(childTreeNode != null && treeNode.getIndex(childTreeNode) != -1) {
+                        continue;
+                    }
+
+                    insertedIndices.add(insertIndex);
+                    treeNode.insert(createTreeNode(childNode), insertIndex++);
+                }
+
+                if(treeModel != null && !insertedIndices.isEmpty()) {
+                    treeModel.nodesWereInserted(treeNode, toArray(insertedIndices));
+                }
+                break;
+            case remove:
+                // unregister all event handlers recursively and remove
+                // child nodes from the tree
+                TreeMap<Integer, TreeNode> removed = new TreeMap<Integer, TreeNode>();
+
+                for(Node childNode : listChange.oldNodes) {
+                    removeEventHandlers(childNode);
+
+                    TreeNode childTreeNode = (TreeNode) childNode.getViewData();
+                    int index = childTreeNode != null ? treeNode.getIndex(childTreeNode) : -1;
+
+                    if(index != -1) {
+                        removed.put(index, childTreeNode);
+                    }
+                }
+
+                if(!removed.isEmpty()) {
+                    // remove this node from the tree, last row first so that the
+                    // indices stay valid
+                    for(Integer index : removed.descendingKeySet()) {
+                        treeNode.remove(index);
+                    }
+
+                    if(treeModel != null) {
+                        treeModel.nodesWereRemoved(treeNode, toArray(removed.keySet()), removed.values().toArray());
+                    }
+                }
+                break;
+            case replace:
+                // the new nodes take the rows of the old ones, which stay
+                // expanded or selected if they were
+                for(int i = 0; i < listChange.nodes.size(); i++) {
+                    replaceTreeNode(treeNode, listChange.oldNodes.get(i), listChange.nodes.get(i));
+                }
+                break;
+        }
+    }
+
+    private void replaceTreeNode(DefaultMutableTreeNode treeNode, Node oldNode, Node newNode) {
+        removeEventHandlers(oldNode);
+
+        DefaultMutableTreeNode oldTreeNode = (DefaultMutableTreeNode) oldNode.getViewData();
+        int index = oldTreeNode != null ? treeNode.getIndex(oldTreeNode) : -1;
+        boolean expanded = false;
+        boolean selected = false;
+
+        if(index == -1) {
+            removePlaceholder(treeNode);
+            index = treeNode.getChildCount();
+        } else {
+            if(tree != null) {
+                TreePath oldPath = new TreePath(oldTreeNode.getPath());
+                expanded = tree.isExpanded(oldPath);
+                selected = tree.isPathSelected(oldPath);
+            }
+
+            treeNode.remove(index);
+
+            if(treeModel != null) {
+                treeModel.nodesWereRemoved(treeNode, new int[]{index}, new Object[]{oldTreeNode});
+            }
+        }
+
+        DefaultMutableTreeNode newTreeNode = createTreeNode(newNode);
+        treeNode.insert(newTreeNode, index);
+
+        if(treeModel != null) {
+            treeModel.nodesWereInserted(treeNode, new int[]{index});
+        }
+
+        if(tree != null) {
+            TreePath newPath = new TreePath(newTreeNode.getPath());
+
+            if(expanded) {
+                tree.expandPath(newPath);
+            }
+
+            if(selected) {
+                tree.setSelectionPath(newPath);
+            }
+        }
+    }
+
+    private void removePlaceholder(DefaultMutableTreeNode treeNode) {
+        if(treeNode.getChildCount() == 0) {
+            return;
+        }
+
+        DefaultMutableTreeNode placeholder = (DefaultMutableTreeNode) treeNode.getChildAt(0);
+
+        if(placeholder.getUserObject() instanceof PlaceholderNode) {
+            treeNode.remove(0);
+
+            if(treeModel != null) {
+                treeModel.nodesWereRemoved(treeNode, new int[]{0}, new Object[]{placeholder});
+            }
+        }
+    }
+
+    // a placeholder whose node failed to load offers to load it again, the row may
+    // be expanded already and won't ask again by itself
+    private void updatePlaceholder(DefaultMutableTreeNode treeNode, boolean failed) {
+        if(treeNode.getChildCount() == 0) {
+            return;
+        }
+
+        DefaultMutableTreeNode placeholderTreeNode = (DefaultMutableTreeNode) treeNode.getChildAt(0);
+
+        if(placeholderTreeNode.getUserObject() instanceof PlaceholderNode) {
+            PlaceholderNode placeholder = (PlaceholderNode) placeholderTreeNode.getUserObject();
+
+            if(placeholder.isFailed() != failed) {
+                placeholder.setFailed(failed);
+                treeModel.nodeChanged(placeholderTreeNode);
+            }
+        }
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] res = new int[values.size()];
+        int i = 0;
+
+        for(Integer value : values) {
+            res[i++] = value;
+        }
+
+        return res;
+    }
+
+    // The only child of a node whose child nodes haven't been loaded yet. It isn't part of the
+    // node's child nodes and goes away once they have been loaded. If loading them fails it
+    // loads them again when it is clicked.
+    private class PlaceholderNode extends Node {
+        private static final String LOADING = "Loading...";
+        private static final String FAILED = "Loading failed, click to retry";
+
+        private boolean failed = false;
+
+        public PlaceholderNode(Node parent) {
+            super(parent.getId() + "_placeholder", LOADING, parent, null, false);
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public void setFailed(boolean failed) {
+            this.failed = failed;
+            setName(failed ? FAILED : LOADING);
+        }
+
+        @Override
+        protected void onNodeClick(NodeActionEvent e) {
+            if(failed) {
+                nodeWillExpand(getParent());
+            }
+        }
+    }
+
+    private static class PendingListChange {
+        private final DefaultMutableTreeNode treeNode;
+        private final ListChangedAction action;
+        private final List<Node> nodes;
+        private final List<Node> oldNodes;
+        private final int index;
+
+        public PendingListChange(DefaultMutableTreeNode treeNode, ListChangedAction action,
+                                 Collection<Node> nodes, Collection<Node> oldNodes, int index) {
+            this.treeNode = treeNode;
+            this.action = action;
+            this.nodes = new ArrayList<Node>(nodes);
+            this.oldNodes = new ArrayList<Node>(oldNodes);
+            this.index = index;
         }
     }
 
@@ -224,40 +677,21 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
         }
 
         @Override
-        public void listChanged(final ListChangedEvent e) {
-            // if we are not running on the dispatch thread then switch
-            // to dispatch thread
-            if(!ApplicationManager.getApplication().isDispatchThread()) {
-                ApplicationManager.getApplication().invokeAndWait(new Runnable() {
-                    @Override
-                    public void run() {
-                        listChanged(e);
-                    }
-                }, ModalityState.any());
-
-                return;
-            }
-
+        public void listChanged(ListChangedEvent e) {
             switch (e.getAction()) {
                 case add:
-                    // create child tree nodes for the new nodes
-                    for(Node childNode : (Collection<Node>)e.getNewItems()) {
-                        treeNode.add(createTreeNode(childNode));
-                    }
+                    queueListChange(treeNode, ListChangedAction.add,
+                            (Collection<Node>)e.getNewItems(), Collections.<Node>emptyList(), e.getIndex());
                     break;
                 case remove:
-                    // unregister all event handlers recursively and remove
-                    // child nodes from the tree
-                    for(Node childNode : (Collection<Node>)e.getOldItems()) {
-                        removeEventHandlers(childNode);
-
-                        // remove this node from the tree
-                        treeNode.remove((MutableTreeNode) childNode.getViewData());
-                    }
+                    queueListChange(treeNode, ListChangedAction.remove,
+                            Collections.<Node>emptyList(), (Collection<Node>)e.getOldItems(), -1);
+                    break;
+                case replace:
+                    queueListChange(treeNode, ListChangedAction.replace,
+                            (Collection<Node>)e.getNewItems(), (Collection<Node>)e.getOldItems(), e.getIndex());
                     break;
             }
-
-            treeModel.reload(treeNode);
         }
     }
 
@@ -294,7 +728,7 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
             }
 
             // setup a tooltip
-            setToolTipText(node.getName());
+            setToolTipText(node.getToolTip());
         }
 
         private ImageIcon loadIcon(String iconPath) {
@@ -15,6 +15,8 @@
  */
 package com.microsoftopentechnologies.intellij.forms;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.microsoftopentechnologies.intellij.helpers.LinkListener;
@@ -216,14 +218,34 @@ public class CreateNewServiceForm extends JDialog {
                                 return;
                             }
 
-                            AzureRestAPIManagerImpl.getManager().createService(id, region, admin, pass, name, server, db);
+                            Futures.addCallback(AzureRestAPIManagerImpl.getManager().createService(id, region, admin, pass, name, server, db), new FutureCallback<Void>() {
+                                @Override
+                                public void onSuccess(Void result) {
+                                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            serviceCreated.run();
 
-                            serviceCreated.run();
+                                            form.setCursor(Cursor.getDefaultCursor());
 
-                            form.setCursor(Cursor.getDefaultCursor());
+                                            form.setVisible(false);
+                                            form.dispose();
+                                        }
+                                    }, ModalityState.any());
+                                }
 
-                            form.setVisible(false);
-                            form.dispose();
+                                @Override
+                                public void onFailure(final Throwable throwable) {
+                                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            form.setCursor(Cursor.getDefaultCursor());
+
+                                            UIHelper.showException("An error occurred while creating the service.", throwable, "Error creating the service");
+                                        }
+                                    }, ModalityState.any());
+                                }
+                            });
                         } catch (Throwable e) {
                             form.setCursor(Cursor.getDefaultCursor());
 
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorHelper {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ExecutorHelper() {
+    }
+
+    // A pool of at most "parallelism" daemon threads named after threadName; the rest of the
+    // tasks wait in the queue. Idle threads go away after a minute, so a pool that is rarely
+    // used doesn't hold on to its threads.
+    @NotNull
+    public static ListeningExecutorService newBoundedExecutor(@NotNull final String threadName, int parallelism) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(parallelism, parallelism,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NotNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, threadName + " " + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        threadPool.allowCoreThreadTimeOut(true);
+
+        return MoreExecutors.listeningDecorator(threadPool);
+    }
+}
@@ -39,12 +39,13 @@ public class OpenSSLHelper {
 
     public static String processCertificate(String xmlPublishSettings) throws AzureCmdException {
         try {
-            Node publishProfileNode = ((NodeList) XmlHelper.getXMLValue(xmlPublishSettings, "/PublishData/PublishProfile", XPathConstants.NODESET)).item(0);
+            Document publishSettingsDocument = XmlHelper.parseXml(xmlPublishSettings);
+            Node publishProfileNode = ((NodeList) XmlHelper.getXMLValue(publishSettingsDocument, "/PublishData/PublishProfile", XPathConstants.NODESET)).item(0);
             String version = XmlHelper.getAttributeValue(publishProfileNode, "SchemaVersion");
 
             boolean isFirstVersion = (version == null || Float.parseFloat(version) < 2);
 
-            NodeList subscriptionList = (NodeList) XmlHelper.getXMLValue(xmlPublishSettings, "//Subscription", XPathConstants.NODESET);
+            NodeList subscriptionList = (NodeList) XmlHelper.getXMLValue(publishSettingsDocument, "//Subscription", XPathConstants.NODESET);
 
             Document ownerDocument = null;
 
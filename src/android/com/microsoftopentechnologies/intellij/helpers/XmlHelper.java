@@ -16,8 +16,8 @@
 
 package com.microsoftopentechnologies.intellij.helpers;
 
-import org.apache.xerces.dom.DeferredElementImpl;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -26,6 +26,10 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -39,20 +43,102 @@ import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
 
 public class XmlHelper {
+    private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    private static final XPathFactory xPathFactory = XPathFactory.newInstance();
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    // document builders, XPath objects and compiled expressions are not thread safe so every
+    // thread gets its own builder and its own cache of compiled expressions
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+    private static final ThreadLocal<Map<String, XPathExpression>> xPathExpressions =
+            new ThreadLocal<Map<String, XPathExpression>>() {
+                @Override
+                protected Map<String, XPathExpression> initialValue() {
+                    return new HashMap<String, XPathExpression>();
+                }
+            };
 
     public static Object getXMLValue(String xml, String xQuery, QName resultType) throws XPathExpressionException, IOException, SAXException, ParserConfigurationException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        DocumentBuilder db = dbf.newDocumentBuilder();
+        return getXMLValue(parseXml(xml), xQuery, resultType);
+    }
+
+    // Evaluates the expression against an already parsed document so that several values can be
+    // read from the same XML without parsing it again.
+    public static Object getXMLValue(Node node, String xQuery, QName resultType) throws XPathExpressionException {
+        return getXPathExpression(xQuery).evaluate(node, resultType);
+    }
+
+    public static Document parseXml(String xml) throws IOException, SAXException, ParserConfigurationException {
+        DocumentBuilder db = documentBuilder.get();
+
+        if (db == null) {
+            synchronized (documentBuilderFactory) {
+                db = documentBuilderFactory.newDocumentBuilder();
+            }
+
+            documentBuilder.set(db);
+        } else {
+            db.reset();
+        }
 
-        Document doc = db.parse(new InputSource(new StringReader(xml)));
+        return db.parse(new InputSource(new StringReader(xml)));
+    }
+
+    // Returns the text of the first element named "elementName" without building a DOM or
+    // null if there is no such element.
+    public static String getElementText(String xml, String elementName) throws SAXException {
+        XMLStreamReader reader = null;
 
-        XPathFactory xPathfactory = XPathFactory.newInstance();
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
 
-        XPath xPath = xPathfactory.newXPath();
-        XPathExpression xPathExpression = xPath.compile(xQuery);
-        return xPathExpression.evaluate(doc, resultType);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && elementName.equals(reader.getLocalName())) {
+                    return reader.getElementText();
+                }
+            }
+
+            return null;
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    // Returns the attributes of the first element named "elementName" whose "keyAttribute"
+    // attribute is "keyValue", without building a DOM, or null if there is no such element.
+    public static Map<String, String> getElementAttributes(String xml, String elementName, String keyAttribute, String keyValue)
+            throws SAXException {
+        XMLStreamReader reader = null;
+
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                        elementName.equals(reader.getLocalName()) &&
+                        keyValue.equals(reader.getAttributeValue(null, keyAttribute))) {
+                    Map<String, String> attributes = new HashMap<String, String>();
+
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+
+                    return attributes;
+                }
+            }
+
+            return null;
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        } finally {
+            closeQuietly(reader);
+        }
     }
 
     public static String getAttributeValue(Node node, String attributeName) {
@@ -61,7 +147,7 @@ public class XmlHelper {
     }
 
     public static String getChildNodeValue(Node node, String elementName) {
-        return ((DeferredElementImpl) node).getElementsByTagName(elementName).item(0).getTextContent();
+        return ((Element) node).getElementsByTagName(elementName).item(0).getTextContent();
     }
 
 
@@ -73,4 +159,38 @@ public class XmlHelper {
 
         return writer.getBuffer().toString();
     }
+
+    private static XPathExpression getXPathExpression(String xQuery) throws XPathExpressionException {
+        Map<String, XPathExpression> expressions = xPathExpressions.get();
+        XPathExpression xPathExpression = expressions.get(xQuery);
+
+        if (xPathExpression == null) {
+            XPath xPath;
+
+            synchronized (xPathFactory) {
+                xPath = xPathFactory.newXPath();
+            }
+
+            xPathExpression = xPath.compile(xQuery);
+            expressions.put(xQuery, xPathExpression);
+        }
+
+        return xPathExpression;
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+            }
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
 }
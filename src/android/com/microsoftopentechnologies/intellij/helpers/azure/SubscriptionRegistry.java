@@ -0,0 +1,273 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure;
+
+import com.google.common.collect.ImmutableMap;
+import com.intellij.ide.util.PropertiesComponent;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.StringHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+import sun.misc.BASE64Decoder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-memory index of the subscriptions stored in the SUBSCRIPTION_FILE setting. The XML is
+// parsed once into an immutable map keyed by subscription ID and the map is only rebuilt after
+// the setting has been changed and the registry invalidated. Both the publish settings format
+// (certificate mode) and the subscription list returned by the management API (AD mode) are
+// understood.
+public class SubscriptionRegistry {
+    public interface Listener {
+        void subscriptionsChanged();
+    }
+
+    public static final class RegisteredSubscription {
+        private final String id;
+        private final String name;
+        private final String managementUrl;
+        private final String tenantId;
+        private final String base64Certificate;
+        private final byte[] certificate;
+        private final boolean selected;
+
+        private RegisteredSubscription(String id, String name, String managementUrl, String tenantId,
+                                       String base64Certificate, byte[] certificate, boolean selected) {
+            this.id = id;
+            this.name = name;
+            this.managementUrl = managementUrl;
+            this.tenantId = tenantId;
+            this.base64Certificate = base64Certificate;
+            this.certificate = certificate;
+            this.selected = selected;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getManagementUrl() {
+            return managementUrl;
+        }
+
+        public String getTenantId() {
+            return tenantId;
+        }
+
+        public String getBase64Certificate() {
+            return base64Certificate;
+        }
+
+        // the decoded PKCS12 management certificate or null when using AD authentication
+        public byte[] getCertificate() {
+            return certificate != null ? certificate.clone() : null;
+        }
+
+        public boolean isSelected() {
+            return selected;
+        }
+    }
+
+    private static final String SUBSCRIPTION_ELEMENT = "Subscription";
+
+    // singleton registry instance
+    private static SubscriptionRegistry registry = null;
+
+    private final XMLInputFactory xmlInputFactory;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    // null until the settings have been parsed for the first time after an invalidation
+    private volatile Map<String, RegisteredSubscription> subscriptions = null;
+
+    private SubscriptionRegistry() {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @NotNull
+    public static synchronized SubscriptionRegistry getRegistry() {
+        if (registry == null) {
+            registry = new SubscriptionRegistry();
+        }
+
+        return registry;
+    }
+
+    @Nullable
+    public RegisteredSubscription getSubscription(@NotNull String subscriptionId) throws SAXException {
+        return getSubscriptions().get(subscriptionId);
+    }
+
+    // returns the subscriptions in the order in which they appear in the settings
+    @NotNull
+    public Map<String, RegisteredSubscription> getSubscriptions() throws SAXException {
+        Map<String, RegisteredSubscription> current = subscriptions;
+
+        if (current == null) {
+            synchronized (this) {
+                current = subscriptions;
+
+                if (current == null) {
+                    current = subscriptions = load();
+                }
+            }
+        }
+
+        return current;
+    }
+
+    // Drops the parsed subscriptions; must be called whenever the SUBSCRIPTION_FILE setting or
+    // the credentials used for the subscriptions change. Lookups made after this call see the
+    // new settings and listeners drop whatever they have built from the old ones.
+    public void invalidate() {
+        synchronized (this) {
+            subscriptions = null;
+        }
+
+        for (Listener listener : listeners) {
+            listener.subscriptionsChanged();
+        }
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @NotNull
+    private Map<String, RegisteredSubscription> load() throws SAXException {
+        String xml = PropertiesComponent.getInstance().getValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, "");
+
+        if (xml.trim().isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        Map<String, RegisteredSubscription> res = new LinkedHashMap<String, RegisteredSubscription>();
+        XMLStreamReader reader = null;
+
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && SUBSCRIPTION_ELEMENT.equals(reader.getLocalName())) {
+                    RegisteredSubscription subscription = readSubscription(reader);
+
+                    if (subscription != null) {
+                        res.put(subscription.getId(), subscription);
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+
+        return ImmutableMap.copyOf(res);
+    }
+
+    // Reads the "Subscription" element the reader is positioned at. Publish settings keep the
+    // subscription data in attributes while the management API returns child elements.
+    @Nullable
+    private RegisteredSubscription readSubscription(@NotNull XMLStreamReader reader) throws XMLStreamException, IOException {
+        String id = reader.getAttributeValue(null, "Id");
+
+        if (id != null) {
+            String base64Certificate = reader.getAttributeValue(null, "ManagementCertificate");
+            String selected = reader.getAttributeValue(null, "Selected");
+
+            return new RegisteredSubscription(
+                    id,
+                    reader.getAttributeValue(null, "Name"),
+                    reader.getAttributeValue(null, "ServiceManagementUrl"),
+                    null,
+                    base64Certificate,
+                    StringHelper.isNullOrWhiteSpace(base64Certificate) ? null : new BASE64Decoder().decodeBuffer(base64Certificate),
+                    selected == null || selected.equals("true"));
+        }
+
+        // only simple child elements are of interest; "text" is dropped for children that
+        // turn out to have children of their own
+        Map<String, String> values = new HashMap<String, String>();
+        int depth = 0;
+        String childName = null;
+        StringBuilder text = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (++depth == 1) {
+                    childName = reader.getLocalName();
+                    text = new StringBuilder();
+                } else {
+                    text = null;
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS && depth == 1 && text != null) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    break;
+                }
+
+                if (depth == 1 && text != null) {
+                    values.put(childName, text.toString());
+                }
+
+                depth--;
+            }
+        }
+
+        if (!values.containsKey("SubscriptionID")) {
+            return null;
+        }
+
+        return new RegisteredSubscription(
+                values.get("SubscriptionID"),
+                values.get("SubscriptionName"),
+                null,
+                values.get("AADTenantID"),
+                null,
+                null,
+                true);
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.rest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.intellij.openapi.application.ApplicationManager;
+import com.microsoft.windowsazure.core.OperationResponse;
+import com.microsoft.windowsazure.core.OperationStatus;
+import com.microsoft.windowsazure.core.OperationStatusResponse;
+import com.microsoft.windowsazure.exception.ServiceException;
+import com.microsoft.windowsazure.management.ManagementClient;
+import com.microsoftopentechnologies.intellij.helpers.StringHelper;
+import com.microsoftopentechnologies.intellij.helpers.XmlHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.AzureSDKHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.RetryAfterResponseFilter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Tracks long running Azure service management operations, both the REST requests that were
+// answered with a "202 Accepted" and whose outcome has to be read from
+// "/<subscription>/operations/<id>", and the operations started through the SDK management
+// clients. A single scheduler thread times the status checks of all outstanding operations; the
+// checks themselves run on the application's pooled threads so that no thread is held while Azure
+// works. Checks are frequent right after an operation has been started and back off while it
+// keeps running; a "Retry-After" header sent by Azure with an SDK status check is honored.
+public class AzureOperationTracker {
+    private static final long INITIAL_POLL_DELAY_MS = 1000;
+    private static final long MAX_POLL_DELAY_MS = 30000;
+    private static final long DEFAULT_TIMEOUT_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+    private static final String STATUS_SUCCEEDED = "Succeeded";
+    private static final String STATUS_FAILED = "Failed";
+
+    // singleton tracker instance
+    private static AzureOperationTracker tracker = null;
+
+    private final ScheduledExecutorService scheduler;
+
+    private AzureOperationTracker() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Azure Operation Tracker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @NotNull
+    public static synchronized AzureOperationTracker getTracker() {
+        if (tracker == null) {
+            tracker = new AzureOperationTracker();
+        }
+
+        return tracker;
+    }
+
+    @NotNull
+    public ListenableFuture<Void> track(@NotNull String operationPath, String subscriptionId) {
+        return track(operationPath, subscriptionId, DEFAULT_TIMEOUT_MS);
+    }
+
+    // Returns a future that completes when the operation succeeds and fails when Azure reports the
+    // operation as failed, when the status could not be read MAX_CONSECUTIVE_FAILURES times in a
+    // row or when the operation has not completed within "timeoutMillis".
+    @NotNull
+    public ListenableFuture<Void> track(@NotNull String operationPath, String subscriptionId, long timeoutMillis) {
+        RestOperation operation = new RestOperation(operationPath, subscriptionId,
+                System.currentTimeMillis() + timeoutMillis);
+        operation.schedule(INITIAL_POLL_DELAY_MS);
+
+        return operation.future;
+    }
+
+    // Tracks an operation started through an SDK management client like "track" does; the future
+    // completes with the final status of the operation. Cancelling the future stops the status
+    // checks, not the operation.
+    @NotNull
+    public ListenableFuture<OperationStatusResponse> track(@NotNull String subscriptionId,
+                                                           @NotNull OperationResponse operationResponse,
+                                                           @NotNull String description) {
+        SDKOperation operation = new SDKOperation(subscriptionId, operationResponse.getRequestId(), description,
+                System.currentTimeMillis() + DEFAULT_TIMEOUT_MS);
+        operation.schedule(INITIAL_POLL_DELAY_MS);
+
+        return operation.future;
+    }
+
+    private abstract class TrackedOperation<T> implements Runnable {
+        private final String description;
+        private final long deadline;
+        protected final SettableFuture<T> future = SettableFuture.create();
+
+        private long pollDelay = INITIAL_POLL_DELAY_MS;
+        private int consecutiveFailures = 0;
+
+        // the delay in ms Azure asked for with the last status check, -1 if it didn't ask for one
+        protected long retryAfter = -1;
+
+        private TrackedOperation(String description, long deadline) {
+            this.description = description;
+            this.deadline = deadline;
+        }
+
+        // Reads the status of the operation once and completes "future" if it has finished.
+        protected abstract void checkStatus() throws Exception;
+
+        void schedule(long delay) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ApplicationManager.getApplication().executeOnPooledThread(TrackedOperation.this);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (future.isCancelled()) {
+                return;
+            }
+
+            retryAfter = -1;
+
+            try {
+                checkStatus();
+                consecutiveFailures = 0;
+
+                if (future.isDone()) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                future.setException(e);
+                return;
+            } catch (Throwable t) {
+                // errors while reading the status are assumed to be transient and the check is
+                // retried with the usual backoff until we run out of attempts; a throttled check
+                // waits for as long as Azure asked and doesn't count as an attempt
+                if (retryAfter < 0 && ++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    future.setException(t instanceof AzureCmdException ?
+                            t :
+                            new AzureCmdException("Error checking the status of the operation", t));
+                    return;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                future.setException(new AzureCmdException("Operation timed out",
+                        "The operation did not complete in the allotted time: " + description));
+                return;
+            }
+
+            // exponential backoff keeps Azure from complaining with a "too many requests
+            // received" error while the operation is running
+            long delay = Math.max(pollDelay, retryAfter);
+            pollDelay = Math.min(pollDelay * 2, MAX_POLL_DELAY_MS);
+            schedule(Math.min(delay, deadline - now));
+        }
+    }
+
+    private class RestOperation extends TrackedOperation<Void> {
+        private final String operationPath;
+        private final String subscriptionId;
+
+        private RestOperation(String operationPath, String subscriptionId, long deadline) {
+            super(operationPath, deadline);
+            this.operationPath = operationPath;
+            this.subscriptionId = subscriptionId;
+        }
+
+        @Override
+        protected void checkStatus() throws Exception {
+            String xml = AzureRestAPIHelper.getRestApiCommand(operationPath, subscriptionId, false);
+            String status = XmlHelper.getElementText(xml, "Status");
+
+            if (STATUS_SUCCEEDED.equals(status)) {
+                future.set(null);
+            } else if (STATUS_FAILED.equals(status)) {
+                String message = XmlHelper.getElementText(xml, "Message");
+                future.setException(new AzureCmdException("Operation failed",
+                        StringHelper.isNullOrWhiteSpace(message) ? xml : message));
+            }
+        }
+    }
+
+    private class SDKOperation extends TrackedOperation<OperationStatusResponse> {
+        private final String subscriptionId;
+        private final String requestId;
+
+        private SDKOperation(String subscriptionId, String requestId, String description, long deadline) {
+            super(description, deadline);
+            this.subscriptionId = subscriptionId;
+            this.requestId = requestId;
+        }
+
+        @Override
+        protected void checkStatus() throws Exception {
+            ManagementClient client = null;
+
+            try {
+                client = AzureSDKHelper.getManagementClient(subscriptionId);
+
+                if (client == null) {
+                    throw new AzureCmdException("Unable to instantiate Management client", "");
+                }
+
+                OperationStatusResponse osr = client.getOperationStatus(requestId);
+
+                if (osr.getStatus() == OperationStatus.Succeeded) {
+                    future.set(osr);
+                } else if (osr.getStatus() != OperationStatus.InProgress) {
+                    future.setException(getOperationException(osr));
+                }
+            } finally {
+                // always read so that the value doesn't linger on the thread for the next check
+                retryAfter = RetryAfterResponseFilter.consumeRetryAfter();
+                AzureSDKHelper.releaseClient(client);
+            }
+        }
+
+        @NotNull
+        private ServiceException getOperationException(@NotNull OperationStatusResponse osr) {
+            if (osr.getError() != null) {
+                ServiceException ex = new ServiceException(osr.getError().getCode() + " : " + osr.getError().getMessage());
+                ex.setErrorCode(osr.getError().getCode());
+                ex.setErrorMessage(osr.getError().getMessage());
+                return ex;
+            }
+
+            return new ServiceException("");
+        }
+    }
+}
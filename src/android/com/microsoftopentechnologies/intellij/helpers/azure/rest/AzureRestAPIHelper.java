@@ -16,6 +16,8 @@
 
 package com.microsoftopentechnologies.intellij.helpers.azure.rest;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.ide.util.PropertiesComponent;
 import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
@@ -29,6 +31,7 @@ import com.microsoftopentechnologies.intellij.helpers.aadauth.AuthenticationResu
 import com.microsoftopentechnologies.intellij.helpers.aadauth.PromptValue;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureAuthenticationMode;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
 import com.microsoftopentechnologies.intellij.model.ms.Subscription;
 
 import org.jetbrains.annotations.Nullable;
@@ -36,11 +39,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
-import sun.misc.BASE64Decoder;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.*;
@@ -75,6 +75,7 @@ public class AzureRestAPIHelper {
 
         String savedXml = XmlHelper.saveXmlToStreamWriter(subscriptionList.item(0).getOwnerDocument());
         PropertiesComponent.getInstance().setValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, savedXml);
+        SubscriptionRegistry.getRegistry().invalidate();
     }
 
     public static void importSubscription(File publishSettingsFile) throws AzureCmdException {
@@ -120,6 +121,8 @@ public class AzureRestAPIHelper {
             } else {
                 PropertiesComponent.getInstance().setValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, xml);
             }
+
+            SubscriptionRegistry.getRegistry().invalidate();
         } catch (AzureCmdException ex) {
             throw ex;
         } catch (Exception ex) {
@@ -141,6 +144,23 @@ public class AzureRestAPIHelper {
             AzureCmdException,
             ExecutionException,
             InterruptedException {
+        return getRestApiCommand(path, subscriptionId, true);
+    }
+
+    public static String getRestApiCommand(String path, String subscriptionId, boolean jsonContent)
+            throws IOException,
+            SAXException,
+            ParserConfigurationException,
+            XPathExpressionException,
+            NoSuchAlgorithmException,
+            KeyStoreException,
+            CertificateException,
+            UnrecoverableKeyException,
+            KeyManagementException,
+            NoSubscriptionException,
+            AzureCmdException,
+            ExecutionException,
+            InterruptedException {
 
         AzureRestCallbackAdapter<String> callback = new AzureRestCallbackAdapter<String>() {
             @Override
@@ -154,7 +174,48 @@ public class AzureRestAPIHelper {
             }
         };
 
-        runWithSSLConnection(path, true, subscriptionId, callback);
+        runWithSSLConnection(path, jsonContent, subscriptionId, callback);
+        if (!callback.isOk()) {
+            throw callback.getError();
+        }
+        return callback.getResult();
+    }
+
+    public static <T> T getRestApiCommand(String path, String subscriptionId, boolean jsonContent, final ResponseReader<T> reader)
+            throws IOException,
+            SAXException,
+            ParserConfigurationException,
+            XPathExpressionException,
+            NoSuchAlgorithmException,
+            KeyStoreException,
+            CertificateException,
+            UnrecoverableKeyException,
+            KeyManagementException,
+            NoSubscriptionException,
+            AzureCmdException,
+            ExecutionException,
+            InterruptedException {
+
+        // the response is decoded by the reader while it is being received
+        // instead of being buffered into a string first
+        AzureRestCallbackAdapter<T> callback = new AzureRestCallbackAdapter<T>() {
+            @Override
+            public int apply(HttpsURLConnection sslConnection) throws IOException {
+                int response = sslConnection.getResponseCode();
+                if (response < 400) {
+                    InputStream is = sslConnection.getInputStream();
+                    try {
+                        setResult(reader.read(is));
+                    } finally {
+                        is.close();
+                    }
+                }
+
+                return response;
+            }
+        };
+
+        runWithSSLConnection(path, jsonContent, subscriptionId, callback);
         if (!callback.isOk()) {
             throw callback.getError();
         }
@@ -162,18 +223,45 @@ public class AzureRestAPIHelper {
     }
 
     public static String postRestApiCommand(String path, String postData, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
-        return restApiCommand("POST", path, postData, subscriptionId, asyncUrl, jsonContent);
+        return waitForResult(restApiCommand("POST", path, postData, subscriptionId, asyncUrl, jsonContent));
     }
 
     public static String putRestApiCommand(String path, String postData, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
-        return restApiCommand("PUT", path, postData, subscriptionId, asyncUrl, jsonContent);
+        return waitForResult(restApiCommand("PUT", path, postData, subscriptionId, asyncUrl, jsonContent));
     }
 
     public static String deleteRestApiCommand(String path, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
+        return waitForResult(restApiCommand("DELETE", path, null, subscriptionId, asyncUrl, jsonContent));
+    }
+
+    public static ListenableFuture<String> postRestApiCommandAsync(String path, String postData, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
+        return restApiCommand("POST", path, postData, subscriptionId, asyncUrl, jsonContent);
+    }
+
+    public static ListenableFuture<String> putRestApiCommandAsync(String path, String postData, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
+        return restApiCommand("PUT", path, postData, subscriptionId, asyncUrl, jsonContent);
+    }
+
+    public static ListenableFuture<String> deleteRestApiCommandAsync(String path, String subscriptionId, String asyncUrl, boolean jsonContent) throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ParserConfigurationException, SAXException, KeyStoreException, XPathExpressionException, KeyManagementException, AzureCmdException, InterruptedException, NoSubscriptionException, ExecutionException {
         return restApiCommand("DELETE", path, null, subscriptionId, asyncUrl, jsonContent);
     }
 
-    private static String restApiCommand(
+    private static String waitForResult(ListenableFuture<String> future) throws AzureCmdException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AzureCmdException) {
+                throw (AzureCmdException) e.getCause();
+            }
+
+            throw new AzureCmdException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Sends the request on the calling thread. If Azure accepts the request as a long running
+    // operation (202 with an "asyncUrl" to check) the returned future completes once the
+    // operation tracker sees the operation succeed; otherwise it is already complete.
+    private static ListenableFuture<String> restApiCommand(
             final String method,
             final String path,
             final String postData,
@@ -194,38 +282,11 @@ public class AzureRestAPIHelper {
             NoSubscriptionException,
             ExecutionException {
 
-        // This is a callback method that is invoked in a loop below after the request has been
-        // sent. The purpose of this method is to check the status of the pending operation and check
-        // if it is complete.
-        final AzureRestCallbackAdapter<Boolean> requestStatusCallback = new AzureRestCallbackAdapter<Boolean>() {
-            @Override
-            public int apply(HttpsURLConnection sslConnection) throws IOException {
-                setResult(false);
-
-                try {
-                    int responseCode = sslConnection.getResponseCode();
-                    if (responseCode < 200 && responseCode > 299) {
-                        setError(new AzureCmdException("Operation interrupted", "Http error code: "
-                                + String.valueOf(responseCode)));
-                    } else {
-                        String pollres = readStream(sslConnection.getInputStream());
-                        NodeList nl = ((NodeList) XmlHelper.getXMLValue(pollres, "//Status", XPathConstants.NODESET));
-                        if (nl.getLength() > 0) {
-                            if (nl.item(0).getTextContent().equals("Succeeded")) {
-                                setResult(true);
-                            }
-                        }
-                    }
+        // the ID of the pending operation is recorded here by the callback so that we can
+        // track it once the connection used for the request has been released
+        final String[] operationURL = new String[1];
 
-                    return responseCode;
-                } catch (Exception e) {
-                    setError(new AzureCmdException(e.getMessage(), e));
-                    return HttpURLConnection.HTTP_INTERNAL_ERROR;
-                }
-            }
-        };
-
-        AzureRestCallbackAdapter<String> callback = new AzureRestCallbackAdapter<String>() {
+        final AzureRestCallbackAdapter<String> callback = new AzureRestCallbackAdapter<String>() {
             @Override
             public int apply(HttpsURLConnection sslConnection) throws IOException {
                 setError(null);
@@ -246,37 +307,7 @@ public class AzureRestAPIHelper {
                     String response = readStream(sslConnection.getInputStream());
 
                     if (responseCode == 202 && asyncUrl != null) {
-                        String operationURL = asyncUrl + sslConnection.getHeaderField("x-ms-request-id");
-                        sslConnection.disconnect();
-
-                        boolean succeed = false;
-                        while (!succeed) {
-                            try {
-                                runWithSSLConnection(operationURL, false, subscriptionId, requestStatusCallback);
-                                if (!requestStatusCallback.isOk()) {
-                                    setError(requestStatusCallback.getError());
-
-                                    // NOTE: setting "succeed" to false below means that the loop for
-                                    // checking the status of the request will continue running; the hope is
-                                    // that the error that occurred while checking for status is transient
-                                    // and won't occur again;
-                                    // TODO: A better approach might be to retry a few times and then bail.
-                                    succeed = false;
-                                } else {
-                                    succeed = requestStatusCallback.getResult();
-                                }
-
-                                if (!succeed) {
-                                    // wait for a while otherwise Azure complains with a
-                                    // "too many requests received" error
-                                    // TODO: This is a bit hacky. See if we can do better.
-                                    Thread.sleep(2000);
-                                }
-                            } catch (Exception e) {
-                                setError(new AzureCmdException(e.getMessage(), e));
-                                return responseCode;
-                            }
-                        }
+                        operationURL[0] = asyncUrl + sslConnection.getHeaderField("x-ms-request-id");
                     }
 
                     setResult(response);
@@ -294,7 +325,23 @@ public class AzureRestAPIHelper {
         if (!callback.isOk()) {
             throw callback.getError();
         }
-        return callback.getResult();
+
+        if (operationURL[0] == null) {
+            return Futures.immediateFuture(callback.getResult());
+        }
+
+        return Futures.transform(
+                AzureOperationTracker.getTracker().track(operationURL[0], subscriptionId),
+                new Function<Void, String>() {
+                    @Override
+                    public String apply(Void ignored) {
+                        return callback.getResult();
+                    }
+                });
+    }
+
+    public interface ResponseReader<T> {
+        T read(InputStream is) throws IOException;
     }
 
     interface AzureRestCallback<T> {
@@ -382,7 +429,7 @@ public class AzureRestAPIHelper {
             AzureRestCallback<T> callback) throws IOException, KeyManagementException, NoSuchAlgorithmException, UnrecoverableKeyException, KeyStoreException, CertificateException, ParserConfigurationException, XPathExpressionException, SAXException, AzureCmdException {
 
         HttpsURLConnection sslConnection = getSSLConnectionFromCert(path, jsonContent, subscriptionId);
-        int response = callback.apply(sslConnection);
+        int response = AzureRestTransport.getTransport().execute(sslConnection, callback);
         if (response < 200 || response > 299) {
             throw new AzureCmdException("Error connecting to service", readStream(sslConnection.getErrorStream()));
         }
@@ -410,8 +457,9 @@ public class AzureRestAPIHelper {
             acquireTokenInteractive(subscriptionId, apiManager);
         }
 
+        AzureRestTransport transport = AzureRestTransport.getTransport();
         sslConnection = getSSLConnectionFromAccessToken(path, jsonContent, subscriptionId, false);
-        int response = callback.apply(sslConnection);
+        int response = transport.execute(sslConnection, callback);
 
         if (response == HttpURLConnection.HTTP_UNAUTHORIZED) {
             // retry with refresh token
@@ -420,7 +468,7 @@ public class AzureRestAPIHelper {
             // sslConnection will be null if we don't have a refresh token; in which
             // we fall through to the next "if" check where we attempt interactive auth
             if (sslConnection != null) {
-                response = callback.apply(sslConnection);
+                response = transport.execute(sslConnection, callback);
             }
 
             if (response == HttpURLConnection.HTTP_UNAUTHORIZED) {
@@ -429,7 +477,7 @@ public class AzureRestAPIHelper {
 
                 // third time lucky?
                 sslConnection = getSSLConnectionFromAccessToken(path, jsonContent, subscriptionId, false);
-                response = callback.apply(sslConnection);
+                response = transport.execute(sslConnection, callback);
                 if (response < 200 || response > 299) {
                     // clear the auth token
                     apiManager.setAuthenticationToken(null);
@@ -541,7 +589,7 @@ public class AzureRestAPIHelper {
         //Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", 8888));
         //HttpsURLConnection conn = (HttpsURLConnection) myUrl.openConnection(proxy);
 
-        HttpsURLConnection conn = (HttpsURLConnection) myUrl.openConnection();
+        HttpsURLConnection conn = AzureRestTransport.getTransport().openConnection(myUrl, null);
         conn.addRequestProperty(USER_AGENT_HEADER, getPlatformUserAgent());
         conn.addRequestProperty(TELEMETRY_HEADER, getPlatformUserAgent());
         conn.addRequestProperty(X_MS_VERSION_HEADER, AZURE_API_VERSION);
@@ -575,9 +623,14 @@ public class AzureRestAPIHelper {
         // azure subscription
         String tenantName = MSOpenTechToolsApplication.getCurrent().getSettings().getTenantName();
         if (!StringHelper.isNullOrWhiteSpace(subscriptionId)) {
-            Subscription subscription = AzureRestAPIManagerImpl.getManager().getSubscriptionFromId(subscriptionId);
-            if (subscription != null) {
-                tenantName = subscription.getTenantId();
+            SubscriptionRegistry.RegisteredSubscription registered = SubscriptionRegistry.getRegistry().getSubscription(subscriptionId);
+            if (registered != null) {
+                tenantName = registered.getTenantId();
+            } else {
+                Subscription subscription = AzureRestAPIManagerImpl.getManager().getSubscriptionFromId(subscriptionId);
+                if (subscription != null) {
+                    tenantName = subscription.getTenantId();
+                }
             }
         }
         return tenantName;
@@ -597,44 +650,19 @@ public class AzureRestAPIHelper {
             XPathExpressionException,
             SAXException {
 
-        String publishSettings = PropertiesComponent.getInstance().getValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, "");
-        if (publishSettings.isEmpty())
-            return null;
-
-        Node node = null;
-
-        NodeList subslist = (NodeList) XmlHelper.getXMLValue(
-                publishSettings,
-                "//PublishData/PublishProfile/Subscription",
-                XPathConstants.NODESET);
-        for (int i = 0; i < subslist.getLength(); i++) {
-            String id = XmlHelper.getAttributeValue(subslist.item(i), "Id");
-            if (id.equals(subscriptionId))
-                node = subslist.item(i);
-        }
+        SubscriptionRegistry.RegisteredSubscription subscription = SubscriptionRegistry.getRegistry().getSubscription(subscriptionId);
 
-        if (node == null)
+        if (subscription == null || subscription.getBase64Certificate() == null)
             return null;
 
-        String pfx = XmlHelper.getAttributeValue(node, "ManagementCertificate");
-        String url = XmlHelper.getAttributeValue(node, "ServiceManagementUrl");
-
-        byte[] decodeBuffer = new BASE64Decoder().decodeBuffer(pfx);
-
-        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
-
-        InputStream is = new ByteArrayInputStream(decodeBuffer);
-
-        KeyStore ks = KeyStore.getInstance("PKCS12");
-        ks.load(is, OpenSSLHelper.PASSWORD.toCharArray());
-        keyManagerFactory.init(ks, OpenSSLHelper.PASSWORD.toCharArray());
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(keyManagerFactory.getKeyManagers(), null, new SecureRandom());
+        String pfx = subscription.getBase64Certificate();
+        String url = subscription.getManagementUrl();
 
+        // the socket factory is cached per subscription so that the connection is served
+        // from the keep-alive cache whenever possible
+        AzureRestTransport transport = AzureRestTransport.getTransport();
         URL myUrl = new URL(url + path);
-        HttpsURLConnection conn = (HttpsURLConnection) myUrl.openConnection();
-        conn.setSSLSocketFactory(sslContext.getSocketFactory());
+        HttpsURLConnection conn = transport.openConnection(myUrl, transport.getSocketFactory(subscriptionId, pfx));
         conn.addRequestProperty(USER_AGENT_HEADER, getPlatformUserAgent());
         conn.addRequestProperty(TELEMETRY_HEADER, getPlatformUserAgent());
         conn.addRequestProperty(X_MS_VERSION_HEADER, AZURE_API_VERSION);
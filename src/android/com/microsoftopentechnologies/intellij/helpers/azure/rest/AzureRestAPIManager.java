@@ -16,6 +16,7 @@
 
 package com.microsoftopentechnologies.intellij.helpers.azure.rest;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.microsoftopentechnologies.intellij.helpers.NoSubscriptionException;
 import com.microsoftopentechnologies.intellij.helpers.aadauth.AuthenticationResult;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureAuthenticationMode;
@@ -69,7 +70,7 @@ public interface AzureRestAPIManager {
 
     List<SqlServer> getSqlServers(UUID subscriptionId) throws AzureCmdException;
 
-    void createService(UUID subscriptionId, String region, String username, String password, String serviceName, String server, String database) throws AzureCmdException;
+    ListenableFuture<Void> createService(UUID subscriptionId, String region, String username, String password, String serviceName, String server, String database) throws AzureCmdException;
 
     List<MobileService> getServiceList(UUID subscriptionId) throws AzureCmdException;
 
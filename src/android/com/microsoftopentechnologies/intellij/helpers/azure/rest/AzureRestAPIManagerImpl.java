@@ -15,10 +15,15 @@
  */
 package com.microsoftopentechnologies.intellij.helpers.azure.rest;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.intellij.ide.util.PropertiesComponent;
 import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
 import com.microsoftopentechnologies.intellij.helpers.NoSubscriptionException;
@@ -27,9 +32,11 @@ import com.microsoftopentechnologies.intellij.helpers.XmlHelper;
 import com.microsoftopentechnologies.intellij.helpers.aadauth.AuthenticationResult;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureAuthenticationMode;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
 import com.microsoftopentechnologies.intellij.helpers.azure.rest.model.*;
 import com.microsoftopentechnologies.intellij.model.ms.*;
 import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -39,7 +46,6 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.*;
-import java.lang.reflect.Type;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -94,6 +100,7 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         PropertiesComponent.getInstance().setValue(
                 MSOpenTechToolsApplication.AppSettingsNames.AZURE_AUTHENTICATION_MODE,
                 azureAuthenticationMode.toString());
+        SubscriptionRegistry.getRegistry().invalidate();
     }
 
     public AuthenticationResult getAuthenticationTokenForSubscription(String subscriptionId) {
@@ -190,11 +197,14 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         } finally {
             authenticationTokenLock.unlock();
         }
+
+        SubscriptionRegistry.getRegistry().invalidate();
     }
 
     @Override
     public void clearSubscriptions() throws AzureCmdException {
         PropertiesComponent.getInstance().unsetValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE);
+        SubscriptionRegistry.getRegistry().invalidate();
         subscriptionsLock.lock();
 
         try {
@@ -288,6 +298,7 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
                 if (subscriptionList.getLength() > 0) {
                     String savedXml = XmlHelper.saveXmlToStreamWriter(subscriptionList.item(0).getOwnerDocument());
                     PropertiesComponent.getInstance().setValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, savedXml);
+                    SubscriptionRegistry.getRegistry().invalidate();
                 }
             } else if (mode == AzureAuthenticationMode.ActiveDirectory) {
                 for (Subscription subscription : subscriptions) {
@@ -306,30 +317,31 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         }
     }
 
-    public ArrayList<Subscription> getSubscriptionListFromCert() throws SAXException, ParserConfigurationException, XPathExpressionException, IOException {
-        String subscriptionFile = PropertiesComponent.getInstance().getValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, "");
+    public ArrayList<Subscription> getSubscriptionListFromCert() throws SAXException {
+        Map<String, SubscriptionRegistry.RegisteredSubscription> registered = SubscriptionRegistry.getRegistry().getSubscriptions();
 
-        if (subscriptionFile.trim().isEmpty()) {
+        if (registered.isEmpty()) {
             return null;
         }
 
-        NodeList subscriptionList = (NodeList) XmlHelper.getXMLValue(subscriptionFile, "//Subscription", XPathConstants.NODESET);
-
         ArrayList<Subscription> list = new ArrayList<Subscription>();
 
-        for (int i = 0; i < subscriptionList.getLength(); i++) {
-            Subscription subscription = new Subscription();
-            subscription.setName(XmlHelper.getAttributeValue(subscriptionList.item(i), "Name"));
-            subscription.setId(UUID.fromString(XmlHelper.getAttributeValue(subscriptionList.item(i), "Id")));
-            String selected = XmlHelper.getAttributeValue(subscriptionList.item(i), "Selected");
-            subscription.setSelected(selected == null || selected.equals("true"));
-
-            list.add(subscription);
+        for (SubscriptionRegistry.RegisteredSubscription registeredSubscription : registered.values()) {
+            list.add(toSubscription(registeredSubscription));
         }
 
         return list;
     }
 
+    private static Subscription toSubscription(SubscriptionRegistry.RegisteredSubscription registeredSubscription) {
+        Subscription subscription = new Subscription();
+        subscription.setName(registeredSubscription.getName());
+        subscription.setId(UUID.fromString(registeredSubscription.getId()));
+        subscription.setSelected(registeredSubscription.isSelected());
+
+        return subscription;
+    }
+
     public void refreshSubscriptionListFromToken() throws IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException, ExecutionException, ParserConfigurationException, InterruptedException, AzureCmdException, SAXException, NoSubscriptionException, KeyStoreException, XPathExpressionException, KeyManagementException {
 
         ArrayList<UUID> selectedIds = new ArrayList<UUID>();
@@ -347,6 +359,7 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
 
         String subscriptionXml = AzureRestAPIHelper.getRestApiCommand("subscriptions", null);
         PropertiesComponent.getInstance().setValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, subscriptionXml);
+        SubscriptionRegistry.getRegistry().invalidate();
         NodeList subscriptionList = (NodeList) XmlHelper.getXMLValue(subscriptionXml, "//Subscription", XPathConstants.NODESET);
 
         subscriptionsLock.lock();
@@ -382,7 +395,8 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         AzureAuthenticationMode mode = getAuthenticationMode();
 
         if (mode == AzureAuthenticationMode.SubscriptionSettings) {
-            subscriptions = getSubscriptionListFromCert();
+            SubscriptionRegistry.RegisteredSubscription registered = SubscriptionRegistry.getRegistry().getSubscription(subscriptionId);
+            return registered != null ? toSubscription(registered) : null;
         } else if (mode == AzureAuthenticationMode.ActiveDirectory) {
             subscriptions = getSubscriptionListFromToken();
         }
@@ -420,49 +434,44 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
     }
 
     @Override
-    public List<MobileService> getServiceList(UUID subscriptionId) throws AzureCmdException {
+    public List<MobileService> getServiceList(final UUID subscriptionId) throws AzureCmdException {
         try {
             String path = String.format("/%s/services/mobileservices/mobileservices", subscriptionId.toString());
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            Type type = new TypeToken<ArrayList<MobileServiceData>>() {}.getType();
-            List<MobileServiceData> tempRes = new Gson().fromJson(json, type);
-
-            List<MobileService> res = new ArrayList<MobileService>();
-
-            for (MobileServiceData item : tempRes) {
-                MobileService ser = new MobileService();
-
-                ser.setName(item.getName());
-                ser.setType(item.getType());
-                ser.setState(item.getState());
-                ser.setSelfLink(item.getSelflink());
-                ser.setAppUrl(item.getApplicationUrl());
-                ser.setAppKey(item.getApplicationKey());
-                ser.setMasterKey(item.getMasterKey());
-                ser.setWebspace(item.getWebspace());
-                ser.setRegion(item.getRegion());
-                ser.setMgmtPortalLink(item.getManagementPortalLink());
-                ser.setSubcriptionId(subscriptionId);
-
-                if (item.getPlatform() != null && item.getPlatform().equals("dotNet")) {
-                    ser.setRuntime(MobileService.NET_RUNTIME);
-                } else {
-                    ser.setRuntime(MobileService.NODE_RUNTIME);
-                }
-
-                for (MobileServiceData.Table table : item.getTables()) {
-                    Table t = new Table();
-                    t.setName(table.getName());
-                    t.setSelfLink(table.getSelflink());
-                    ser.getTables().add(t);
-                }
-
-                res.add(ser);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(MobileServiceData.class, new Function<MobileServiceData, MobileService>() {
+                        @Override
+                        public MobileService apply(MobileServiceData item) {
+                            MobileService ser = new MobileService();
+
+                            ser.setName(item.getName());
+                            ser.setType(item.getType());
+                            ser.setState(item.getState());
+                            ser.setSelfLink(item.getSelflink());
+                            ser.setAppUrl(item.getApplicationUrl());
+                            ser.setAppKey(item.getApplicationKey());
+                            ser.setMasterKey(item.getMasterKey());
+                            ser.setWebspace(item.getWebspace());
+                            ser.setRegion(item.getRegion());
+                            ser.setMgmtPortalLink(item.getManagementPortalLink());
+                            ser.setSubcriptionId(subscriptionId);
+
+                            if (item.getPlatform() != null && item.getPlatform().equals("dotNet")) {
+                                ser.setRuntime(MobileService.NET_RUNTIME);
+                            } else {
+                                ser.setRuntime(MobileService.NODE_RUNTIME);
+                            }
+
+                            for (MobileServiceData.Table table : item.getTables()) {
+                                Table t = new Table();
+                                t.setName(table.getName());
+                                t.setSelfLink(table.getSelflink());
+                                ser.getTables().add(t);
+                            }
+
+                            return ser;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting service list", e);
         }
@@ -473,42 +482,34 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         try {
             String path = String.format("/%s/services/mobileservices/regions", subscriptionId.toString());
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-
-            Type type = new TypeToken<ArrayList<RegionData>>() {}.getType();
-            List<RegionData> tempRes = new Gson().fromJson(json, type);
-            List<String> res = new ArrayList<String>();
-
-            for (RegionData item : tempRes) {
-                res.add(item.getRegion());
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(RegionData.class, new Function<RegionData, String>() {
+                        @Override
+                        public String apply(RegionData item) {
+                            return item.getRegion();
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting region list", e);
         }
     }
 
     @Override
-    public List<SqlDb> getSqlDb(UUID subscriptionId, SqlServer server) throws AzureCmdException {
+    public List<SqlDb> getSqlDb(UUID subscriptionId, final SqlServer server) throws AzureCmdException {
         try {
             String path = String.format("/%s/services/sqlservers/servers/%s/databases?contentview=generic", subscriptionId.toString(), server.getName());
-            String xml = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
 
-            List<SqlDb> res = new ArrayList<SqlDb>();
-            NodeList nl = (NodeList) XmlHelper.getXMLValue(xml, "//ServiceResource", XPathConstants.NODESET);
-
-            for (int i = 0; i != nl.getLength(); i++) {
-
-                SqlDb sqls = new SqlDb();
-                sqls.setName(XmlHelper.getChildNodeValue(nl.item(i), "Name"));
-                sqls.setEdition(XmlHelper.getChildNodeValue(nl.item(i), "Edition"));
-                sqls.setServer(server);
-                res.add(sqls);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), false,
+                    AzureRestResponseReaders.xmlElements("ServiceResource", new Function<Map<String, String>, SqlDb>() {
+                        @Override
+                        public SqlDb apply(Map<String, String> values) {
+                            SqlDb sqls = new SqlDb();
+                            sqls.setName(values.get("Name"));
+                            sqls.setEdition(values.get("Edition"));
+                            sqls.setServer(server);
+                            return sqls;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting database list", e);
         }
@@ -518,29 +519,26 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
     public List<SqlServer> getSqlServers(UUID subscriptionId) throws AzureCmdException {
         try {
             String path = String.format("/%s/services/sqlservers/servers", subscriptionId.toString());
-            String xml = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            List<SqlServer> res = new ArrayList<SqlServer>();
-
-            NodeList nl = (NodeList) XmlHelper.getXMLValue(xml, "//Server", XPathConstants.NODESET);
-
-            for (int i = 0; i != nl.getLength(); i++) {
-                SqlServer sqls = new SqlServer();
 
-                sqls.setAdmin(XmlHelper.getChildNodeValue(nl.item(i), "AdministratorLogin"));
-                sqls.setName(XmlHelper.getChildNodeValue(nl.item(i), "Name"));
-                sqls.setRegion(XmlHelper.getChildNodeValue(nl.item(i), "Location"));
-                res.add(sqls);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), false,
+                    AzureRestResponseReaders.xmlElements("Server", new Function<Map<String, String>, SqlServer>() {
+                        @Override
+                        public SqlServer apply(Map<String, String> values) {
+                            SqlServer sqls = new SqlServer();
+
+                            sqls.setAdmin(values.get("AdministratorLogin"));
+                            sqls.setName(values.get("Name"));
+                            sqls.setRegion(values.get("Location"));
+                            return sqls;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting server list", e);
         }
     }
 
     @Override
-    public void createService(UUID subscriptionId, String region, String username, String password, String serviceName, String server, String database) throws AzureCmdException {
+    public ListenableFuture<Void> createService(final UUID subscriptionId, String region, String username, String password, final String serviceName, String server, String database) throws AzureCmdException {
         try {
             String path = String.format("/%s/applications", subscriptionId.toString());
 
@@ -581,18 +579,53 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
                             "<Label>%s</Label><Description>%s</Description><Configuration>%s</Configuration></Application>",
                     serviceName + "mobileservice", serviceName, serviceName, new BASE64Encoder().encode(JSONParameter.getBytes()));
 
-            AzureRestAPIHelper.postRestApiCommand(path, xmlParameter, subscriptionId.toString(), String.format("/%s/operations/", subscriptionId.toString()), false);
-
-            String xml = AzureRestAPIHelper.getRestApiCommand(String.format("/%s/applications/%s", subscriptionId.toString(), serviceName + "mobileservice"), subscriptionId.toString());
-            NodeList statusNode = ((NodeList) XmlHelper.getXMLValue(xml, "//Application/State", XPathConstants.NODESET));
+            // the service is provisioned by Azure in the background; the operation tracker lets
+            // us know when it is done so we don't hold on to a thread in the meantime
+            final SettableFuture<Void> future = SettableFuture.create();
+
+            Futures.addCallback(AzureRestAPIHelper.postRestApiCommandAsync(path, xmlParameter, subscriptionId.toString(), String.format("/%s/operations/", subscriptionId.toString()), false), new FutureCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    try {
+                        String xml = AzureRestAPIHelper.getRestApiCommand(String.format("/%s/applications/%s", subscriptionId.toString(), serviceName + "mobileservice"), subscriptionId.toString());
+                        Document document = XmlHelper.parseXml(xml);
+                        NodeList statusNode = ((NodeList) XmlHelper.getXMLValue(document, "//Application/State", XPathConstants.NODESET));
+
+                        if (!(statusNode.getLength() > 0 && statusNode.item(0).getTextContent().equals("Healthy"))) {
+                            String errors = ((String) XmlHelper.getXMLValue(document, "//FailureCode[text()]", XPathConstants.STRING));
+                            String errorMessage = ((String) XmlHelper.getXMLValue(errors, "//Message[text()]", XPathConstants.STRING));
+                            final AzureCmdException error = new AzureCmdException("Error creating service", errorMessage);
+
+                            Futures.addCallback(deleteService(subscriptionId, serviceName), new FutureCallback<Void>() {
+                                @Override
+                                public void onSuccess(Void result) {
+                                    future.setException(error);
+                                }
+
+                                @Override
+                                public void onFailure(Throwable throwable) {
+                                    future.setException(error);
+                                }
+                            });
+                        } else {
+                            future.set(null);
+                        }
+                    } catch (Throwable t) {
+                        onFailure(t);
+                    }
+                }
 
-            if (!(statusNode.getLength() > 0 && statusNode.item(0).getTextContent().equals("Healthy"))) {
-                deleteService(subscriptionId, serviceName);
+                @Override
+                public void onFailure(Throwable throwable) {
+                    if (throwable instanceof AzureCmdException) {
+                        future.setException(throwable);
+                    } else {
+                        future.setException(new AzureCmdException("Error creating service", throwable));
+                    }
+                }
+            });
 
-                String errors = ((String) XmlHelper.getXMLValue(xml, "//FailureCode[text()]", XPathConstants.STRING));
-                String errorMessage = ((String) XmlHelper.getXMLValue(errors, "//Message[text()]", XPathConstants.STRING));
-                throw new AzureCmdException("Error creating service", errorMessage);
-            }
+            return future;
         } catch (Throwable t) {
             if (t instanceof AzureCmdException) {
                 throw (AzureCmdException) t;
@@ -602,20 +635,41 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         }
     }
 
-    private void deleteService(UUID subscriptionId, String serviceName) {
+    private ListenableFuture<Void> deleteService(final UUID subscriptionId, final String serviceName) {
         String mspath = String.format("/%s/services/mobileservices/mobileservices/%s?deletedata=true", subscriptionId.toString(), serviceName);
 
-        try {
-            AzureRestAPIHelper.deleteRestApiCommand(mspath, subscriptionId.toString(), String.format("/%s/operations/", subscriptionId.toString()), true);
-        } catch (Throwable ignored) {
-        }
+        // the application can only be deleted after the mobile service is gone
+        return Futures.transform(deleteQuietly(mspath, subscriptionId, true), new AsyncFunction<Void, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Void ignored) {
+                String appPath = String.format("/%s/applications/%smobileservice", subscriptionId.toString(), serviceName);
+                return deleteQuietly(appPath, subscriptionId, false);
+            }
+        });
+    }
 
-        String appPath = String.format("/%s/applications/%smobileservice", subscriptionId.toString(), serviceName);
+    // Issues an asynchronous DELETE whose outcome is of no interest to the caller; the returned
+    // future always completes successfully once the operation is over.
+    private ListenableFuture<Void> deleteQuietly(String path, UUID subscriptionId, boolean jsonContent) {
+        final SettableFuture<Void> future = SettableFuture.create();
 
         try {
-            AzureRestAPIHelper.deleteRestApiCommand(appPath, subscriptionId.toString(), String.format("/%s/operations/", subscriptionId.toString()), false);
+            Futures.addCallback(AzureRestAPIHelper.deleteRestApiCommandAsync(path, subscriptionId.toString(), String.format("/%s/operations/", subscriptionId.toString()), jsonContent), new FutureCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    future.set(null);
+                }
+
+                @Override
+                public void onFailure(Throwable ignored) {
+                    future.set(null);
+                }
+            });
         } catch (Throwable ignored) {
+            future.set(null);
         }
+
+        return future;
     }
 
     @Override
@@ -623,22 +677,16 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         try {
             String path = String.format("/%s/services/mobileservices/mobileservices/%s/tables", subscriptionId.toString(), serviceName);
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            Type type = new TypeToken<ArrayList<TableData>>() {}.getType();
-            List<TableData> tempRes = new Gson().fromJson(json, type);
-
-            List<Table> res = new ArrayList<Table>();
-
-            for (TableData item : tempRes) {
-                Table t = new Table();
-                t.setName(item.getName());
-                t.setSelfLink(item.getSelflink());
-
-                res.add(t);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(TableData.class, new Function<TableData, Table>() {
+                        @Override
+                        public Table apply(TableData item) {
+                            Table t = new Table();
+                            t.setName(item.getName());
+                            t.setSelfLink(item.getSelflink());
+                            return t;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting table list", e);
         }
@@ -686,15 +734,15 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
             String path = String.format("/%s/services/mobileservices/mobileservices/%s/tables/%s",
                     subscriptionId.toString(), serviceName, tableName);
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-            Gson gson = new Gson();
-            TableData tempRes = gson.fromJson(json, TableData.class);
+            final TableData tempRes = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.json(TableData.class));
 
             Table t = new Table();
             t.setName(tempRes.getName());
             t.setSelfLink(tempRes.getSelflink());
 
-            TablePermissionsData restTablePermissions = gson.fromJson(AzureRestAPIHelper.getRestApiCommand(path + "/permissions", subscriptionId.toString()), TablePermissionsData.class);
+            TablePermissionsData restTablePermissions = AzureRestAPIHelper.getRestApiCommand(path + "/permissions", subscriptionId.toString(), true,
+                    AzureRestResponseReaders.json(TablePermissionsData.class));
 
             TablePermissions tablePermissions = new TablePermissions();
             tablePermissions.setInsert(PermissionItem.getPermitionType(restTablePermissions.getInsert()));
@@ -703,37 +751,33 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
             tablePermissions.setDelete(PermissionItem.getPermitionType(restTablePermissions.getDelete()));
             t.setTablePermissions(tablePermissions);
 
-            Type colType = new TypeToken<ArrayList<TableColumnData>>() {}.getType();
-            List<TableColumnData> colList = gson.fromJson(AzureRestAPIHelper.getRestApiCommand(path + "/columns", subscriptionId.toString()), colType);
-            if(colList != null) {
-                for (TableColumnData column : colList) {
-                    Column c = new Column();
-                    c.setName(column.getName());
-                    c.setType(column.getType());
-                    c.setSelfLink(column.getSelflink());
-                    c.setIndexed(column.isIndexed());
-                    c.setZumoIndex(column.isZumoIndex());
-
-                    t.getColumns().add(c);
-                }
-            }
-
-
-            Type scrType = new TypeToken<ArrayList<TableScriptData>>() {}.getType();
-            List<TableScriptData> scrList = gson.fromJson(AzureRestAPIHelper.getRestApiCommand(path + "/scripts", subscriptionId.toString()), scrType);
-
-            if(scrList != null) {
-                for (TableScriptData script : scrList) {
-                    Script s = new Script();
-
-                    s.setOperation(script.getOperation());
-                    s.setBytes(script.getSizeBytes());
-                    s.setSelfLink(script.getSelflink());
-                    s.setName(String.format("%s.%s", tempRes.getName(), script.getOperation()));
-
-                    t.getScripts().add(s);
-                }
-            }
+            t.getColumns().addAll(AzureRestAPIHelper.getRestApiCommand(path + "/columns", subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(TableColumnData.class, new Function<TableColumnData, Column>() {
+                        @Override
+                        public Column apply(TableColumnData column) {
+                            Column c = new Column();
+                            c.setName(column.getName());
+                            c.setType(column.getType());
+                            c.setSelfLink(column.getSelflink());
+                            c.setIndexed(column.isIndexed());
+                            c.setZumoIndex(column.isZumoIndex());
+                            return c;
+                        }
+                    })));
+
+            t.getScripts().addAll(AzureRestAPIHelper.getRestApiCommand(path + "/scripts", subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(TableScriptData.class, new Function<TableScriptData, Script>() {
+                        @Override
+                        public Script apply(TableScriptData script) {
+                            Script s = new Script();
+
+                            s.setOperation(script.getOperation());
+                            s.setBytes(script.getSizeBytes());
+                            s.setSelfLink(script.getSelflink());
+                            s.setName(String.format("%s.%s", tempRes.getName(), script.getOperation()));
+                            return s;
+                        }
+                    })));
 
             return t;
         } catch (Exception e) {
@@ -781,27 +825,22 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         try {
             String path = String.format("/%s/services/mobileservices/mobileservices/%s/apis", subscriptionId.toString(), serviceName);
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            Type type = new TypeToken<ArrayList<CustomAPIData>>() {}.getType();
-            List<CustomAPIData> tempRes = new Gson().fromJson(json, type);
-
-            List<CustomAPI> res = new ArrayList<CustomAPI>();
-
-            for (CustomAPIData item : tempRes) {
-                CustomAPI c = new CustomAPI();
-                c.setName(item.getName());
-                CustomAPIPermissions permissions = new CustomAPIPermissions();
-                permissions.setPutPermission(PermissionItem.getPermitionType(item.getPut()));
-                permissions.setPostPermission(PermissionItem.getPermitionType(item.getPost()));
-                permissions.setGetPermission(PermissionItem.getPermitionType(item.getGet()));
-                permissions.setDeletePermission(PermissionItem.getPermitionType(item.getDelete()));
-                permissions.setPatchPermission(PermissionItem.getPermitionType(item.getPatch()));
-                c.setCustomAPIPermissions(permissions);
-                res.add(c);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(CustomAPIData.class, new Function<CustomAPIData, CustomAPI>() {
+                        @Override
+                        public CustomAPI apply(CustomAPIData item) {
+                            CustomAPI c = new CustomAPI();
+                            c.setName(item.getName());
+                            CustomAPIPermissions permissions = new CustomAPIPermissions();
+                            permissions.setPutPermission(PermissionItem.getPermitionType(item.getPut()));
+                            permissions.setPostPermission(PermissionItem.getPermitionType(item.getPost()));
+                            permissions.setGetPermission(PermissionItem.getPermitionType(item.getGet()));
+                            permissions.setDeletePermission(PermissionItem.getPermitionType(item.getDelete()));
+                            permissions.setPatchPermission(PermissionItem.getPermitionType(item.getPatch()));
+                            c.setCustomAPIPermissions(permissions);
+                            return c;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting API list", e);
         }
@@ -880,29 +919,24 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         try {
             String path = String.format("/%s/services/mobileservices/mobileservices/%s/scheduler/jobs", subscriptionId.toString(), serviceName);
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            Type type = new TypeToken<ArrayList<JobData>>() {}.getType();
-            List<JobData> tempRes = new Gson().fromJson(json, type);
-
-            List<Job> res = new ArrayList<Job>();
-
-            for (JobData item : tempRes) {
-                Job j = new Job();
-                j.setAppName(item.getAppName());
-                j.setName(item.getName());
-                j.setEnabled(item.getStatus().equals("enabled"));
-                j.setId(UUID.fromString(item.getId()));
-
-                if (item.getIntervalPeriod() > 0) {
-                    j.setIntervalPeriod(item.getIntervalPeriod());
-                    j.setIntervalUnit(item.getIntervalUnit());
-                }
-
-                res.add(j);
-            }
-
-            return res;
+            return AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.jsonArray(JobData.class, new Function<JobData, Job>() {
+                        @Override
+                        public Job apply(JobData item) {
+                            Job j = new Job();
+                            j.setAppName(item.getAppName());
+                            j.setName(item.getName());
+                            j.setEnabled(item.getStatus().equals("enabled"));
+                            j.setId(UUID.fromString(item.getId()));
+
+                            if (item.getIntervalPeriod() > 0) {
+                                j.setIntervalPeriod(item.getIntervalPeriod());
+                                j.setIntervalUnit(item.getIntervalUnit());
+                            }
+
+                            return j;
+                        }
+                    }));
         } catch (Exception e) {
             throw new AzureCmdException("Error getting job list", e);
         }
@@ -988,9 +1022,8 @@ public class AzureRestAPIManagerImpl implements AzureRestAPIManager {
         try {
             String path = String.format("/%s/services/mobileservices/mobileservices/%s/logs?$top=10", subscriptionId.toString(), serviceName);
 
-            String json = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString());
-
-            LogData tempRes = new Gson().fromJson(json, LogData.class);
+            LogData tempRes = AzureRestAPIHelper.getRestApiCommand(path, subscriptionId.toString(), true,
+                    AzureRestResponseReaders.json(LogData.class));
 
             List<LogEntry> res = new ArrayList<LogEntry>();
 
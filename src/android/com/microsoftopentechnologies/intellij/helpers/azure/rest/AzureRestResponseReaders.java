@@ -0,0 +1,185 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.rest;
+
+import com.google.common.base.Function;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Response readers that decode Azure REST responses straight from the connection's input stream.
+// List responses are converted item by item so that only the resulting model objects are kept
+// around instead of the raw payload, its string copy and the intermediate data objects.
+public class AzureRestResponseReaders {
+    private static final String CHARSET = "UTF-8";
+
+    // the Gson instance caches the type adapters it builds so it is shared by all readers
+    private static final Gson gson = new Gson();
+
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    private AzureRestResponseReaders() {
+    }
+
+    @NotNull
+    public static Gson getGson() {
+        return gson;
+    }
+
+    @NotNull
+    public static <T> AzureRestAPIHelper.ResponseReader<T> json(@NotNull final Class<T> type) {
+        final TypeAdapter<T> adapter = gson.getAdapter(type);
+
+        return new AzureRestAPIHelper.ResponseReader<T>() {
+            @Override
+            public T read(InputStream is) throws IOException {
+                JsonReader reader = new JsonReader(new InputStreamReader(is, CHARSET));
+
+                return isEmpty(reader) ? null : adapter.read(reader);
+            }
+        };
+    }
+
+    // Reads a JSON array of "itemType" objects, handing each one to the converter as soon as it
+    // has been read.
+    @NotNull
+    public static <S, T> AzureRestAPIHelper.ResponseReader<List<T>> jsonArray(@NotNull Class<S> itemType,
+                                                                              @NotNull final Function<S, T> converter) {
+        final TypeAdapter<S> adapter = gson.getAdapter(itemType);
+
+        return new AzureRestAPIHelper.ResponseReader<List<T>>() {
+            @Override
+            public List<T> read(InputStream is) throws IOException {
+                List<T> res = new ArrayList<T>();
+                JsonReader reader = new JsonReader(new InputStreamReader(is, CHARSET));
+
+                if (isEmpty(reader)) {
+                    return res;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    res.add(converter.apply(adapter.read(reader)));
+                }
+                reader.endArray();
+
+                return res;
+            }
+        };
+    }
+
+    // an empty body or a JSON null reads as null, as it does with Gson.fromJson
+    private static boolean isEmpty(@NotNull JsonReader reader) throws IOException {
+        try {
+            return reader.peek() == JsonToken.NULL;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    // Reads every XML element with the local name "elementName" and hands the text values of its
+    // direct child elements, keyed by their local names, to the converter.
+    @NotNull
+    public static <T> AzureRestAPIHelper.ResponseReader<List<T>> xmlElements(@NotNull final String elementName,
+                                                                             @NotNull final Function<Map<String, String>, T> converter) {
+        return new AzureRestAPIHelper.ResponseReader<List<T>>() {
+            @Override
+            public List<T> read(InputStream is) throws IOException {
+                List<T> res = new ArrayList<T>();
+                XMLStreamReader reader = null;
+
+                try {
+                    reader = xmlInputFactory.createXMLStreamReader(is);
+
+                    // "values" is non-null while we're inside a matching element and "depth" is
+                    // the nesting level relative to it; "text" collects the value of the current
+                    // child element and is dropped if that child turns out to have children itself
+                    Map<String, String> values = null;
+                    int depth = 0;
+                    String childName = null;
+                    StringBuilder text = null;
+
+                    while (reader.hasNext()) {
+                        int event = reader.next();
+
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            if (values == null) {
+                                if (elementName.equals(reader.getLocalName())) {
+                                    values = new HashMap<String, String>();
+                                    depth = 0;
+                                }
+                            } else if (++depth == 1) {
+                                childName = reader.getLocalName();
+                                text = new StringBuilder();
+                            } else {
+                                text = null;
+                            }
+                        } else if ((event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) &&
+                                values != null && depth == 1 && text != null) {
+                            text.append(reader.getText());
+                        } else if (event == XMLStreamConstants.END_ELEMENT && values != null) {
+                            if (depth == 0) {
+                                res.add(converter.apply(values));
+                                values = null;
+                            } else {
+                                if (depth == 1 && text != null) {
+                                    values.put(childName, text.toString());
+                                }
+
+                                depth--;
+                            }
+                        }
+                    }
+
+                    return res;
+                } catch (XMLStreamException e) {
+                    throw new IOException(e.getMessage(), e);
+                } finally {
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (XMLStreamException ignored) {
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    @NotNull
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.rest;
+
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.OpenSSLHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sun.misc.BASE64Decoder;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+// Shared HTTP transport for the Azure REST API calls. The JDK keeps HTTPS connections alive
+// and hands them out again only to requests that use the very same SSLSocketFactory
+// instance, so we build the socket factory for a subscription's management certificate
+// once and reuse it; we also cap the number of requests in flight against a single host.
+public class AzureRestTransport {
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    // singleton transport instance
+    private static AzureRestTransport transport = null;
+
+    private final int maxConnectionsPerHost;
+
+    // SSL socket factories by azure subscription ID
+    private final ConcurrentMap<String, CertificateSocketFactory> socketFactories =
+            new ConcurrentHashMap<String, CertificateSocketFactory>();
+
+    // connection permits by "host:port"
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    private static class CertificateSocketFactory {
+        private final String base64Certificate;
+        private final SSLSocketFactory socketFactory;
+
+        private CertificateSocketFactory(String base64Certificate, SSLSocketFactory socketFactory) {
+            this.base64Certificate = base64Certificate;
+            this.socketFactory = socketFactory;
+        }
+    }
+
+    private AzureRestTransport(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost > 0 ? maxConnectionsPerHost : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    }
+
+    @NotNull
+    public static synchronized AzureRestTransport getTransport() {
+        if (transport == null) {
+            int maxConnectionsPerHost = 0;
+
+            if (MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null) {
+                maxConnectionsPerHost = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxConnectionsPerHost();
+            }
+
+            transport = new AzureRestTransport(maxConnectionsPerHost);
+
+            // socket factories are built from the certificates in the subscription settings
+            final AzureRestTransport current = transport;
+            SubscriptionRegistry.getRegistry().addListener(new SubscriptionRegistry.Listener() {
+                @Override
+                public void subscriptionsChanged() {
+                    current.invalidateAll();
+                }
+            });
+        }
+
+        return transport;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    @NotNull
+    public HttpsURLConnection openConnection(@NotNull URL url, @Nullable SSLSocketFactory socketFactory)
+            throws IOException {
+        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+
+        if (socketFactory != null) {
+            conn.setSSLSocketFactory(socketFactory);
+        }
+
+        return conn;
+    }
+
+    // Returns the cached socket factory for the subscription. The factory is rebuilt if the
+    // management certificate we were given differs from the one it was built with, which
+    // happens when a publish settings file for the same subscription is imported again.
+    @NotNull
+    public SSLSocketFactory getSocketFactory(@NotNull String subscriptionId, @NotNull String base64Certificate)
+            throws IOException, KeyStoreException, CertificateException, NoSuchAlgorithmException,
+            UnrecoverableKeyException, KeyManagementException {
+        CertificateSocketFactory entry = socketFactories.get(subscriptionId);
+
+        if (entry == null || !entry.base64Certificate.equals(base64Certificate)) {
+            entry = new CertificateSocketFactory(base64Certificate, createSocketFactory(base64Certificate));
+            socketFactories.put(subscriptionId, entry);
+        }
+
+        return entry.socketFactory;
+    }
+
+    public void invalidate(@NotNull String subscriptionId) {
+        socketFactories.remove(subscriptionId);
+    }
+
+    public void invalidateAll() {
+        socketFactories.clear();
+    }
+
+    // Runs the callback against the connection while holding one of the permits for the
+    // connection's host. Successful responses are drained so that the underlying socket is
+    // handed back to the keep-alive cache; error responses are left for the caller to read.
+    public <T> int execute(@NotNull HttpsURLConnection connection,
+                           @NotNull AzureRestAPIHelper.AzureRestCallback<T> callback)
+            throws IOException {
+        Semaphore permits = getHostPermits(connection.getURL());
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " +
+                    connection.getURL().getHost());
+        }
+
+        try {
+            int responseCode = callback.apply(connection);
+
+            if (responseCode >= 200 && responseCode < 300) {
+                drain(connection);
+            }
+
+            return responseCode;
+        } finally {
+            permits.release();
+        }
+    }
+
+    @NotNull
+    private Semaphore getHostPermits(@NotNull URL url) {
+        String key = url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        Semaphore permits = hostPermits.get(key);
+
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(maxConnectionsPerHost, true);
+            permits = hostPermits.putIfAbsent(key, newPermits);
+
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+
+        return permits;
+    }
+
+    private static void drain(@NotNull HttpsURLConnection connection) {
+        InputStream is = null;
+
+        try {
+            is = connection.getInputStream();
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+
+            //noinspection StatementWithEmptyBody
+            while (is.read(buffer) != -1) {
+            }
+        } catch (IOException ignored) {
+            // the callback has already consumed and closed the stream
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Builds an SSL context for the PKCS12 management certificate of a subscription straight from
+    // memory; also used for the management clients of the Azure SDK.
+    @NotNull
+    public static SSLContext createSSLContext(@NotNull byte[] certificate)
+            throws IOException, KeyStoreException, CertificateException, NoSuchAlgorithmException,
+            UnrecoverableKeyException, KeyManagementException {
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+
+        InputStream is = new ByteArrayInputStream(certificate);
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        ks.load(is, OpenSSLHelper.PASSWORD.toCharArray());
+        keyManagerFactory.init(ks, OpenSSLHelper.PASSWORD.toCharArray());
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, new SecureRandom());
+
+        return sslContext;
+    }
+
+    @NotNull
+    private static SSLSocketFactory createSocketFactory(@NotNull String base64Certificate)
+            throws IOException, KeyStoreException, CertificateException, NoSuchAlgorithmException,
+            UnrecoverableKeyException, KeyManagementException {
+        return createSSLContext(new BASE64Decoder().decodeBuffer(base64Certificate)).getSocketFactory();
+    }
+}
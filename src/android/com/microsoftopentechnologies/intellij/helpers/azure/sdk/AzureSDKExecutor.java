@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.ExecutorHelper;
+import org.jetbrains.annotations.NotNull;
+
+// Bounded executor for the requests that the SDK manager fans out, e.g. one request per cloud
+// service when listing VMs. At most "maxParallelRequests" requests run at the same time; the rest
+// wait in the queue. Tasks running on this executor must not block on other tasks submitted
+// to it or they may starve the pool.
+public class AzureSDKExecutor {
+    private static final int DEFAULT_MAX_PARALLEL_REQUESTS = 8;
+
+    // singleton executor instance
+    private static ListeningExecutorService executor = null;
+
+    private AzureSDKExecutor() {
+    }
+
+    @NotNull
+    public static synchronized ListeningExecutorService getExecutor() {
+        if (executor == null) {
+            int parallelism = DEFAULT_MAX_PARALLEL_REQUESTS;
+
+            if (MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelRequests() > 0) {
+                parallelism = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelRequests();
+            }
+
+            executor = ExecutorHelper.newBoundedExecutor("Azure SDK Request", parallelism);
+        }
+
+        return executor;
+    }
+}
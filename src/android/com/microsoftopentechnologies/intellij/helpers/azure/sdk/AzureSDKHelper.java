@@ -15,11 +15,10 @@
  */
 package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
 
-import com.intellij.ide.util.PropertiesComponent;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.windowsazure.Configuration;
+import com.microsoft.windowsazure.core.FilterableService;
 import com.microsoft.windowsazure.core.pipeline.apache.ApacheConfigurationProperties;
-import com.microsoft.windowsazure.core.utils.Base64;
 import com.microsoft.windowsazure.core.utils.KeyStoreType;
 import com.microsoft.windowsazure.management.ManagementClient;
 import com.microsoft.windowsazure.management.ManagementService;
@@ -31,108 +30,129 @@ import com.microsoft.windowsazure.management.network.NetworkManagementService;
 import com.microsoft.windowsazure.management.storage.StorageManagementClient;
 import com.microsoft.windowsazure.management.storage.StorageManagementService;
 import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
-import com.microsoftopentechnologies.intellij.helpers.OpenSSLHelper;
-import com.microsoftopentechnologies.intellij.helpers.XmlHelper;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureAuthenticationMode;
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
+import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestTransport;
 import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManagerImpl;
 import com.microsoftopentechnologies.intellij.model.storage.StorageAccount;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import java.io.*;
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.InvalidKeyException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.security.*;
 import java.security.cert.CertificateException;
 
 public class AzureSDKHelper {
-    private static class SubscriptionInfo {
-        public String base64Certificate;
-        public String managementURI;
+    private static final ManagementClientCache clientCache = new ManagementClientCache(
+            new ManagementClientCache.ConfigurationProvider() {
+                @Nullable
+                @Override
+                public Configuration getConfiguration(@NotNull String subscriptionId) throws Exception {
+                    return AzureSDKHelper.getConfiguration(subscriptionId);
+                }
+            });
+
+    // Clients are shared; hand them back with releaseClient() instead of closing them.
+    @Nullable
+    public static ComputeManagementClient getComputeManagementClient(@NotNull final String subscriptionId)
+            throws AzureCmdException {
+        return clientCache.acquire(subscriptionId, ComputeManagementClient.class,
+                new ManagementClientCache.ClientFactory<ComputeManagementClient>() {
+                    @NotNull
+                    @Override
+                    public ComputeManagementClient create(@NotNull Configuration configuration) {
+                        setConnectionManager(configuration);
+                        return withAuthFilter(ComputeManagementService.create(configuration), subscriptionId);
+                    }
+                });
     }
 
     @Nullable
-    public static ComputeManagementClient getComputeManagementClient(@NotNull String subscriptionId)
-            throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, XPathExpressionException, ParserConfigurationException, SAXException {
-        Configuration configuration = getConfiguration(subscriptionId);
-
-        if (configuration == null) {
-            return null;
-        }
-
-        ComputeManagementClient client = ComputeManagementService.create(configuration);
-
-        // add a request filter for tacking on the A/D auth token if the current authentication
-        // mode is active directory
-        if (AzureRestAPIManagerImpl.getManager().getAuthenticationMode() == AzureAuthenticationMode.ActiveDirectory) {
-            return client.withRequestFilterFirst(new AuthTokenRequestFilter(subscriptionId));
-        }
-
-        return client;
+    public static StorageManagementClient getStorageManagementClient(@NotNull final String subscriptionId)
+            throws AzureCmdException {
+        return clientCache.acquire(subscriptionId, StorageManagementClient.class,
+                new ManagementClientCache.ClientFactory<StorageManagementClient>() {
+                    @NotNull
+                    @Override
+                    public StorageManagementClient create(@NotNull Configuration configuration) {
+                        setConnectionManager(configuration);
+                        return withAuthFilter(StorageManagementService.create(configuration), subscriptionId);
+                    }
+                });
     }
 
     @Nullable
-    public static StorageManagementClient getStorageManagementClient(@NotNull String subscriptionId)
-            throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, XPathExpressionException, ParserConfigurationException, SAXException {
-        Configuration configuration = getConfiguration(subscriptionId);
-
-        if (configuration == null) {
-            return null;
-        }
-
-        StorageManagementClient client = StorageManagementService.create(configuration);
-
-        // add a request filter for tacking on the A/D auth token if the current authentication
-        // mode is active directory
-        if (AzureRestAPIManagerImpl.getManager().getAuthenticationMode() == AzureAuthenticationMode.ActiveDirectory) {
-            return client.withRequestFilterFirst(new AuthTokenRequestFilter(subscriptionId));
-        }
-
-        return client;
+    public static NetworkManagementClient getNetworkManagementClient(@NotNull final String subscriptionId)
+            throws AzureCmdException {
+        return clientCache.acquire(subscriptionId, NetworkManagementClient.class,
+                new ManagementClientCache.ClientFactory<NetworkManagementClient>() {
+                    @NotNull
+                    @Override
+                    public NetworkManagementClient create(@NotNull Configuration configuration) {
+                        setConnectionManager(configuration);
+                        return withAuthFilter(NetworkManagementService.create(configuration), subscriptionId);
+                    }
+                });
     }
 
     @Nullable
-    public static NetworkManagementClient getNetworkManagementClient(@NotNull String subscriptionId)
-            throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, XPathExpressionException, ParserConfigurationException, SAXException {
-        Configuration configuration = getConfiguration(subscriptionId);
-
-        if (configuration == null) {
-            return null;
-        }
-
-        NetworkManagementClient client = NetworkManagementService.create(configuration);
-
-        // add a request filter for tacking on the A/D auth token if the current authentication
-        // mode is active directory
-        if (AzureRestAPIManagerImpl.getManager().getAuthenticationMode() == AzureAuthenticationMode.ActiveDirectory) {
-            return client.withRequestFilterFirst(new AuthTokenRequestFilter(subscriptionId));
-        }
+    public static ManagementClient getManagementClient(@NotNull final String subscriptionId)
+            throws AzureCmdException {
+        return clientCache.acquire(subscriptionId, ManagementClient.class,
+                new ManagementClientCache.ClientFactory<ManagementClient>() {
+                    @NotNull
+                    @Override
+                    public ManagementClient create(@NotNull Configuration configuration) {
+                        setConnectionManager(configuration);
+                        // the operation monitor polls through this client and honors "Retry-After"
+                        return withAuthFilter(ManagementService.create(configuration), subscriptionId)
+                                .withResponseFilterLast(new RetryAfterResponseFilter());
+                    }
+                });
+    }
 
-        return client;
+    public static void releaseClient(@Nullable Closeable client) {
+        clientCache.release(client);
     }
 
-    @Nullable
-    public static ManagementClient getManagementClient(@NotNull String subscriptionId)
-            throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, XPathExpressionException, ParserConfigurationException, SAXException {
-        Configuration configuration = getConfiguration(subscriptionId);
+    // The SDK's HTTP clients keep at most two connections per host which would serialize the
+    // requests we make in parallel with a shared client. Every client gets a larger pool of its
+    // own since closing a client also shuts its pool down.
+    private static void setConnectionManager(@NotNull Configuration configuration) {
+        LayeredConnectionSocketFactory sslSocketFactory = (LayeredConnectionSocketFactory) configuration.getProperty(
+                ApacheConfigurationProperties.PROPERTY_SSL_CONNECTION_SOCKET_FACTORY);
 
-        if (configuration == null) {
-            return null;
-        }
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory != null ? sslSocketFactory : SSLConnectionSocketFactory.getSocketFactory())
+                .build();
 
-        ManagementClient client = ManagementService.create(configuration);
+        int maxConnectionsPerHost = AzureRestTransport.getTransport().getMaxConnectionsPerHost();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        connectionManager.setMaxTotal(maxConnectionsPerHost * 2);
+
+        configuration.setProperty(ApacheConfigurationProperties.PROPERTY_CONNECTION_MANAGER, connectionManager);
+    }
 
+    @NotNull
+    private static <T extends FilterableService<T>> T withAuthFilter(@NotNull T client, @NotNull String subscriptionId) {
         // add a request filter for tacking on the A/D auth token if the current authentication
-        // mode is active directory
+        // mode is active directory; the filter looks the token up for every request so token
+        // refreshes don't require a new client
         if (AzureRestAPIManagerImpl.getManager().getAuthenticationMode() == AzureAuthenticationMode.ActiveDirectory) {
             return client.withRequestFilterFirst(new AuthTokenRequestFilter(subscriptionId));
         }
@@ -150,8 +170,8 @@ public class AzureSDKHelper {
 
     @Nullable
     private static Configuration getConfiguration(@NotNull String subscriptionId)
-            throws CertificateException, NoSuchAlgorithmException, KeyStoreException, XPathExpressionException,
-            SAXException, ParserConfigurationException, IOException {
+            throws CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException,
+            KeyManagementException, SAXException, IOException {
         switch (AzureRestAPIManagerImpl.getManager().getAuthenticationMode()) {
             case SubscriptionSettings:
                 return getConfigurationFromPublishSettings(subscriptionId);
@@ -164,7 +184,7 @@ public class AzureSDKHelper {
 
     @Nullable
     private static Configuration getConfigurationFromAuthToken(@NotNull String subscriptionId)
-            throws SAXException, ParserConfigurationException, XPathExpressionException, IOException {
+            throws IOException {
         // NOTE: This implementation has to be considered as somewhat hacky. It relies on certain
         // internal implementation details of the Azure SDK for Java. For example we supply null
         // values for the key store location and password and specify a key store type value
@@ -177,28 +197,18 @@ public class AzureSDKHelper {
         Thread.currentThread().setContextClassLoader(AzureSDKHelper.class.getClassLoader());
 
         try {
-            // create a default configuration object
+            // create a default configuration object; every subscription gets a configuration
+            // object of its own (rather than the SDK's shared instance) so no SSL connection
+            // factory added for certificate based auth can linger in it
             Configuration configuration = ManagementConfiguration.configure(
+                    null, Configuration.load(),
                     URI.create(azureServiceManagementUri),
                     subscriptionId, null, null, KeyStoreType.pkcs12);
 
-            if (configuration != null) {
-                // replace the credential provider with a custom one that does nothing
-                configuration.setProperty(
-                        ManagementConfiguration.SUBSCRIPTION_CLOUD_CREDENTIALS,
-                        new EmptyCloudCredentials(subscriptionId));
-
-                // remove the SSL connection factory in case one was added; this is needed
-                // in the case when the user switches from subscription based auth to A/D
-                // sign-in because in that scenario the CertificateCloudCredentials class
-                // would have added an SSL connection factory object to the configuration
-                // object which would then be used when making the SSL call to the Azure
-                // service management API. This tells us that the configuration object is
-                // reused across calls to ManagementConfiguration.configure. The SSL connection
-                // factory object so configured will attempt to use certificate based auth
-                // which will fail since we don't have a certificate handy when using A/D auth.
-                configuration.getProperties().remove(ApacheConfigurationProperties.PROPERTY_SSL_CONNECTION_SOCKET_FACTORY);
-            }
+            // replace the credential provider with a custom one that does nothing
+            configuration.setProperty(
+                    ManagementConfiguration.SUBSCRIPTION_CLOUD_CREDENTIALS,
+                    new EmptyCloudCredentials(subscriptionId));
 
             return configuration;
         } finally {
@@ -208,80 +218,36 @@ public class AzureSDKHelper {
 
     @Nullable
     private static Configuration getConfigurationFromPublishSettings(@NotNull String subscriptionId)
-            throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException, ParserConfigurationException, XPathExpressionException, SAXException {
-        SubscriptionInfo subscriptionInfo = getSubscriptionInfoFromPublishSettings(subscriptionId);
+            throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException,
+            UnrecoverableKeyException, KeyManagementException, SAXException {
+        SubscriptionRegistry.RegisteredSubscription subscription = SubscriptionRegistry.getRegistry().getSubscription(subscriptionId);
 
-        if (subscriptionInfo == null) {
+        if (subscription == null || subscription.getCertificate() == null) {
             return null;
         }
 
-        String keyStorePath = File.createTempFile("azk", null).getPath();
-
-        initKeyStore(
-                subscriptionInfo.base64Certificate != null ? subscriptionInfo.base64Certificate : "",
-                OpenSSLHelper.PASSWORD,
-                keyStorePath,
-                OpenSSLHelper.PASSWORD);
+        // the key store stays in memory; the SSL context built from it is handed to the SDK by
+        // our own credentials object instead of the SDK reading a key store file
+        SSLContext sslContext = AzureRestTransport.createSSLContext(subscription.getCertificate());
 
         ClassLoader old = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(AzureSDKHelper.class.getClassLoader());
 
         try {
-            return ManagementConfiguration.configure(URI.create(subscriptionInfo.managementURI), subscriptionId, keyStorePath, OpenSSLHelper.PASSWORD, KeyStoreType.pkcs12);
-        } finally {
-            Thread.currentThread().setContextClassLoader(old);
-        }
-    }
-
-    @Nullable
-    private static SubscriptionInfo getSubscriptionInfoFromPublishSettings(@NotNull String subscriptionId)
-            throws SAXException, ParserConfigurationException, XPathExpressionException, IOException {
-        String publishSettings = PropertiesComponent.getInstance().getValue(MSOpenTechToolsApplication.AppSettingsNames.SUBSCRIPTION_FILE, "");
-
-        if (publishSettings.isEmpty()) {
-            return null;
-        }
-
-        Node node = null;
-
-        NodeList subsList = (NodeList) XmlHelper.getXMLValue(publishSettings, "//PublishData/PublishProfile/Subscription", XPathConstants.NODESET);
-
-        for (int i = 0; i < subsList.getLength(); i++) {
-            String id = XmlHelper.getAttributeValue(subsList.item(i), "Id");
-
-            if (id.equals(subscriptionId)) {
-                node = subsList.item(i);
-                break;
-            }
-        }
-
-        if (node == null) {
-            return null;
-        }
-
-        SubscriptionInfo subscriptionInfo = new SubscriptionInfo();
-        subscriptionInfo.base64Certificate = XmlHelper.getAttributeValue(node, "ManagementCertificate");
-        subscriptionInfo.managementURI = XmlHelper.getAttributeValue(node, "ServiceManagementUrl");
-
-        return subscriptionInfo;
-    }
-
-    private static void initKeyStore(@NotNull String base64Certificate, @NotNull String certificatePwd, @NotNull String keyStorePath, @NotNull String keyStorePwd)
-            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
-        FileOutputStream keyStoreOutputStream = new FileOutputStream(keyStorePath);
+            Configuration configuration = ManagementConfiguration.configure(
+                    null, Configuration.load(),
+                    URI.create(subscription.getManagementUrl()),
+                    subscriptionId, null, null, KeyStoreType.pkcs12);
 
-        try {
-            KeyStore store = KeyStore.getInstance("PKCS12");
-            store.load(null, null);
+            InMemoryCertificateCloudCredentials credentials = new InMemoryCertificateCloudCredentials(subscriptionId, sslContext);
+            configuration.setProperty(ManagementConfiguration.SUBSCRIPTION_CLOUD_CREDENTIALS, credentials);
 
-            final byte[] decode = Base64.decode(base64Certificate);
-            InputStream sslInputStream = new ByteArrayInputStream(decode);
-            store.load(sslInputStream, certificatePwd.toCharArray());
+            // the socket factory is needed up front for the connection pools of the clients
+            credentials.applyConfig("", configuration.getProperties());
 
-            // we need to a create a physical key store as well here
-            store.store(keyStoreOutputStream, keyStorePwd.toCharArray());
+            return configuration;
         } finally {
-            keyStoreOutputStream.close();
+            Thread.currentThread().setContextClassLoader(old);
         }
     }
-}
\ No newline at end of file
+}
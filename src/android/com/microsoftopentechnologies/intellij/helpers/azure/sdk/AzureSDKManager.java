@@ -15,6 +15,7 @@
  */
 package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.microsoft.azure.storage.RequestCompletedEvent;
 import com.microsoft.azure.storage.StorageEvent;
 import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
@@ -22,30 +23,52 @@ import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
 import com.microsoftopentechnologies.intellij.model.storage.*;
 import com.microsoftopentechnologies.intellij.model.vm.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 public interface AzureSDKManager {
     @NotNull
     List<CloudService> getCloudServices(@NotNull String subscriptionId) throws AzureCmdException;
 
+    // Returns the VMs of all cloud services. If only some cloud services could be loaded a
+    // PartialVirtualMachineListException with the VMs of the others and the errors of the failed
+    // ones is thrown instead.
     @NotNull
     List<VirtualMachine> getVirtualMachines(@NotNull String subscriptionId) throws AzureCmdException;
 
+    // Loads the VMs of all cloud services in parallel and hands the VMs of each cloud service to
+    // "serviceLoaded" as soon as it completes; the callback may be invoked from several threads.
+    // The cloud services that could not be loaded are reported at the end with a
+    // PartialVirtualMachineListException, the VMs of the others have been handed to
+    // "serviceLoaded" by then.
+    @NotNull
+    List<VirtualMachine> getVirtualMachines(@NotNull String subscriptionId,
+                                            @Nullable CallableSingleArg<Void, List<VirtualMachine>> serviceLoaded)
+            throws AzureCmdException;
+
     @NotNull
     VirtualMachine refreshVirtualMachineInformation(@NotNull VirtualMachine vm) throws AzureCmdException;
 
-    void startVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException;
+    // The VM lifecycle methods return once Azure has accepted the operation; the returned future
+    // completes when the operation does and fails with an AzureCmdException if it fails. No
+    // thread waits for the operation in the meantime.
+    @NotNull
+    ListenableFuture<Void> startVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException;
 
-    void shutdownVirtualMachine(@NotNull VirtualMachine vm, boolean deallocate) throws AzureCmdException;
+    @NotNull
+    ListenableFuture<Void> shutdownVirtualMachine(@NotNull VirtualMachine vm, boolean deallocate) throws AzureCmdException;
 
-    void restartVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException;
+    @NotNull
+    ListenableFuture<Void> restartVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException;
 
-    void deleteVirtualMachine(@NotNull VirtualMachine vm, boolean deleteFromStorage) throws AzureCmdException;
+    @NotNull
+    ListenableFuture<Void> deleteVirtualMachine(@NotNull VirtualMachine vm, boolean deleteFromStorage) throws AzureCmdException;
 
     @NotNull
     byte[] downloadRDP(@NotNull VirtualMachine vm) throws AzureCmdException;
@@ -109,6 +132,15 @@ public interface AzureSDKManager {
     List<BlobItem> getBlobItems(@NotNull StorageAccount storageAccount, @NotNull BlobDirectory blobDirectory)
             throws AzureCmdException;
 
+    @NotNull
+    BlobItemPage getBlobItemPage(@NotNull StorageAccount storageAccount,
+                                 @NotNull BlobDirectory blobDirectory,
+                                 @Nullable String prefix,
+                                 boolean flatListing,
+                                 @Nullable String continuationToken,
+                                 int pageSize)
+            throws AzureCmdException;
+
     @NotNull
     BlobDirectory createBlobDirectory(@NotNull StorageAccount storageAccount,
                                       @NotNull BlobDirectory parentBlobDirectory,
@@ -125,6 +157,20 @@ public interface AzureSDKManager {
                         @NotNull BlobFile blobFile)
             throws AzureCmdException;
 
+    // the blobs that could not be deleted, with the error for each of them
+    @NotNull
+    Map<BlobFile, Exception> deleteBlobFiles(@NotNull StorageAccount storageAccount,
+                                             @NotNull List<BlobFile> blobFiles,
+                                             @Nullable CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException;
+
+    @NotNull
+    Map<BlobFile, Exception> deleteBlobDirectory(@NotNull StorageAccount storageAccount,
+                                                 @NotNull BlobDirectory blobDirectory,
+                                                 @Nullable String prefix,
+                                                 @Nullable CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException;
+
 
     public void uploadBlobFileContent(@NotNull StorageAccount storageAccount,
                                       @NotNull BlobContainer blobContainer,
@@ -135,8 +181,21 @@ public interface AzureSDKManager {
                                       long length)
             throws AzureCmdException;
 
+    void uploadBlobFileContent(@NotNull StorageAccount storageAccount,
+                               @NotNull BlobContainer blobContainer,
+                               @NotNull String filePath,
+                               @NotNull File file,
+                               @Nullable CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException;
+
     void downloadBlobFileContent(@NotNull StorageAccount storageAccount,
                                  @NotNull BlobFile blobFile,
                                  @NotNull OutputStream content)
             throws AzureCmdException;
+
+    void downloadBlobFileContent(@NotNull StorageAccount storageAccount,
+                                 @NotNull BlobFile blobFile,
+                                 @NotNull File file,
+                                 @Nullable CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException;
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.microsoft.windowsazure.exception.ServiceException;
 import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
 import com.microsoftopentechnologies.intellij.components.PluginSettings;
@@ -29,11 +30,14 @@ import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIMan
 import com.microsoftopentechnologies.intellij.model.storage.*;
 import com.microsoftopentechnologies.intellij.model.vm.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.util.List;
+import java.util.Map;
 
 public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
     protected AzureSDKManager sdkManager;
@@ -133,6 +137,19 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
         });
     }
 
+    @NotNull
+    @Override
+    public List<VirtualMachine> getVirtualMachines(@NotNull final String subscriptionId,
+                                                   @Nullable final CallableSingleArg<Void, List<VirtualMachine>> serviceLoaded)
+            throws AzureCmdException {
+        return runWithRetry(subscriptionId, new Func0<List<VirtualMachine>>() {
+            @Override
+            public List<VirtualMachine> run() throws AzureCmdException {
+                return sdkManager.getVirtualMachines(subscriptionId, serviceLoaded);
+            }
+        });
+    }
+
     @NotNull
     @Override
     public VirtualMachine refreshVirtualMachineInformation(@NotNull final VirtualMachine vm) throws AzureCmdException {
@@ -144,46 +161,46 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
         });
     }
 
+    @NotNull
     @Override
-    public void startVirtualMachine(@NotNull final VirtualMachine vm) throws AzureCmdException {
-        runWithRetry(vm.getSubscriptionId(), new Func0<Void>() {
+    public ListenableFuture<Void> startVirtualMachine(@NotNull final VirtualMachine vm) throws AzureCmdException {
+        return runWithRetry(vm.getSubscriptionId(), new Func0<ListenableFuture<Void>>() {
             @Override
-            public Void run() throws AzureCmdException {
-                sdkManager.startVirtualMachine(vm);
-                return null;
+            public ListenableFuture<Void> run() throws AzureCmdException {
+                return sdkManager.startVirtualMachine(vm);
             }
         });
     }
 
+    @NotNull
     @Override
-    public void shutdownVirtualMachine(@NotNull final VirtualMachine vm, final boolean deallocate) throws AzureCmdException {
-        runWithRetry(vm.getSubscriptionId(), new Func0<Void>() {
+    public ListenableFuture<Void> shutdownVirtualMachine(@NotNull final VirtualMachine vm, final boolean deallocate) throws AzureCmdException {
+        return runWithRetry(vm.getSubscriptionId(), new Func0<ListenableFuture<Void>>() {
             @Override
-            public Void run() throws AzureCmdException {
-                sdkManager.shutdownVirtualMachine(vm, deallocate);
-                return null;
+            public ListenableFuture<Void> run() throws AzureCmdException {
+                return sdkManager.shutdownVirtualMachine(vm, deallocate);
             }
         });
     }
 
+    @NotNull
     @Override
-    public void restartVirtualMachine(@NotNull final VirtualMachine vm) throws AzureCmdException {
-        runWithRetry(vm.getSubscriptionId(), new Func0<Void>() {
+    public ListenableFuture<Void> restartVirtualMachine(@NotNull final VirtualMachine vm) throws AzureCmdException {
+        return runWithRetry(vm.getSubscriptionId(), new Func0<ListenableFuture<Void>>() {
             @Override
-            public Void run() throws AzureCmdException {
-                sdkManager.restartVirtualMachine(vm);
-                return null;
+            public ListenableFuture<Void> run() throws AzureCmdException {
+                return sdkManager.restartVirtualMachine(vm);
             }
         });
     }
 
+    @NotNull
     @Override
-    public void deleteVirtualMachine(@NotNull final VirtualMachine vm, final boolean deleteFromStorage) throws AzureCmdException {
-        runWithRetry(vm.getSubscriptionId(), new Func0<Void>() {
+    public ListenableFuture<Void> deleteVirtualMachine(@NotNull final VirtualMachine vm, final boolean deleteFromStorage) throws AzureCmdException {
+        return runWithRetry(vm.getSubscriptionId(), new Func0<ListenableFuture<Void>>() {
             @Override
-            public Void run() throws AzureCmdException {
-                sdkManager.deleteVirtualMachine(vm, deleteFromStorage);
-                return null;
+            public ListenableFuture<Void> run() throws AzureCmdException {
+                return sdkManager.deleteVirtualMachine(vm, deleteFromStorage);
             }
         });
     }
@@ -424,6 +441,24 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
         });
     }
 
+    @NotNull
+    @Override
+    public BlobItemPage getBlobItemPage(@NotNull final StorageAccount storageAccount,
+                                        @NotNull final BlobDirectory blobDirectory,
+                                        @Nullable final String prefix,
+                                        final boolean flatListing,
+                                        @Nullable final String continuationToken,
+                                        final int pageSize)
+            throws AzureCmdException {
+        return runWithRetry(storageAccount.getSubscriptionId(), new Func0<BlobItemPage>() {
+            @Override
+            public BlobItemPage run() throws AzureCmdException {
+                return sdkManager.getBlobItemPage(storageAccount, blobDirectory, prefix, flatListing,
+                        continuationToken, pageSize);
+            }
+        });
+    }
+
     @NotNull
     @Override
     public BlobDirectory createBlobDirectory(@NotNull final StorageAccount storageAccount,
@@ -465,6 +500,35 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
         });
     }
 
+    @NotNull
+    @Override
+    public Map<BlobFile, Exception> deleteBlobFiles(@NotNull final StorageAccount storageAccount,
+                                                    @NotNull final List<BlobFile> blobFiles,
+                                                    @Nullable final CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException {
+        return runWithRetry(storageAccount.getSubscriptionId(), new Func0<Map<BlobFile, Exception>>() {
+            @Override
+            public Map<BlobFile, Exception> run() throws AzureCmdException {
+                return sdkManager.deleteBlobFiles(storageAccount, blobFiles, processDeleteEvent);
+            }
+        });
+    }
+
+    @NotNull
+    @Override
+    public Map<BlobFile, Exception> deleteBlobDirectory(@NotNull final StorageAccount storageAccount,
+                                                        @NotNull final BlobDirectory blobDirectory,
+                                                        @Nullable final String prefix,
+                                                        @Nullable final CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException {
+        return runWithRetry(storageAccount.getSubscriptionId(), new Func0<Map<BlobFile, Exception>>() {
+            @Override
+            public Map<BlobFile, Exception> run() throws AzureCmdException {
+                return sdkManager.deleteBlobDirectory(storageAccount, blobDirectory, prefix, processDeleteEvent);
+            }
+        });
+    }
+
 
     @Override
     public void uploadBlobFileContent(final @NotNull StorageAccount storageAccount,
@@ -483,6 +547,22 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
         });
     }
 
+    @Override
+    public void uploadBlobFileContent(@NotNull final StorageAccount storageAccount,
+                                      @NotNull final BlobContainer blobContainer,
+                                      @NotNull final String filePath,
+                                      @NotNull final File file,
+                                      @Nullable final CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException {
+        runWithRetry(storageAccount.getSubscriptionId(), new Func0<Void>() {
+            @Override
+            public Void run() throws AzureCmdException {
+                sdkManager.uploadBlobFileContent(storageAccount, blobContainer, filePath, file, processBlockEvent);
+                return null;
+            }
+        });
+    }
+
     @Override
     public void downloadBlobFileContent(@NotNull final StorageAccount storageAccount,
                                         @NotNull final BlobFile blobFile,
@@ -496,4 +576,19 @@ public class AzureSDKManagerADAuthDecorator implements AzureSDKManager {
             }
         });
     }
+
+    @Override
+    public void downloadBlobFileContent(@NotNull final StorageAccount storageAccount,
+                                        @NotNull final BlobFile blobFile,
+                                        @NotNull final File file,
+                                        @Nullable final CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException {
+        runWithRetry(storageAccount.getSubscriptionId(), new Func0<Void>() {
+            @Override
+            public Void run() throws AzureCmdException {
+                sdkManager.downloadBlobFileContent(storageAccount, blobFile, file, processBlockEvent);
+                return null;
+            }
+        });
+    }
 }
\ No newline at end of file
@@ -16,14 +16,16 @@
 package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.microsoft.azure.storage.*;
 import com.microsoft.azure.storage.blob.*;
 import com.microsoft.windowsazure.core.OperationResponse;
-import com.microsoft.windowsazure.core.OperationStatus;
 import com.microsoft.windowsazure.core.OperationStatusResponse;
 import com.microsoft.windowsazure.exception.ServiceException;
 import com.microsoft.windowsazure.management.AffinityGroupOperations;
@@ -51,6 +53,7 @@ import com.microsoftopentechnologies.azuremanagementutil.util.Base64;
 import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureAuthenticationMode;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureOperationTracker;
 import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManagerImpl;
 import com.microsoftopentechnologies.intellij.model.storage.*;
 import com.microsoftopentechnologies.intellij.model.storage.StorageAccount;
@@ -66,9 +69,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class AzureSDKManagerImpl implements AzureSDKManager {
+    private static final Logger LOG = Logger.getInstance(AzureSDKManagerImpl.class);
 
     private static class StatusLiterals {
         private static final String UNKNOWN = "Unknown";
@@ -100,6 +106,8 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
     private static final String WINDOWS_PROVISIONING_CONFIGURATION = "WindowsProvisioningConfiguration";
     private static final String LINUX_PROVISIONING_CONFIGURATION = "LinuxProvisioningConfiguration";
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+    // the most entries the storage service returns for one listing request
+    private static final int MAX_BLOB_PAGE_SIZE = 5000;
 
     private static AzureSDKManager apiManager;
     private static AzureSDKManager apiManagerADAuth;
@@ -123,9 +131,10 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
 
     @NotNull
     @Override
-    public List<CloudService> getCloudServices(@NotNull String subscriptionId) throws AzureCmdException {
+    public List<CloudService> getCloudServices(@NotNull final String subscriptionId) throws AzureCmdException {
         List<CloudService> csList = new ArrayList<CloudService>();
         ComputeManagementClient client = null;
+        List<ListenableFuture<CloudService>> futures = new ArrayList<ListenableFuture<CloudService>>();
 
         try {
             client = getComputeManagementClient(subscriptionId);
@@ -136,58 +145,66 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 return csList;
             }
 
-            for (HostedService hostedService : hostedServices) {
-                ListenableFuture<DeploymentGetResponse> productionFuture = getDeploymentAsync(
-                        client,
-                        hostedService.getServiceName(),
-                        DeploymentSlot.Production);
-                ListenableFuture<DeploymentGetResponse> stagingFuture = getDeploymentAsync(
-                        client,
-                        hostedService.getServiceName(),
-                        DeploymentSlot.Staging);
-
-                DeploymentGetResponse prodDGR = productionFuture.get();
-
-                DeploymentGetResponse stagingDGR = stagingFuture.get();
-
-                CloudService cloudService = new CloudService(
-                        hostedService.getServiceName() != null ? hostedService.getServiceName() : "",
-                        hostedService.getProperties() != null && hostedService.getProperties().getLocation() != null ?
-                                hostedService.getProperties().getLocation() :
-                                "",
-                        hostedService.getProperties() != null && hostedService.getProperties().getAffinityGroup() != null ?
-                                hostedService.getProperties().getAffinityGroup() :
-                                "",
-                        subscriptionId);
-
-                loadDeployment(prodDGR, cloudService);
+            // the production and staging lookups of all cloud services are issued up front and
+            // the bounded SDK executor decides how many of them are in flight
+            for (final HostedService hostedService : hostedServices) {
+                ListenableFuture<List<DeploymentGetResponse>> deploymentsFuture = Futures.allAsList(
+                        getDeploymentAsync(client, hostedService.getServiceName(), DeploymentSlot.Production),
+                        getDeploymentAsync(client, hostedService.getServiceName(), DeploymentSlot.Staging));
+
+                futures.add(Futures.transform(deploymentsFuture, new AsyncFunction<List<DeploymentGetResponse>, CloudService>() {
+                    @Override
+                    public ListenableFuture<CloudService> apply(List<DeploymentGetResponse> deployments) throws Exception {
+                        CloudService cloudService = new CloudService(
+                                hostedService.getServiceName() != null ? hostedService.getServiceName() : "",
+                                hostedService.getProperties() != null && hostedService.getProperties().getLocation() != null ?
+                                        hostedService.getProperties().getLocation() :
+                                        "",
+                                hostedService.getProperties() != null && hostedService.getProperties().getAffinityGroup() != null ?
+                                        hostedService.getProperties().getAffinityGroup() :
+                                        "",
+                                subscriptionId);
 
-                cloudService = loadDeployment(prodDGR, cloudService);
-                cloudService = loadDeployment(stagingDGR, cloudService);
+                        for (DeploymentGetResponse deployment : deployments) {
+                            cloudService = loadDeployment(deployment, cloudService);
+                        }
 
-                csList.add(cloudService);
+                        return Futures.immediateFuture(cloudService);
+                    }
+                }));
             }
 
+            csList.addAll(Futures.allAsList(futures).get());
+
             return csList;
         } catch (ExecutionException e) {
+            cancelAll(futures);
             throw new AzureCmdException("Error retrieving the Cloud Service list", e.getCause());
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new AzureCmdException("Error retrieving the Cloud Service list", e);
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the Cloud Service list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
     @NotNull
     @Override
     public List<VirtualMachine> getVirtualMachines(@NotNull String subscriptionId) throws AzureCmdException {
+        return getVirtualMachines(subscriptionId, null);
+    }
+
+    @NotNull
+    @Override
+    public List<VirtualMachine> getVirtualMachines(@NotNull final String subscriptionId,
+                                                   @Nullable final CallableSingleArg<Void, List<VirtualMachine>> serviceLoaded)
+            throws AzureCmdException {
         List<VirtualMachine> vmList = new ArrayList<VirtualMachine>();
         ComputeManagementClient client = null;
+        List<ListenableFuture<List<VirtualMachine>>> futures = new ArrayList<ListenableFuture<List<VirtualMachine>>>();
 
         try {
             client = getComputeManagementClient(subscriptionId);
@@ -198,21 +215,72 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 return vmList;
             }
 
+            // the deployment of every cloud service is fetched on the bounded SDK executor
+            final ComputeManagementClient computeClient = client;
+            List<String> serviceNames = new ArrayList<String>();
+
             for (HostedService hostedService : hostedServices) {
-                String serviceName = hostedService.getServiceName() != null ? hostedService.getServiceName() : "";
-                vmList = loadVirtualMachines(client, subscriptionId, serviceName, vmList);
+                final String serviceName = hostedService.getServiceName() != null ? hostedService.getServiceName() : "";
+                serviceNames.add(serviceName);
+
+                futures.add(AzureSDKExecutor.getExecutor().submit(new Callable<List<VirtualMachine>>() {
+                    @Override
+                    public List<VirtualMachine> call() throws Exception {
+                        List<VirtualMachine> serviceVMs = loadVirtualMachines(computeClient, subscriptionId,
+                                serviceName, new ArrayList<VirtualMachine>());
+
+                        if (serviceLoaded != null) {
+                            serviceLoaded.call(serviceVMs);
+                        }
+
+                        return serviceVMs;
+                    }
+                }));
+            }
+
+            // merge the results in cloud service order; a cloud service that fails doesn't keep
+            // the VMs of the others from being loaded
+            StringBuilder errorLog = new StringBuilder();
+            Map<String, Throwable> failedServices = new LinkedHashMap<String, Throwable>();
+            Throwable firstError = null;
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    vmList.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+
+                    if (firstError == null) {
+                        firstError = cause;
+                    }
+
+                    failedServices.put(serviceNames.get(i), cause);
+                    errorLog.append(serviceNames.get(i)).append(": ").append(cause.getMessage()).append("\n");
+                }
+            }
+
+            if (!failedServices.isEmpty() && failedServices.size() == futures.size()) {
+                throw new AzureCmdException("Error retrieving the VM list", firstError);
+            } else if (!failedServices.isEmpty()) {
+                String message = String.format("Error retrieving the VMs of %d of %d cloud services",
+                        failedServices.size(), futures.size());
+
+                LOG.warn(message + "\n" + errorLog);
+
+                throw new PartialVirtualMachineListException(message, errorLog.toString(), vmList, failedServices);
             }
 
             return vmList;
+        } catch (AzureCmdException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new AzureCmdException("Error retrieving the VM list", e);
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the VM list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -253,17 +321,13 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error refreshing the VM information", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
+    @NotNull
     @Override
-    public void startVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException {
+    public ListenableFuture<Void> startVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException {
         ComputeManagementClient client = null;
 
         try {
@@ -271,23 +335,19 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
 
             VirtualMachineOperations vmo = getVirtualMachineOperations(client);
 
-            OperationStatusResponse osr = vmo.start(vm.getServiceName(), vm.getDeploymentName(), vm.getName());
+            OperationResponse or = vmo.beginStarting(vm.getServiceName(), vm.getDeploymentName(), vm.getName());
 
-            validateOperationStatus(osr);
+            return trackOperation(vm.getSubscriptionId(), or, "Starting " + vm.getName(), "Error starting the VM");
         } catch (Throwable t) {
             throw new AzureCmdException("Error starting the VM", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
+    @NotNull
     @Override
-    public void shutdownVirtualMachine(@NotNull VirtualMachine vm, boolean deallocate) throws AzureCmdException {
+    public ListenableFuture<Void> shutdownVirtualMachine(@NotNull VirtualMachine vm, boolean deallocate) throws AzureCmdException {
         ComputeManagementClient client = null;
 
         try {
@@ -298,23 +358,19 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             VirtualMachineShutdownParameters parameters = new VirtualMachineShutdownParameters();
             parameters.setPostShutdownAction(deallocate ? PostShutdownAction.StoppedDeallocated : PostShutdownAction.Stopped);
 
-            OperationStatusResponse osr = vmo.shutdown(vm.getServiceName(), vm.getDeploymentName(), vm.getName(), parameters);
+            OperationResponse or = vmo.beginShutdown(vm.getServiceName(), vm.getDeploymentName(), vm.getName(), parameters);
 
-            validateOperationStatus(osr);
+            return trackOperation(vm.getSubscriptionId(), or, "Shutting down " + vm.getName(), "Error shutting down the VM");
         } catch (Throwable t) {
             throw new AzureCmdException("Error shutting down the VM", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
+    @NotNull
     @Override
-    public void restartVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException {
+    public ListenableFuture<Void> restartVirtualMachine(@NotNull VirtualMachine vm) throws AzureCmdException {
         ComputeManagementClient client = null;
 
         try {
@@ -322,23 +378,19 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
 
             VirtualMachineOperations vmo = getVirtualMachineOperations(client);
 
-            OperationStatusResponse osr = vmo.restart(vm.getServiceName(), vm.getDeploymentName(), vm.getName());
+            OperationResponse or = vmo.beginRestarting(vm.getServiceName(), vm.getDeploymentName(), vm.getName());
 
-            validateOperationStatus(osr);
+            return trackOperation(vm.getSubscriptionId(), or, "Restarting " + vm.getName(), "Error restarting the VM");
         } catch (Throwable t) {
             throw new AzureCmdException("Error restarting the VM", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
+    @NotNull
     @Override
-    public void deleteVirtualMachine(@NotNull VirtualMachine vm, boolean deleteFromStorage) throws AzureCmdException {
+    public ListenableFuture<Void> deleteVirtualMachine(@NotNull VirtualMachine vm, boolean deleteFromStorage) throws AzureCmdException {
         ComputeManagementClient client = null;
 
         try {
@@ -352,24 +404,19 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 Role role = roles.get(0);
 
                 if (PERSISTENT_VM_ROLE.equals(role.getRoleType()) && vm.getName().equals(role.getRoleName())) {
-                    deleteDeployment(client, vm.getServiceName(), vm.getDeploymentName(), deleteFromStorage);
+                    return deleteDeployment(client, vm.getSubscriptionId(), vm.getServiceName(), vm.getDeploymentName(), deleteFromStorage);
                 } else {
                     throw new Exception("Invalid Virtual Machine information. No Roles match the VM data.");
                 }
             } else if (roles.size() > 1) {
-                deleteVMRole(client, vm.getServiceName(), vm.getDeploymentName(), vm.getName(), deleteFromStorage);
+                return deleteVMRole(client, vm.getSubscriptionId(), vm.getServiceName(), vm.getDeploymentName(), vm.getName(), deleteFromStorage);
             } else {
                 throw new Exception("Invalid Virtual Machine information. No Roles match the VM data.");
             }
         } catch (Throwable t) {
             throw new AzureCmdException("Error deleting the VM", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -402,12 +449,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error downloading the RDP file", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -427,26 +469,16 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 return saList;
             }
 
-            List<ListenableFuture<StorageAccount>> saFutureList = new ArrayList<ListenableFuture<StorageAccount>>();
-
+            // the keys are only fetched when a storage operation needs them, see getCloudBlobClient
             for (com.microsoft.windowsazure.management.storage.models.StorageAccount storageAccount : storageAccounts) {
-                saFutureList.add(getStorageAccountAsync(subscriptionId, client, storageAccount));
+                saList.add(getStorageAccount(subscriptionId, storageAccount));
             }
 
-            saList.addAll(Futures.allAsList(saFutureList).get());
-
             return saList;
-        } catch (ExecutionException e) {
-            throw new AzureCmdException("Error retrieving the VM list", e.getCause());
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the VM list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -467,12 +499,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the VM Image list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -490,12 +517,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the VM Size list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -513,12 +535,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the Location list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -536,12 +553,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the Affinity Group list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -588,12 +600,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the VM list", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -613,17 +620,14 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 sacp.setLocation(storageAccount.getLocation());
             }
 
-            OperationStatusResponse osr = sao.create(sacp);
+            OperationResponse or = sao.beginCreating(sacp);
+            OperationStatusResponse osr = waitForOperation(storageAccount.getSubscriptionId(), or,
+                    "Creating " + storageAccount.getName());
             validateOperationStatus(osr);
         } catch (Throwable t) {
             throw new AzureCmdException("Error creating the Storage Account", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -644,22 +648,13 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             }
 
             OperationResponse or = hso.create(hscp);
-
-            if (or == null) {
-                throw new Exception("Unable to retrieve Operation");
-            }
-
-            OperationStatusResponse osr = getOperationStatusResponse(client, or);
+            OperationStatusResponse osr = waitForOperation(cloudService.getSubscriptionId(), or,
+                    "Creating " + cloudService.getName());
             validateOperationStatus(osr);
         } catch (Throwable t) {
             throw new AzureCmdException("Error creating the Cloud Service", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -698,12 +693,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         } catch (Throwable t) {
             throw new AzureCmdException("Error creating the VM", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -718,26 +708,21 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             StorageAccountOperations sao = getStorageAccountOperations(client);
             StorageAccountGetResponse sagr = sao.get(storageAccount.getName());
 
-            if (sagr == null) {
-                throw new Exception("Unable to retrieve Operation");
-            }
-
-            OperationStatusResponse osr = getOperationStatusResponse(client, sagr);
+            OperationStatusResponse osr = waitForOperation(storageAccount.getSubscriptionId(), sagr,
+                    "Refreshing " + storageAccount.getName());
             validateOperationStatus(osr);
 
             if (sagr.getStorageAccount() == null) {
                 throw new Exception("Invalid Storage Account information. No Storage Account matches the specified data.");
             }
 
-            StorageAccount sa = getStorageAccount(storageAccount.getSubscriptionId(), client, sagr.getStorageAccount());
+            StorageAccount sa = getStorageAccount(storageAccount.getSubscriptionId(), sagr.getStorageAccount());
             storageAccount.setType(sa.getType());
             storageAccount.setDescription(sa.getDescription());
             storageAccount.setLabel(sa.getLabel());
             storageAccount.setStatus(sa.getStatus());
             storageAccount.setLocation(sa.getLocation());
             storageAccount.setAffinityGroup(sa.getAffinityGroup());
-            storageAccount.setPrimaryKey(sa.getPrimaryKey());
-            storageAccount.setSecondaryKey(sa.getSecondaryKey());
             storageAccount.setManagementUri(sa.getManagementUri());
             storageAccount.setBlobsUri(sa.getBlobsUri());
             storageAccount.setQueuesUri(sa.getQueuesUri());
@@ -748,16 +733,16 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             storageAccount.setSecondaryRegionStatus(sa.getSecondaryRegionStatus());
             storageAccount.setLastFailover(sa.getLastFailover());
 
+            // refreshing also picks up keys that have been regenerated in the meantime
+            StorageAccountKeyCache.getCache().invalidate(storageAccount.getSubscriptionId(), storageAccount.getName());
+            storageAccount.setPrimaryKey("");
+            storageAccount.setSecondaryKey("");
+
             return storageAccount;
         } catch (Throwable t) {
             throw new AzureCmdException("Error refreshing the Storage Account information", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -779,19 +764,15 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             ServiceCertificateCreateParameters sccp = new ServiceCertificateCreateParameters(data, CertificateFormat.Pfx);
             sccp.setPassword(password);
 
-            OperationStatusResponse osr = sco.create(serviceName, sccp);
+            OperationResponse or = sco.beginCreating(serviceName, sccp);
+            OperationStatusResponse osr = waitForOperation(subscriptionId, or, "Creating a certificate for " + serviceName);
             validateOperationStatus(osr);
 
             return thumbprint;
         } catch (Throwable t) {
             throw new AzureCmdException("Error creating the Service Certificate", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -804,17 +785,13 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             StorageAccountOperations sao = getStorageAccountOperations(client);
 
             OperationResponse or = sao.delete(storageAccount.getName());
-            OperationStatusResponse osr = getOperationStatusResponse(client, or);
+            OperationStatusResponse osr = waitForOperation(storageAccount.getSubscriptionId(), or,
+                    "Deleting " + storageAccount.getName());
             validateOperationStatus(osr);
         } catch (Throwable t) {
             throw new AzureCmdException("Error deleting the Storage Account", t);
         } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException ignored) {
-                }
-            }
+            AzureSDKHelper.releaseClient(client);
         }
     }
 
@@ -941,6 +918,28 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
     public List<BlobItem> getBlobItems(@NotNull StorageAccount storageAccount, @NotNull BlobDirectory blobDirectory)
             throws AzureCmdException {
         List<BlobItem> biList = new ArrayList<BlobItem>();
+        String continuationToken = null;
+
+        do {
+            BlobItemPage page = getBlobItemPage(storageAccount, blobDirectory, null, false, continuationToken,
+                    MAX_BLOB_PAGE_SIZE);
+            biList.addAll(page.getItems());
+            continuationToken = page.getContinuationToken();
+        } while (continuationToken != null);
+
+        return biList;
+    }
+
+    @NotNull
+    @Override
+    public BlobItemPage getBlobItemPage(@NotNull StorageAccount storageAccount,
+                                        @NotNull BlobDirectory blobDirectory,
+                                        @Nullable String prefix,
+                                        boolean flatListing,
+                                        @Nullable String continuationToken,
+                                        int pageSize)
+            throws AzureCmdException {
+        List<BlobItem> biList = new ArrayList<BlobItem>();
 
         try {
             CloudBlobClient client = getCloudBlobClient(storageAccount);
@@ -951,58 +950,36 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             CloudBlobContainer container = client.getContainerReference(containerName);
             CloudBlobDirectory directory = container.getDirectoryReference(blobDirectory.getPath());
 
-            for (ListBlobItem item : directory.listBlobs()) {
-                String uri = item.getUri() != null ? item.getUri().toString() : "";
-
-                if (item instanceof CloudBlobDirectory) {
-                    CloudBlobDirectory subDirectory = (CloudBlobDirectory) item;
-
-                    String name = extractBlobItemName(subDirectory.getPrefix(), delimiter);
-                    String path = Strings.nullToEmpty(subDirectory.getPrefix());
-
-                    biList.add(new BlobDirectory(name, uri, containerName, path, subscriptionId));
-                } else if (item instanceof CloudBlob) {
-                    CloudBlob blob = (CloudBlob) item;
+            ResultContinuation continuation = null;
 
-                    String name = extractBlobItemName(blob.getName(), delimiter);
-                    String path = Strings.nullToEmpty(blob.getName());
-                    String type = "";
-                    String cacheControlHeader = "";
-                    String contentEncoding = "";
-                    String contentLanguage = "";
-                    String contentType = "";
-                    String contentMD5Header = "";
-                    String eTag = "";
-                    Calendar lastModified = new GregorianCalendar();
-                    long size = 0;
-
-                    BlobProperties properties = blob.getProperties();
+            if (continuationToken != null) {
+                continuation = new ResultContinuation();
+                continuation.setContinuationType(ResultContinuationType.BLOB);
+                continuation.setNextMarker(continuationToken);
+            }
 
-                    if (properties != null) {
-                        if (properties.getBlobType() != null) {
-                            type = properties.getBlobType().toString();
-                        }
+            // the prefix is relative to the directory; a flat listing returns the blobs of all
+            // subdirectories too, named by their path relative to the directory
+            ResultSegment<ListBlobItem> segment = directory.listBlobsSegmented(prefix, flatListing,
+                    EnumSet.noneOf(BlobListingDetails.class), Math.min(pageSize, MAX_BLOB_PAGE_SIZE), continuation,
+                    null, null);
 
-                        cacheControlHeader = Strings.nullToEmpty(properties.getCacheControl());
-                        contentEncoding = Strings.nullToEmpty(properties.getContentEncoding());
-                        contentLanguage = Strings.nullToEmpty(properties.getContentLanguage());
-                        contentType = Strings.nullToEmpty(properties.getContentType());
-                        contentMD5Header = Strings.nullToEmpty(properties.getContentMD5());
-                        eTag = Strings.nullToEmpty(properties.getEtag());
+            for (ListBlobItem item : segment.getResults()) {
+                BlobItem blobItem = getBlobItem(item, containerName, flatListing ? blobDirectory.getPath() : null,
+                        delimiter, subscriptionId);
 
-                        if (properties.getLastModified() != null) {
-                            lastModified.setTime(properties.getLastModified());
-                        }
+                if (blobItem != null) {
+                    biList.add(blobItem);
+                }
+            }
 
-                        size = properties.getLength();
-                    }
+            String nextToken = null;
 
-                    biList.add(new BlobFile(name, uri, containerName, path, type, cacheControlHeader, contentEncoding,
-                            contentLanguage, contentType, contentMD5Header, eTag, lastModified, size, subscriptionId));
-                }
+            if (segment.getHasMoreResults() && segment.getContinuationToken() != null) {
+                nextToken = segment.getContinuationToken().getNextMarker();
             }
 
-            return biList;
+            return new BlobItemPage(biList, nextToken);
         } catch (Throwable t) {
             throw new AzureCmdException("Error retrieving the Blob Item list", t);
         }
@@ -1075,6 +1052,56 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         }
     }
 
+    @NotNull
+    @Override
+    public Map<BlobFile, Exception> deleteBlobFiles(@NotNull StorageAccount storageAccount,
+                                                    @NotNull List<BlobFile> blobFiles,
+                                                    @Nullable CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException {
+        try {
+            BlobDeleter deleter = new BlobDeleter(getCloudBlobClient(storageAccount), processDeleteEvent);
+
+            for (BlobFile blobFile : blobFiles) {
+                deleter.submit(blobFile);
+            }
+
+            return deleter.await();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error deleting the Blob Files", t);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Map<BlobFile, Exception> deleteBlobDirectory(@NotNull StorageAccount storageAccount,
+                                                        @NotNull BlobDirectory blobDirectory,
+                                                        @Nullable String prefix,
+                                                        @Nullable CallableSingleArg<Void, Integer> processDeleteEvent)
+            throws AzureCmdException {
+        try {
+            BlobDeleter deleter = new BlobDeleter(getCloudBlobClient(storageAccount), processDeleteEvent);
+            String continuationToken = null;
+
+            // blobs are deleted as their pages come in, the listing only waits for free delete slots
+            do {
+                BlobItemPage page = getBlobItemPage(storageAccount, blobDirectory, prefix, true, continuationToken,
+                        MAX_BLOB_PAGE_SIZE);
+
+                for (BlobItem item : page.getItems()) {
+                    if (item instanceof BlobFile) {
+                        deleter.submit((BlobFile) item);
+                    }
+                }
+
+                continuationToken = page.getContinuationToken();
+            } while (continuationToken != null);
+
+            return deleter.await();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error deleting the Blob Directory", t);
+        }
+    }
+
     @Override
     public void uploadBlobFileContent(@NotNull StorageAccount storageAccount,
                                       @NotNull BlobContainer blobContainer,
@@ -1121,6 +1148,23 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         }
     }
 
+    @Override
+    public void uploadBlobFileContent(@NotNull StorageAccount storageAccount,
+                                      @NotNull BlobContainer blobContainer,
+                                      @NotNull String filePath,
+                                      @NotNull File file,
+                                      @Nullable CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException {
+        try {
+            CloudBlobClient client = getCloudBlobClient(storageAccount);
+            CloudBlobContainer container = client.getContainerReference(blobContainer.getName());
+
+            new BlobUploader(container, filePath, file, processBlockEvent).upload();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error uploading the Blob File content", t);
+        }
+    }
+
     @Override
     public void downloadBlobFileContent(@NotNull StorageAccount storageAccount,
                                         @NotNull BlobFile blobFile,
@@ -1140,6 +1184,23 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         }
     }
 
+    @Override
+    public void downloadBlobFileContent(@NotNull StorageAccount storageAccount,
+                                        @NotNull BlobFile blobFile,
+                                        @NotNull File file,
+                                        @Nullable CallableSingleArg<Void, Long> processBlockEvent)
+            throws AzureCmdException {
+        try {
+            CloudBlobClient client = getCloudBlobClient(storageAccount);
+            CloudBlobContainer container = client.getContainerReference(blobFile.getContainerName());
+            CloudBlob blob = getCloudBlob(container, blobFile);
+
+            new BlobDownloader(blob, file, processBlockEvent).download();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error downloading the Blob File content", t);
+        }
+    }
+
     @NotNull
     private static ComputeManagementClient getComputeManagementClient(@NotNull String subscriptionId) throws Exception {
         ComputeManagementClient client = AzureSDKHelper.getComputeManagementClient(subscriptionId);
@@ -1187,6 +1248,7 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
     @NotNull
     private static CloudBlobClient getCloudBlobClient(@NotNull StorageAccount storageAccount)
             throws Exception {
+        loadStorageAccountKeys(storageAccount);
         CloudStorageAccount csa = AzureSDKHelper.getCloudStorageAccount(storageAccount);
 
         return csa.createCloudBlobClient();
@@ -1337,24 +1399,22 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         return hslr;
     }
 
+    private static void cancelAll(@NotNull List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
     @NotNull
     private static ListenableFuture<DeploymentGetResponse> getDeploymentAsync(@NotNull final ComputeManagementClient client,
                                                                               @NotNull final String serviceName,
                                                                               @NotNull final DeploymentSlot slot) {
-        final SettableFuture<DeploymentGetResponse> future = SettableFuture.create();
-
-        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        return AzureSDKExecutor.getExecutor().submit(new Callable<DeploymentGetResponse>() {
             @Override
-            public void run() {
-                try {
-                    future.set(getDeployment(client, serviceName, slot));
-                } catch (Exception e) {
-                    future.setException(e);
-                }
+            public DeploymentGetResponse call() throws Exception {
+                return getDeployment(client, serviceName, slot);
             }
         });
-
-        return future;
     }
 
     @NotNull
@@ -1397,41 +1457,9 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         return salr;
     }
 
-    @NotNull
-    private static ListenableFuture<StorageAccount> getStorageAccountAsync(@NotNull final String subscriptionId,
-                                                                           @NotNull final StorageManagementClient client,
-                                                                           @NotNull final com.microsoft.windowsazure.management.storage.models.StorageAccount storageAccount)
-            throws Exception {
-        final SettableFuture<StorageAccount> future = SettableFuture.create();
-
-        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    future.set(getStorageAccount(subscriptionId, client, storageAccount));
-                } catch (Exception e) {
-                    future.setException(e);
-                }
-            }
-        });
-
-        return future;
-    }
-
     @NotNull
     private static StorageAccount getStorageAccount(@NotNull String subscriptionId,
-                                                    @NotNull StorageManagementClient client,
                                                     @NotNull com.microsoft.windowsazure.management.storage.models.StorageAccount storageAccount) throws Exception {
-        String primaryKey = "";
-        String secondaryKey = "";
-
-        if (storageAccount.getName() != null) {
-            StorageAccountGetKeysResponse sak = getStorageAccountKeys(client, storageAccount.getName());
-
-            primaryKey = sak.getPrimaryKey();
-            secondaryKey = sak.getSecondaryKey();
-        }
-
         StorageAccountProperties sap = storageAccount.getProperties() != null ?
                 storageAccount.getProperties() :
                 new StorageAccountProperties();
@@ -1461,8 +1489,8 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 sap.getStatus() != null ? sap.getStatus().toString() : "",
                 Strings.nullToEmpty(sap.getLocation()),
                 Strings.nullToEmpty(sap.getAffinityGroup()),
-                Strings.nullToEmpty(primaryKey),
-                Strings.nullToEmpty(secondaryKey),
+                "",
+                "",
                 storageAccount.getUri() != null ? storageAccount.getUri().toString() : "",
                 blobsUri,
                 queuesUri,
@@ -1475,17 +1503,21 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
                 subscriptionId);
     }
 
-    @NotNull
-    private static StorageAccountGetKeysResponse getStorageAccountKeys(@NotNull StorageManagementClient client,
-                                                                       @NotNull String storageName)
+    // Fills in the keys of the storage account from the key cache; the keys of an account are
+    // retrieved from the management API the first time they are needed.
+    private static void loadStorageAccountKeys(@NotNull StorageAccount storageAccount)
             throws Exception {
-        StorageAccountGetKeysResponse sagkr = getStorageAccountOperations(client).getKeys(storageName);
+        StorageAccountGetKeysResponse sagkr;
 
-        if (sagkr == null) {
-            throw new Exception("Unable to retrieve Storage Account Keys information");
+        try {
+            sagkr = StorageAccountKeyCache.getCache().getKeys(storageAccount.getSubscriptionId(),
+                    storageAccount.getName()).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
 
-        return sagkr;
+        storageAccount.setPrimaryKey(Strings.nullToEmpty(sagkr.getPrimaryKey()));
+        storageAccount.setSecondaryKey(Strings.nullToEmpty(sagkr.getSecondaryKey()));
     }
 
     @NotNull
@@ -1520,74 +1552,65 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         }
     }
 
-    @Nullable
-    private static OperationStatusResponse getOperationStatusResponse(@NotNull ComputeManagementClient client,
-                                                                      @NotNull OperationResponse or)
-            throws InterruptedException, java.util.concurrent.ExecutionException, ServiceException {
-        OperationStatusResponse osr = client.getOperationStatusAsync(or.getRequestId()).get();
-        int delayInSeconds = 30;
-
-        if (client.getLongRunningOperationInitialTimeout() >= 0) {
-            delayInSeconds = client.getLongRunningOperationInitialTimeout();
+    // Returns a future that completes when a long running operation does; no thread is held while
+    // Azure works. A failed operation fails the future with an AzureCmdException carrying
+    // "errorMessage".
+    @NotNull
+    private static ListenableFuture<Void> trackOperation(@NotNull String subscriptionId,
+                                                         @Nullable OperationResponse or,
+                                                         @NotNull String description,
+                                                         @NotNull final String errorMessage)
+            throws Exception {
+        if (or == null) {
+            throw new Exception("Unable to retrieve Operation");
         }
 
-        while (osr.getStatus() == OperationStatus.InProgress) {
-            Thread.sleep(delayInSeconds * 1000);
-            osr = client.getOperationStatusAsync(or.getRequestId()).get();
-            delayInSeconds = 30;
+        final SettableFuture<Void> res = SettableFuture.create();
 
-            if (client.getLongRunningOperationRetryTimeout() >= 0) {
-                delayInSeconds = client.getLongRunningOperationRetryTimeout();
-            }
-        }
+        Futures.addCallback(AzureOperationTracker.getTracker().track(subscriptionId, or, description),
+                new FutureCallback<OperationStatusResponse>() {
+                    @Override
+                    public void onSuccess(OperationStatusResponse osr) {
+                        try {
+                            validateOperationStatus(osr);
+                            res.set(null);
+                        } catch (Exception e) {
+                            res.setException(new AzureCmdException(errorMessage, e));
+                        }
+                    }
 
-        if (osr.getStatus() != OperationStatus.Succeeded) {
-            if (osr.getError() != null) {
-                ServiceException ex = new ServiceException(osr.getError().getCode() + " : " + osr.getError().getMessage());
-                ex.setErrorCode(osr.getError().getCode());
-                ex.setErrorMessage(osr.getError().getMessage());
-                throw ex;
-            } else {
-                throw new ServiceException("");
-            }
-        }
+                    @Override
+                    public void onFailure(@NotNull Throwable throwable) {
+                        res.setException(new AzureCmdException(errorMessage, throwable));
+                    }
+                });
 
-        return osr;
+        return res;
     }
 
-    @Nullable
-    private static OperationStatusResponse getOperationStatusResponse(@NotNull StorageManagementClient client,
-                                                                      @NotNull OperationResponse or)
-            throws InterruptedException, java.util.concurrent.ExecutionException, ServiceException {
-        OperationStatusResponse osr = client.getOperationStatusAsync(or.getRequestId()).get();
-        int delayInSeconds = 30;
-
-        if (client.getLongRunningOperationInitialTimeout() >= 0) {
-            delayInSeconds = client.getLongRunningOperationInitialTimeout();
+    // Waits for a long running operation to complete, for the methods that have to return its
+    // outcome; the status checks are made by the shared operation tracker so the calling thread
+    // is only parked.
+    @NotNull
+    private static OperationStatusResponse waitForOperation(@NotNull String subscriptionId,
+                                                            @Nullable OperationResponse or,
+                                                            @NotNull String description)
+            throws Exception {
+        if (or == null) {
+            throw new Exception("Unable to retrieve Operation");
         }
 
-        while (osr.getStatus() == OperationStatus.InProgress) {
-            Thread.sleep(delayInSeconds * 1000);
-            osr = client.getOperationStatusAsync(or.getRequestId()).get();
-            delayInSeconds = 30;
+        ListenableFuture<OperationStatusResponse> future =
+                AzureOperationTracker.getTracker().track(subscriptionId, or, description);
 
-            if (client.getLongRunningOperationRetryTimeout() >= 0) {
-                delayInSeconds = client.getLongRunningOperationRetryTimeout();
-            }
-        }
-
-        if (osr.getStatus() != OperationStatus.Succeeded) {
-            if (osr.getError() != null) {
-                ServiceException ex = new ServiceException(osr.getError().getCode() + " : " + osr.getError().getMessage());
-                ex.setErrorCode(osr.getError().getCode());
-                ex.setErrorMessage(osr.getError().getMessage());
-                throw ex;
-            } else {
-                throw new ServiceException("");
-            }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
-
-        return osr;
     }
 
     @NotNull
@@ -1704,25 +1727,28 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         return vm;
     }
 
-    private static void deleteVMRole(@NotNull ComputeManagementClient client, @NotNull String serviceName,
-                                     @NotNull String deploymentName, @NotNull String virtualMachineName,
-                                     boolean deleteFromStorage)
+    @NotNull
+    private static ListenableFuture<Void> deleteVMRole(@NotNull ComputeManagementClient client, @NotNull String subscriptionId,
+                                     @NotNull String serviceName, @NotNull String deploymentName,
+                                     @NotNull String virtualMachineName, boolean deleteFromStorage)
             throws Exception {
         VirtualMachineOperations vmo = getVirtualMachineOperations(client);
 
-        OperationStatusResponse osr = vmo.delete(serviceName, deploymentName, virtualMachineName, deleteFromStorage);
+        OperationResponse or = vmo.beginDeleting(serviceName, deploymentName, virtualMachineName, deleteFromStorage);
 
-        validateOperationStatus(osr);
+        return trackOperation(subscriptionId, or, "Deleting " + virtualMachineName, "Error deleting the VM");
     }
 
-    private static void deleteDeployment(@NotNull ComputeManagementClient client, @NotNull String serviceName,
-                                         @NotNull String deploymentName, boolean deleteFromStorage)
+    @NotNull
+    private static ListenableFuture<Void> deleteDeployment(@NotNull ComputeManagementClient client, @NotNull String subscriptionId,
+                                         @NotNull String serviceName, @NotNull String deploymentName,
+                                         boolean deleteFromStorage)
             throws Exception {
         DeploymentOperations dop = getDeploymentOperations(client);
 
-        OperationStatusResponse osr = dop.deleteByName(serviceName, deploymentName, deleteFromStorage);
+        OperationResponse or = dop.beginDeletingByName(serviceName, deploymentName, deleteFromStorage);
 
-        validateOperationStatus(osr);
+        return trackOperation(subscriptionId, or, "Deleting " + deploymentName, "Error deleting the VM");
     }
 
 
@@ -1964,7 +1990,9 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
             vmcp.getConfigurationSets().add(getNetworkConfigurationSet(virtualMachine));
         }
 
-        OperationStatusResponse osr = vmo.create(virtualMachine.getServiceName(), virtualMachine.getDeploymentName(), vmcp);
+        OperationResponse or = vmo.beginCreating(virtualMachine.getServiceName(), virtualMachine.getDeploymentName(), vmcp);
+        OperationStatusResponse osr = waitForOperation(virtualMachine.getSubscriptionId(), or,
+                "Creating " + virtualMachine.getName());
 
         validateOperationStatus(osr);
     }
@@ -2016,7 +2044,9 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
 
         vmcdp.getRoles().add(role);
 
-        OperationStatusResponse osr = vmo.createDeployment(virtualMachine.getServiceName(), vmcdp);
+        OperationResponse or = vmo.beginCreatingDeployment(virtualMachine.getServiceName(), vmcdp);
+        OperationStatusResponse osr = waitForOperation(virtualMachine.getSubscriptionId(), or,
+                "Creating " + virtualMachine.getName());
 
         validateOperationStatus(osr);
     }
@@ -2236,6 +2266,66 @@ public class AzureSDKManagerImpl implements AzureSDKManager {
         return blobFile;
     }
 
+    @Nullable
+    private static BlobItem getBlobItem(@NotNull ListBlobItem item,
+                                        @NotNull String containerName,
+                                        @Nullable String basePath,
+                                        @Nullable String delimiter,
+                                        @NotNull String subscriptionId) {
+        String uri = item.getUri() != null ? item.getUri().toString() : "";
+
+        if (item instanceof CloudBlobDirectory) {
+            CloudBlobDirectory subDirectory = (CloudBlobDirectory) item;
+
+            String name = extractBlobItemName(subDirectory.getPrefix(), delimiter);
+            String path = Strings.nullToEmpty(subDirectory.getPrefix());
+
+            return new BlobDirectory(name, uri, containerName, path, subscriptionId);
+        } else if (item instanceof CloudBlob) {
+            CloudBlob blob = (CloudBlob) item;
+
+            String path = Strings.nullToEmpty(blob.getName());
+            String name = basePath != null && path.startsWith(basePath)
+                    ? path.substring(basePath.length())
+                    : extractBlobItemName(blob.getName(), delimiter);
+            String type = "";
+            String cacheControlHeader = "";
+            String contentEncoding = "";
+            String contentLanguage = "";
+            String contentType = "";
+            String contentMD5Header = "";
+            String eTag = "";
+            Calendar lastModified = new GregorianCalendar();
+            long size = 0;
+
+            BlobProperties properties = blob.getProperties();
+
+            if (properties != null) {
+                if (properties.getBlobType() != null) {
+                    type = properties.getBlobType().toString();
+                }
+
+                cacheControlHeader = Strings.nullToEmpty(properties.getCacheControl());
+                contentEncoding = Strings.nullToEmpty(properties.getContentEncoding());
+                contentLanguage = Strings.nullToEmpty(properties.getContentLanguage());
+                contentType = Strings.nullToEmpty(properties.getContentType());
+                contentMD5Header = Strings.nullToEmpty(properties.getContentMD5());
+                eTag = Strings.nullToEmpty(properties.getEtag());
+
+                if (properties.getLastModified() != null) {
+                    lastModified.setTime(properties.getLastModified());
+                }
+
+                size = properties.getLength();
+            }
+
+            return new BlobFile(name, uri, containerName, path, type, cacheControlHeader, contentEncoding,
+                    contentLanguage, contentType, contentMD5Header, eTag, lastModified, size, subscriptionId);
+        }
+
+        return null;
+    }
+
     @NotNull
     private static String extractBlobItemName(@Nullable String path, @Nullable String delimiter) {
         if (path == null) {
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import org.jetbrains.annotations.NotNull;
+
+// Shares the transfer rate budget of maxTransferBytesPerSecond between all blob transfers. The
+// block and range workers consume the bytes they are about to send or fetch before doing so and
+// are held back for as long as they are ahead of the budget; up to one second worth of bytes can
+// be moved in a burst. A budget of zero bytes per second disables the limit. Callers must not
+// hold a lock while they consume, other workers would wait for the sleep as well.
+public class BandwidthLimiter {
+    // singleton limiter instance
+    private static BandwidthLimiter limiter = null;
+
+    private final long bytesPerSecond;
+
+    // guarded by "this"; negative while the transfers are ahead of the budget
+    private long availableBytes;
+    private long lastRefillTime = System.currentTimeMillis();
+
+    @NotNull
+    public static synchronized BandwidthLimiter getLimiter() {
+        if (limiter == null) {
+            limiter = new BandwidthLimiter(MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null
+                    ? MSOpenTechToolsApplication.getCurrent().getSettings().getMaxTransferBytesPerSecond() : 0);
+        }
+
+        return limiter;
+    }
+
+    public BandwidthLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.availableBytes = bytesPerSecond;
+    }
+
+    public void consume(long bytes) throws InterruptedException {
+        long waitMs;
+
+        synchronized (this) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            availableBytes = Math.min(bytesPerSecond, availableBytes + (now - lastRefillTime) * bytesPerSecond / 1000);
+            lastRefillTime = now;
+            availableBytes -= bytes;
+
+            waitMs = availableBytes < 0 ? -availableBytes * 1000 / bytesPerSecond : 0;
+        }
+
+        if (waitMs > 0) {
+            Thread.sleep(waitMs);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoftopentechnologies.azuremanagementutil.util.Base64;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// The MD5 of a whole blob, computed from the buffers of its blocks or ranges while they are
+// transferred. The blocks are transferred in parallel but must be added to the digest in order,
+// so adding a block waits until all blocks before it have been added. Blocks are started in order
+// and hold a transfer permit while they wait, which bounds the buffers that are held up to the
+// blocks in flight. Aborting the digest releases the waiting blocks when the transfer fails.
+public class BlobContentDigest {
+    private final MessageDigest digest;
+
+    // guarded by "this"
+    private long position = 0;
+    private boolean aborted = false;
+
+    public BlobContentDigest() throws NoSuchAlgorithmException {
+        digest = MessageDigest.getInstance("MD5");
+    }
+
+    public synchronized void update(long offset, @NotNull byte[] data, int length)
+            throws InterruptedException, InterruptedIOException {
+        while (position != offset) {
+            if (aborted) {
+                throw new InterruptedIOException("The transfer was aborted");
+            }
+
+            if (position > offset) {
+                throw new IllegalStateException("The block at " + offset + " was already added");
+            }
+
+            wait();
+        }
+
+        digest.update(data, 0, length);
+        position += length;
+
+        notifyAll();
+    }
+
+    public synchronized void abort() {
+        aborted = true;
+
+        notifyAll();
+    }
+
+    // the Base64 encoded MD5, as found in the Content-MD5 header of a blob
+    @NotNull
+    public synchronized String getMd5() {
+        return Base64.encode(digest.digest());
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.microsoft.azure.storage.blob.BlobType;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
+import com.microsoftopentechnologies.intellij.helpers.ExecutorHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.model.storage.BlobFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+// Deletes many blobs at once. Every blob takes a request of its own, so the requests are sent
+// from a pool of their own, up to maxParallelBlobDeletes at a time; submitting a blob waits while
+// that many deletes are in flight, which lets a caller feed the blobs of a large listing page by
+// page without queuing all of them, and nothing is kept per blob that was deleted. Blobs that
+// can't be deleted are collected with the error for retrying them instead of failing the whole
+// batch. When the progress callback throws, e.g. because the user cancelled, the deletes in
+// flight still finish and the rest are dropped.
+public class BlobDeleter {
+    private static final Logger LOG = Logger.getInstance(BlobDeleter.class);
+    private static final int DEFAULT_MAX_PARALLEL_DELETES = 16;
+
+    private static ExecutorService executor = null;
+    private static int parallelism = DEFAULT_MAX_PARALLEL_DELETES;
+
+    private final CloudBlobClient client;
+    private final CallableSingleArg<Void, Integer> processDeleteEvent;
+    private final Semaphore permits;
+
+    // guarded by "this"
+    private int deletedCount = 0;
+    private final Map<BlobFile, Exception> failedBlobFiles = new LinkedHashMap<BlobFile, Exception>();
+    private Exception stopCause;
+
+    public BlobDeleter(@NotNull CloudBlobClient client, @Nullable CallableSingleArg<Void, Integer> processDeleteEvent) {
+        this.client = client;
+        this.processDeleteEvent = processDeleteEvent;
+        this.permits = new Semaphore(getParallelism());
+    }
+
+    public void submit(@NotNull final BlobFile blobFile) throws InterruptedException, AzureCmdException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            stop(e);
+            throw e;
+        }
+
+        try {
+            checkStopped();
+        } catch (AzureCmdException e) {
+            permits.release();
+            throw e;
+        }
+
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isStopped()) {
+                        return;
+                    }
+
+                    CloudBlobContainer container = client.getContainerReference(blobFile.getContainerName());
+                    CloudBlob blob = blobFile.getType().equals(BlobType.BLOCK_BLOB.toString())
+                            ? container.getBlockBlobReference(blobFile.getPath())
+                            : container.getPageBlobReference(blobFile.getPath());
+
+                    blob.deleteIfExists();
+                    deleted();
+                } catch (Exception e) {
+                    LOG.warn("Error deleting the blob " + blobFile.getPath(), e);
+                    failed(blobFile, e);
+                } finally {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    // waits for the submitted deletes and returns the blobs that could not be deleted with the
+    // error each of them failed with
+    @NotNull
+    public Map<BlobFile, Exception> await() throws InterruptedException, AzureCmdException {
+        try {
+            permits.acquire(getParallelism());
+            permits.release(getParallelism());
+        } catch (InterruptedException e) {
+            stop(e);
+            throw e;
+        }
+
+        checkStopped();
+
+        synchronized (this) {
+            return new LinkedHashMap<BlobFile, Exception>(failedBlobFiles);
+        }
+    }
+
+    private void deleted() {
+        int count;
+
+        synchronized (this) {
+            count = ++deletedCount;
+        }
+
+        if (processDeleteEvent != null) {
+            try {
+                processDeleteEvent.call(count);
+            } catch (Exception e) {
+                stop(e);
+            }
+        }
+    }
+
+    private synchronized void failed(@NotNull BlobFile blobFile, @NotNull Exception error) {
+        failedBlobFiles.put(blobFile, error);
+    }
+
+    private synchronized void stop(@NotNull Exception cause) {
+        if (stopCause == null) {
+            stopCause = cause;
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopCause != null;
+    }
+
+    private synchronized void checkStopped() throws AzureCmdException {
+        if (stopCause != null) {
+            throw new AzureCmdException("Deleting the blobs was stopped", stopCause);
+        }
+    }
+
+    @NotNull
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            if (MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelBlobDeletes() > 0) {
+                parallelism = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelBlobDeletes();
+            }
+
+            executor = ExecutorHelper.newBoundedExecutor("Azure Blob Delete", parallelism);
+        }
+
+        return executor;
+    }
+
+    private static synchronized int getParallelism() {
+        getExecutor();
+        return parallelism;
+    }
+}
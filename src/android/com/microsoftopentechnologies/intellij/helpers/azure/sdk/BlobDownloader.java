@@ -0,0 +1,277 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Downloads a blob to a local file. The blob is split into fixed size ranges that are fetched on
+// the blob transfer executor, several at a time, and every range is written straight to its
+// offset in the target file. All ranges are requested for the ETag the blob had when the
+// download started so a blob that changes midway fails the download instead of mixing versions.
+// Finished ranges are recorded in a BlobTransferJournal; downloading the same blob version to
+// the same file again after a failure or cancellation only fetches the ranges that are missing.
+// The service sends the MD5 of every range, which is checked as it comes in, and the ranges feed
+// the MD5 of the whole blob from the buffers they are written from. A blob that has a Content-MD5
+// fails the download if its content doesn't match it.
+public class BlobDownloader {
+    private static final int RANGE_SIZE = 4 * 1024 * 1024;
+
+    private final CloudBlob blob;
+    private final File file;
+    private final CallableSingleArg<Void, Long> processBlockEvent;
+
+    // guarded by "this"
+    private long downloadedBytes = 0;
+
+    public BlobDownloader(@NotNull CloudBlob blob, @NotNull File file,
+                          @Nullable CallableSingleArg<Void, Long> processBlockEvent) {
+        this.blob = blob;
+        this.file = file;
+        this.processBlockEvent = processBlockEvent;
+    }
+
+    public void download() throws Exception {
+        blob.downloadAttributes();
+
+        long length = blob.getProperties().getLength();
+        AccessCondition accessCondition = AccessCondition.generateIfMatchCondition(blob.getProperties().getEtag());
+        String contentMd5 = blob.getProperties().getContentMD5();
+
+        // blobs that were uploaded in blocks without it have no Content-MD5 to check
+        BlobContentDigest contentDigest = contentMd5 != null && !contentMd5.isEmpty() ? new BlobContentDigest() : null;
+
+        BlobTransferJournal journal = BlobTransferJournal.open(
+                "download|" + blob.getUri() + "|" + file.getAbsolutePath(),
+                length + " " + blob.getProperties().getEtag());
+
+        try {
+            // ranges recorded in the journal are only on disk if the file is still the one we wrote
+            if (!file.isFile() || file.length() != length) {
+                journal.reset();
+            }
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+            try {
+                randomAccessFile.setLength(length);
+                FileChannel channel = randomAccessFile.getChannel();
+
+                Semaphore permits = new Semaphore(BlobTransferExecutor.getParallelism());
+                AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+                try {
+                    for (long position = 0; position < length; position += RANGE_SIZE) {
+                        int size = (int) Math.min(RANGE_SIZE, length - position);
+                        BlobTransferJournal.JournalBlock block = journal.getBlocks().get(position);
+
+                        if (block != null && block.getSize() == size && contentDigest == null) {
+                            rangeDownloaded(size);
+                            continue;
+                        }
+
+                        permits.acquire();
+
+                        if (failure.get() != null) {
+                            permits.release();
+                            break;
+                        }
+
+                        // ranges on disk are read back for the MD5 of the blob and fetched again if
+                        // they don't match what was written
+                        futures.add(BlobTransferExecutor.getExecutor().submit(new RangeDownload(channel, journal,
+                                contentDigest, accessCondition, position, size,
+                                block != null && block.getSize() == size ? block.getMd5() : null, permits, failure)));
+                    }
+
+                    for (Future<Void> future : futures) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException ignored) {
+                            // recorded in "failure"
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (contentDigest != null) {
+                        contentDigest.abort();
+                    }
+
+                    for (Future<Void> future : futures) {
+                        future.cancel(true);
+                    }
+
+                    throw e;
+                }
+
+                if (failure.get() != null) {
+                    Throwable t = failure.get();
+                    throw t instanceof Exception ? (Exception) t : new ExecutionException(t);
+                }
+
+                channel.force(false);
+            } finally {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            // the ranges in the journal can't be trusted either, the download starts over next time
+            if (contentDigest != null && !contentDigest.getMd5().equals(contentMd5)) {
+                journal.delete();
+                throw new IOException("The downloaded content does not match the Content-MD5 of the blob: " +
+                        blob.getUri());
+            }
+
+            journal.delete();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private synchronized void rangeDownloaded(int size) throws Exception {
+        downloadedBytes += size;
+
+        if (processBlockEvent != null) {
+            processBlockEvent.call(downloadedBytes);
+        }
+    }
+
+    private class RangeDownload implements Callable<Void> {
+        private final FileChannel channel;
+        private final BlobTransferJournal journal;
+        private final BlobContentDigest contentDigest;
+        private final AccessCondition accessCondition;
+        private final long position;
+        private final int size;
+        private final String downloadedMd5;
+        private final Semaphore permits;
+        private final AtomicReference<Throwable> failure;
+
+        private RangeDownload(FileChannel channel, BlobTransferJournal journal, BlobContentDigest contentDigest,
+                              AccessCondition accessCondition, long position, int size, String downloadedMd5,
+                              Semaphore permits, AtomicReference<Throwable> failure) {
+            this.channel = channel;
+            this.journal = journal;
+            this.contentDigest = contentDigest;
+            this.accessCondition = accessCondition;
+            this.position = position;
+            this.size = size;
+            this.downloadedMd5 = downloadedMd5;
+            this.permits = permits;
+            this.failure = failure;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                if (failure.get() != null) {
+                    return null;
+                }
+
+                byte[] data = downloadedMd5 != null ? readRange() : null;
+
+                if (data == null || !BlobTransferJournal.getMd5(data, 0, size).equals(downloadedMd5)) {
+                    // only the bytes that go over the wire count against the budget
+                    BandwidthLimiter.getLimiter().consume(size);
+                    data = downloadRange();
+
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, position + buffer.position());
+                    }
+
+                    journal.blockTransferred("range", position, size, BlobTransferJournal.getMd5(data, 0, size));
+                }
+
+                if (contentDigest != null) {
+                    contentDigest.update(position, data, size);
+                }
+
+                rangeDownloaded(size);
+
+                return null;
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+
+                if (contentDigest != null) {
+                    contentDigest.abort();
+                }
+
+                throw e;
+            } finally {
+                permits.release();
+            }
+        }
+
+        @NotNull
+        private byte[] downloadRange() throws Exception {
+            byte[] data = new byte[size];
+            int read = 0;
+
+            // the service sends the MD5 of ranges of up to 4 MB, which is checked before they're used
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setUseTransactionalContentMD5(true);
+
+            // a range may come back in several parts if the connection drops midway
+            while (read < size) {
+                int count = blob.downloadRangeToByteArray(position + read, (long) (size - read), data, read,
+                        accessCondition, options, null);
+
+                if (count <= 0) {
+                    throw new EOFException("Unexpected end of blob: " + blob.getUri());
+                }
+
+                read += count;
+            }
+
+            return data;
+        }
+
+        @NotNull
+        private byte[] readRange() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+
+            return buffer.array();
+        }
+    }
+}
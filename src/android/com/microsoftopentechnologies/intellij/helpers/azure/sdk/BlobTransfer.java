@@ -0,0 +1,276 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoftopentechnologies.intellij.model.storage.BlobContainer;
+import com.microsoftopentechnologies.intellij.model.storage.BlobFile;
+import com.microsoftopentechnologies.intellij.model.storage.StorageAccount;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+// A blob upload or download run by the BlobTransferManager. The thread that runs the transfer
+// updates its state and progress, which can be read from any thread. The throughput is sampled
+// about once a second and smoothed so that the estimated time left doesn't jump around.
+public class BlobTransfer {
+    private static final long THROUGHPUT_SAMPLE_MS = 1000;
+
+    public enum Direction {
+        Upload,
+        Download
+    }
+
+    public enum State {
+        Queued,
+        Running,
+        Completed,
+        Failed,
+        Cancelled
+    }
+
+    private final Direction direction;
+    private final StorageAccount storageAccount;
+    private final BlobContainer blobContainer;
+    private final BlobFile blobFile;
+    private final String blobPath;
+    private final File file;
+    private final long totalBytes;
+    private final SettableFuture<Void> completion = SettableFuture.create();
+
+    // guarded by "this"
+    private State state = State.Queued;
+    private boolean cancelRequested;
+    private Future<?> future;
+    private long transferredBytes;
+    private long startTime;
+    private long endTime;
+    private long sampleTime;
+    private long sampleBytes;
+    private double throughput;
+    private String errorMessage;
+
+    BlobTransfer(@NotNull StorageAccount storageAccount, @NotNull BlobContainer blobContainer,
+                 @NotNull String blobPath, @NotNull File file) {
+        this.direction = Direction.Upload;
+        this.storageAccount = storageAccount;
+        this.blobContainer = blobContainer;
+        this.blobFile = null;
+        this.blobPath = blobPath;
+        this.file = file;
+        this.totalBytes = file.length();
+    }
+
+    BlobTransfer(@NotNull StorageAccount storageAccount, @NotNull BlobFile blobFile, @NotNull File file) {
+        this.direction = Direction.Download;
+        this.storageAccount = storageAccount;
+        this.blobContainer = null;
+        this.blobFile = blobFile;
+        this.blobPath = blobFile.getPath();
+        this.file = file;
+        this.totalBytes = blobFile.getSize();
+    }
+
+    @NotNull
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @NotNull
+    public StorageAccount getStorageAccount() {
+        return storageAccount;
+    }
+
+    // the container uploads go to
+    @Nullable
+    public BlobContainer getBlobContainer() {
+        return blobContainer;
+    }
+
+    // the blob downloads come from
+    @Nullable
+    public BlobFile getBlobFile() {
+        return blobFile;
+    }
+
+    @NotNull
+    public String getBlobPath() {
+        return blobPath;
+    }
+
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // completes when the transfer does; fails with the error of a failed transfer and is
+    // cancelled with a cancelled one
+    @NotNull
+    public ListenableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    @NotNull
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isFinished() {
+        return state == State.Completed || state == State.Failed || state == State.Cancelled;
+    }
+
+    public synchronized long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    // the smoothed throughput in bytes per second, 0 until it has been sampled
+    public synchronized long getThroughput() {
+        return (long) throughput;
+    }
+
+    // the estimated time left in ms, -1 if it is not known
+    public synchronized long getTimeLeft() {
+        if (state != State.Running || throughput <= 0) {
+            return -1;
+        }
+
+        return (long) ((totalBytes - transferredBytes) * 1000 / throughput);
+    }
+
+    // the time the transfer ran for in ms
+    public synchronized long getElapsedTime() {
+        if (startTime == 0) {
+            return 0;
+        }
+
+        return (endTime != 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    @Nullable
+    public synchronized String getErrorMessage() {
+        return errorMessage;
+    }
+
+    synchronized boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    // Returns true if the transfer was still queued; it won't be started. A running transfer is
+    // interrupted and keeps the blocks it has already moved for resuming it later.
+    boolean requestCancel() {
+        Future<?> runningFuture;
+        boolean queued;
+
+        synchronized (this) {
+            if (isFinished()) {
+                return false;
+            }
+
+            cancelRequested = true;
+            runningFuture = future;
+            queued = state == State.Queued;
+        }
+
+        // cancelled outside of the lock, the manager finishes the transfer when it is cancelled
+        if (runningFuture != null) {
+            runningFuture.cancel(true);
+        }
+
+        return queued;
+    }
+
+    void setFuture(@NotNull Future<?> future) {
+        boolean cancel;
+
+        synchronized (this) {
+            this.future = future;
+            cancel = cancelRequested;
+        }
+
+        if (cancel) {
+            future.cancel(true);
+        }
+    }
+
+    synchronized void started() {
+        state = State.Running;
+        startTime = System.currentTimeMillis();
+        sampleTime = startTime;
+    }
+
+    synchronized void progress(long transferredBytes) {
+        this.transferredBytes = transferredBytes;
+
+        long now = System.currentTimeMillis();
+
+        if (now - sampleTime >= THROUGHPUT_SAMPLE_MS) {
+            double sample = (transferredBytes - sampleBytes) * 1000.0 / (now - sampleTime);
+            throughput = throughput == 0 ? sample : 0.7 * throughput + 0.3 * sample;
+            sampleTime = now;
+            sampleBytes = transferredBytes;
+        }
+    }
+
+    void completed() {
+        synchronized (this) {
+            state = State.Completed;
+            transferredBytes = totalBytes;
+            endTime = System.currentTimeMillis();
+        }
+
+        completion.set(null);
+    }
+
+    void failed(@NotNull Throwable throwable) {
+        synchronized (this) {
+            state = State.Failed;
+            endTime = System.currentTimeMillis();
+            errorMessage = getMessage(throwable);
+        }
+
+        completion.setException(throwable);
+    }
+
+    void cancelled() {
+        synchronized (this) {
+            state = State.Cancelled;
+            endTime = System.currentTimeMillis();
+        }
+
+        completion.cancel(false);
+    }
+
+    // the message of the innermost cause, which is the one that tells what went wrong
+    @NotNull
+    private static String getMessage(@NotNull Throwable throwable) {
+        String message = throwable.getMessage();
+
+        for (Throwable cause = throwable.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null) {
+                message = cause.getMessage();
+            }
+        }
+
+        return message != null ? message : throwable.getClass().getName();
+    }
+}
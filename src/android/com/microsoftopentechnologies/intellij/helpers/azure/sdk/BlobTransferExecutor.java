@@ -0,0 +1,58 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.ExecutorHelper;
+import org.jetbrains.annotations.NotNull;
+
+// Bounded executor for the block transfers of blob uploads and downloads, kept apart from the
+// SDK executor so that a large transfer doesn't hold up the management requests. The default of
+// four threads stays below the five connections per host the JDK keeps alive, so the blocks of a
+// transfer reuse their connections.
+public class BlobTransferExecutor {
+    private static final int DEFAULT_MAX_PARALLEL_BLOCK_TRANSFERS = 4;
+
+    // singleton executor instance
+    private static ListeningExecutorService executor = null;
+
+    private static int parallelism = DEFAULT_MAX_PARALLEL_BLOCK_TRANSFERS;
+
+    private BlobTransferExecutor() {
+    }
+
+    @NotNull
+    public static synchronized ListeningExecutorService getExecutor() {
+        if (executor == null) {
+            if (MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelBlockTransfers() > 0) {
+                parallelism = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelBlockTransfers();
+            }
+
+            executor = ExecutorHelper.newBoundedExecutor("Azure Blob Transfer", parallelism);
+        }
+
+        return executor;
+    }
+
+    // the number of blocks that are transferred at the same time
+    public static synchronized int getParallelism() {
+        getExecutor();
+        return parallelism;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.PathManager;
+import com.microsoftopentechnologies.azuremanagementutil.util.Base64;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// On-disk record of the blocks of a blob transfer that are done, so that an upload or download
+// which was cancelled, failed or interrupted by an IDE crash can be resumed. There is one journal
+// per transfer (direction, blob and local file) in the IDE's system directory. The first line
+// holds a header that identifies the version of the source, e.g. the length and modification
+// time of an uploaded file; every transferred block is appended as a line with its ID, offset,
+// size and MD5 and a block recorded more than once counts with its last line. Journals are
+// dropped once the transfer is complete, and after a week, when the service has discarded the
+// uncommitted blocks of an upload anyway.
+public class BlobTransferJournal {
+    private static final String JOURNAL_DIRECTORY = "azure-blob-transfers";
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final long EXPIRY_MS = TimeUnit.DAYS.toMillis(7);
+
+    public static final class JournalBlock {
+        private final String id;
+        private final long offset;
+        private final int size;
+        private final String md5;
+
+        private JournalBlock(String id, long offset, int size, String md5) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+            this.md5 = md5;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        // Base64 encoded
+        public String getMd5() {
+            return md5;
+        }
+    }
+
+    private final File journalFile;
+    private final String header;
+    private final Map<Long, JournalBlock> blocks = new HashMap<Long, JournalBlock>();
+
+    // guarded by "this"
+    private Writer writer = null;
+
+    private BlobTransferJournal(@NotNull File journalFile, @NotNull String header) {
+        this.journalFile = journalFile;
+        this.header = header;
+    }
+
+    // Opens the journal of the transfer identified by "key"; blocks recorded under a different
+    // header, i.e. for another version of the source, are discarded.
+    @NotNull
+    public static BlobTransferJournal open(@NotNull String key, @NotNull String header) throws IOException {
+        File directory = new File(PathManager.getSystemPath(), JOURNAL_DIRECTORY);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the transfer journal directory " + directory.getPath());
+        }
+
+        purgeExpired(directory);
+
+        String fileName = Hashing.md5().hashString(key, Charsets.UTF_8).toString();
+        BlobTransferJournal journal = new BlobTransferJournal(new File(directory, fileName + JOURNAL_EXTENSION), header);
+
+        if (!journal.read()) {
+            journal.reset();
+        } else {
+            journal.writer = new OutputStreamWriter(new FileOutputStream(journal.journalFile, true), Charsets.UTF_8);
+        }
+
+        return journal;
+    }
+
+    // Forgets all recorded blocks, e.g. because the local data they refer to is gone.
+    public synchronized void reset() throws IOException {
+        close();
+        blocks.clear();
+
+        writer = new OutputStreamWriter(new FileOutputStream(journalFile, false), Charsets.UTF_8);
+        writer.write(header + "\n");
+        writer.flush();
+    }
+
+    // the blocks recorded for the transfer by offset
+    @NotNull
+    public Map<Long, JournalBlock> getBlocks() {
+        return blocks;
+    }
+
+    public synchronized void blockTransferred(@NotNull String id, long offset, int size, @NotNull String md5)
+            throws IOException {
+        if (writer == null) {
+            throw new IOException("The upload journal has been closed");
+        }
+
+        writer.write(id + " " + offset + " " + size + " " + md5 + "\n");
+        writer.flush();
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+
+            writer = null;
+        }
+    }
+
+    // called once the transfer is complete
+    public void delete() {
+        close();
+
+        //noinspection ResultOfMethodCallIgnored
+        journalFile.delete();
+    }
+
+    // the Base64 encoded MD5 of the data as recorded for a block
+    @NotNull
+    public static String getMd5(@NotNull byte[] data, int offset, int length) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(data, offset, length);
+
+        return Base64.encode(md.digest());
+    }
+
+    private boolean read() throws IOException {
+        if (!journalFile.isFile()) {
+            return false;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), Charsets.UTF_8));
+
+        try {
+            if (!header.equals(reader.readLine())) {
+                return false;
+            }
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+
+                // a line cut short by a crash is skipped
+                if (fields.length != 4) {
+                    continue;
+                }
+
+                try {
+                    long offset = Long.parseLong(fields[1]);
+                    blocks.put(offset, new JournalBlock(fields[0], offset, Integer.parseInt(fields[2]), fields[3]));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void purgeExpired(@NotNull File directory) {
+        File[] journalFiles = directory.listFiles();
+
+        if (journalFiles == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        for (File journalFile : journalFiles) {
+            if (journalFile.getName().endsWith(JOURNAL_EXTENSION) && now - journalFile.lastModified() > EXPIRY_MS) {
+                //noinspection ResultOfMethodCallIgnored
+                journalFile.delete();
+            }
+        }
+    }
+}
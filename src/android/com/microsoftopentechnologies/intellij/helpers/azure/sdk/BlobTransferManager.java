@@ -0,0 +1,445 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.components.PluginSettings;
+import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
+import com.microsoftopentechnologies.intellij.model.storage.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the blob uploads and downloads started from the IDE. Transfers are queued globally and
+// started in order as long as fewer than maxConcurrentTransfers are running overall and fewer
+// than maxTransfersPerAccount for their storage account; all of them share the bandwidth budget
+// of the BandwidthLimiter. Whole local folders and blob directories are transferred as one
+// transfer per file, which are queued while the folder is walked or the directory is listed.
+// Finished transfers are kept for showing them until they are cleared.
+public class BlobTransferManager {
+    private static final int DEFAULT_MAX_CONCURRENT_TRANSFERS = 4;
+    private static final int DEFAULT_MAX_TRANSFERS_PER_ACCOUNT = 2;
+    private static final int MAX_FINISHED_TRANSFERS = 1000;
+    private static final int LISTING_PAGE_SIZE = 5000;
+
+    public interface Listener {
+        void transfersChanged();
+    }
+
+    // singleton manager instance
+    private static BlobTransferManager manager = null;
+
+    private final ExecutorService executor;
+    private final int maxConcurrentTransfers;
+    private final int maxTransfersPerAccount;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    // guarded by "this"; the finished transfers are also kept in the order in which they finished
+    private final Set<BlobTransfer> transfers = new LinkedHashSet<BlobTransfer>();
+    private final LinkedList<BlobTransfer> finishedTransfers = new LinkedList<BlobTransfer>();
+    private final LinkedList<BlobTransfer> queue = new LinkedList<BlobTransfer>();
+    private final Map<String, Integer> runningPerAccount = new HashMap<String, Integer>();
+    private int running;
+
+    private BlobTransferManager() {
+        PluginSettings settings = MSOpenTechToolsApplication.getCurrent() != null
+                ? MSOpenTechToolsApplication.getCurrent().getSettings() : null;
+
+        maxConcurrentTransfers = settings != null && settings.getMaxConcurrentTransfers() > 0
+                ? settings.getMaxConcurrentTransfers() : DEFAULT_MAX_CONCURRENT_TRANSFERS;
+        maxTransfersPerAccount = settings != null && settings.getMaxTransfersPerAccount() > 0
+                ? settings.getMaxTransfersPerAccount() : DEFAULT_MAX_TRANSFERS_PER_ACCOUNT;
+
+        // the number of running transfers is bounded by the queue, the threads only run them and
+        // walk the folders and directories that are transferred
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Azure Blob Transfer Manager " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @NotNull
+    public static synchronized BlobTransferManager getManager() {
+        if (manager == null) {
+            manager = new BlobTransferManager();
+        }
+
+        return manager;
+    }
+
+    @NotNull
+    public BlobTransfer upload(@NotNull StorageAccount storageAccount, @NotNull BlobContainer blobContainer,
+                               @NotNull String blobPath, @NotNull File file) {
+        return enqueue(new BlobTransfer(storageAccount, blobContainer, blobPath, file));
+    }
+
+    @NotNull
+    public BlobTransfer download(@NotNull StorageAccount storageAccount, @NotNull BlobFile blobFile,
+                                 @NotNull File file) {
+        return enqueue(new BlobTransfer(storageAccount, blobFile, file));
+    }
+
+    // Uploads the files in a local folder and its subfolders to the blobs below the given prefix.
+    // The returned future completes once all files have been transferred, whether they succeeded
+    // or not.
+    @NotNull
+    public ListenableFuture<Void> uploadFolder(@NotNull final StorageAccount storageAccount,
+                                               @NotNull final BlobContainer blobContainer,
+                                               @NotNull final File folder,
+                                               @NotNull final String blobPrefix) {
+        final SettableFuture<Void> res = SettableFuture.create();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<ListenableFuture<Void>> completions = new ArrayList<ListenableFuture<Void>>();
+                LinkedList<File> folders = new LinkedList<File>();
+                folders.add(folder);
+
+                while (!folders.isEmpty()) {
+                    File current = folders.removeFirst();
+                    File[] files = current.listFiles();
+
+                    if (files == null) {
+                        continue;
+                    }
+
+                    for (File file : files) {
+                        if (file.isDirectory()) {
+                            folders.addLast(file);
+                        } else {
+                            String relativePath = file.getAbsolutePath().substring(
+                                    folder.getAbsolutePath().length() + 1).replace(File.separatorChar, '/');
+
+                            completions.add(upload(storageAccount, blobContainer, blobPrefix + relativePath, file)
+                                    .getCompletion());
+                        }
+                    }
+                }
+
+                completeWhenAll(completions, res);
+            }
+        });
+
+        return res;
+    }
+
+    // Downloads the blobs in a blob directory and its subdirectories to a local folder. The
+    // directory is listed page by page and every blob is queued as soon as it is listed. The
+    // returned future fails if the directory can't be listed and completes once all blobs have
+    // been transferred otherwise, whether they succeeded or not.
+    @NotNull
+    public ListenableFuture<Void> downloadDirectory(@NotNull final StorageAccount storageAccount,
+                                                    @NotNull final BlobDirectory blobDirectory,
+                                                    @NotNull final File folder) {
+        final SettableFuture<Void> res = SettableFuture.create();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<ListenableFuture<Void>> completions = new ArrayList<ListenableFuture<Void>>();
+
+                try {
+                    String continuationToken = null;
+
+                    do {
+                        BlobItemPage page = AzureSDKManagerImpl.getManager().getBlobItemPage(storageAccount,
+                                blobDirectory, null, true, continuationToken, LISTING_PAGE_SIZE);
+
+                        // a flat listing names the blobs by their path relative to the directory
+                        for (BlobItem item : page.getItems()) {
+                            if (item instanceof BlobFile) {
+                                BlobFile blobFile = (BlobFile) item;
+                                File file = getLocalFile(folder, item.getName());
+
+                                if (file != null) {
+                                    completions.add(download(storageAccount, blobFile, file).getCompletion());
+                                } else {
+                                    completions.add(reject(new BlobTransfer(storageAccount, blobFile,
+                                                    new File(folder, item.getName())),
+                                            new IOException("The blob " + blobFile.getPath() +
+                                                    " would be downloaded outside of the folder " + folder.getPath()))
+                                            .getCompletion());
+                                }
+                            }
+                        }
+
+                        continuationToken = page.getContinuationToken();
+                    } while (continuationToken != null);
+                } catch (Throwable t) {
+                    res.setException(t);
+                    return;
+                }
+
+                completeWhenAll(completions, res);
+            }
+        });
+
+        return res;
+    }
+
+    public void cancel(@NotNull BlobTransfer transfer) {
+        boolean wasQueued = transfer.requestCancel();
+
+        if (wasQueued) {
+            boolean removed;
+
+            synchronized (this) {
+                removed = queue.remove(transfer);
+            }
+
+            // a transfer that has just been started is cancelled by the thread running it
+            if (removed) {
+                transfer.cancelled();
+                addFinished(transfer);
+                fireTransfersChanged();
+            }
+        }
+    }
+
+    // drops the finished transfers from the list
+    public void clearFinished() {
+        synchronized (this) {
+            for (Iterator<BlobTransfer> iterator = transfers.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().isFinished()) {
+                    iterator.remove();
+                }
+            }
+
+            finishedTransfers.clear();
+        }
+
+        fireTransfersChanged();
+    }
+
+    // all transfers, in the order in which they were queued
+    @NotNull
+    public synchronized List<BlobTransfer> getTransfers() {
+        return ImmutableList.copyOf(transfers);
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @NotNull
+    private BlobTransfer enqueue(@NotNull BlobTransfer transfer) {
+        synchronized (this) {
+            transfers.add(transfer);
+            queue.addLast(transfer);
+        }
+
+        fireTransfersChanged();
+        schedule();
+
+        return transfer;
+    }
+
+    // records a transfer that fails before it is queued
+    @NotNull
+    private BlobTransfer reject(@NotNull BlobTransfer transfer, @NotNull Throwable error) {
+        synchronized (this) {
+            transfers.add(transfer);
+        }
+
+        transfer.failed(error);
+        addFinished(transfer);
+        fireTransfersChanged();
+
+        return transfer;
+    }
+
+    // keeps the list of transfers from growing without bound while transfers keep finishing; the
+    // transfers that finished first are dropped first
+    private synchronized void addFinished(@NotNull BlobTransfer transfer) {
+        if (!transfers.contains(transfer)) {
+            return;
+        }
+
+        finishedTransfers.addLast(transfer);
+
+        while (finishedTransfers.size() > MAX_FINISHED_TRANSFERS) {
+            transfers.remove(finishedTransfers.removeFirst());
+        }
+    }
+
+    // starts queued transfers for as long as the limits allow it
+    private void schedule() {
+        List<BlobTransfer> started = new ArrayList<BlobTransfer>();
+
+        synchronized (this) {
+            for (Iterator<BlobTransfer> iterator = queue.iterator();
+                 iterator.hasNext() && running < maxConcurrentTransfers; ) {
+                BlobTransfer transfer = iterator.next();
+                String accountName = transfer.getStorageAccount().getName();
+                int accountRunning = runningPerAccount.containsKey(accountName) ? runningPerAccount.get(accountName) : 0;
+
+                if (accountRunning < maxTransfersPerAccount) {
+                    iterator.remove();
+                    running++;
+                    runningPerAccount.put(accountName, accountRunning + 1);
+                    started.add(transfer);
+                }
+            }
+        }
+
+        for (BlobTransfer transfer : started) {
+            start(transfer);
+        }
+    }
+
+    private void start(@NotNull final BlobTransfer transfer) {
+        // a transfer that is cancelled before its thread picks it up never runs and is finished
+        // when the future is cancelled instead
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                if (!ran.compareAndSet(false, true)) {
+                    return;
+                }
+
+                try {
+                    transfer(transfer);
+                    transfer.completed();
+                } catch (Throwable t) {
+                    if (transfer.isCancelRequested()) {
+                        transfer.cancelled();
+                    } else {
+                        transfer.failed(t);
+                    }
+                } finally {
+                    finished(transfer);
+                }
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled() && ran.compareAndSet(false, true)) {
+                    transfer.cancelled();
+                    finished(transfer);
+                }
+            }
+        };
+
+        transfer.started();
+        fireTransfersChanged();
+
+        transfer.setFuture(task);
+        executor.execute(task);
+    }
+
+    private void transfer(@NotNull final BlobTransfer transfer) throws Exception {
+        CallableSingleArg<Void, Long> progress = new CallableSingleArg<Void, Long>() {
+            @Override
+            public Void call(Long transferredBytes) throws Exception {
+                transfer.progress(transferredBytes);
+                return null;
+            }
+        };
+
+        if (transfer.getDirection() == BlobTransfer.Direction.Upload) {
+            AzureSDKManagerImpl.getManager().uploadBlobFileContent(transfer.getStorageAccount(),
+                    transfer.getBlobContainer(), transfer.getBlobPath(), transfer.getFile(), progress);
+        } else {
+            File parent = transfer.getFile().getParentFile();
+
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create the folder " + parent.getPath());
+            }
+
+            AzureSDKManagerImpl.getManager().downloadBlobFileContent(transfer.getStorageAccount(),
+                    transfer.getBlobFile(), transfer.getFile(), progress);
+        }
+    }
+
+    private void finished(@NotNull BlobTransfer transfer) {
+        addFinished(transfer);
+
+        synchronized (this) {
+            String accountName = transfer.getStorageAccount().getName();
+
+            running--;
+            runningPerAccount.put(accountName, runningPerAccount.get(accountName) - 1);
+        }
+
+        fireTransfersChanged();
+        schedule();
+    }
+
+    private void fireTransfersChanged() {
+        for (Listener listener : listeners) {
+            listener.transfersChanged();
+        }
+    }
+
+    // The file in "folder" a blob of a downloaded directory is written to. Blob names are chosen by
+    // whoever uploaded the blobs, so names that are absolute or that would resolve to a file outside
+    // of the folder, like "../../.bashrc", give null.
+    @Nullable
+    private static File getLocalFile(@NotNull File folder, @NotNull String name) throws IOException {
+        if (name.isEmpty() || name.startsWith("/") || name.startsWith("\\") ||
+                (name.length() > 1 && name.charAt(1) == ':')) {
+            return null;
+        }
+
+        String folderPath = folder.getCanonicalPath();
+
+        if (!folderPath.endsWith(File.separator)) {
+            folderPath += File.separator;
+        }
+
+        File file = new File(folder, name.replace('/', File.separatorChar)).getCanonicalFile();
+
+        return file.getPath().startsWith(folderPath) ? file : null;
+    }
+
+    private static void completeWhenAll(@NotNull List<ListenableFuture<Void>> completions,
+                                        @NotNull final SettableFuture<Void> res) {
+        Futures.addCallback(Futures.successfulAsList(completions), new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(List<Void> result) {
+                res.set(null);
+            }
+
+            @Override
+            public void onFailure(@NotNull Throwable throwable) {
+                res.setException(throwable);
+            }
+        });
+    }
+}
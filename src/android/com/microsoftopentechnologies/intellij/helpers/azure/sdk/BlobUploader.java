@@ -0,0 +1,337 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.*;
+import com.microsoftopentechnologies.azuremanagementutil.util.Base64;
+import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Uploads a local file as a block blob. The file is split into blocks that are read with
+// positional reads from one FileChannel and uploaded on the blob transfer executor, several at a
+// time; the block list is committed once all blocks are in. The block size starts out from the
+// file size and then follows the measured throughput so that every block takes a few seconds,
+// within the limits of the service: blocks of at most 4 MB and at most 50,000 blocks per blob.
+// Uploaded blocks are recorded in a BlobTransferJournal; uploading the same file to the same blob
+// again after a failure or cancellation only uploads the blocks that are missing. Every block is
+// read once: the same buffer gives the MD5 the service checks the block against and feeds the
+// MD5 of the whole file, which is stored as the Content-MD5 of the blob.
+public class BlobUploader {
+    private static final int BLOCK_SIZE_UNIT = 64 * 1024;
+    private static final int MIN_BLOCK_SIZE = 256 * 1024;
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_BLOCK_COUNT = 50000;
+    private static final long LARGE_FILE_SIZE = 256L * 1024 * 1024;
+    private static final long TARGET_BLOCK_TIME_MS = 4000;
+
+    private final CloudBlobContainer container;
+    private final String blobName;
+    private final File file;
+    private final CallableSingleArg<Void, Long> processBlockEvent;
+
+    // guarded by "this"
+    private long uploadedBytes = 0;
+    private double throughput = 0;
+    private int blockSize;
+
+    public BlobUploader(@NotNull CloudBlobContainer container, @NotNull String blobName, @NotNull File file,
+                        @Nullable CallableSingleArg<Void, Long> processBlockEvent) {
+        this.container = container;
+        this.blobName = blobName;
+        this.file = file;
+        this.processBlockEvent = processBlockEvent;
+    }
+
+    public void upload() throws Exception {
+        CloudBlockBlob blob = container.getBlockBlobReference(blobName);
+        FileInputStream fis = new FileInputStream(file);
+        BlobTransferJournal journal = null;
+
+        try {
+            journal = BlobTransferJournal.open("upload|" + blob.getUri() + "|" + file.getAbsolutePath(),
+                    file.length() + " " + file.lastModified());
+            FileChannel channel = fis.getChannel();
+            long length = channel.size();
+
+            if (length > (long) MAX_BLOCK_SIZE * MAX_BLOCK_COUNT) {
+                throw new IOException("The file is too large to be uploaded as a block blob: " + file.getPath());
+            }
+
+            blockSize = length >= LARGE_FILE_SIZE ? MAX_BLOCK_SIZE : DEFAULT_BLOCK_SIZE;
+
+            TreeMap<Long, BlobTransferJournal.JournalBlock> uploadedBlocks = getUploadedBlocks(blob, journal);
+            BlobContentDigest contentDigest = new BlobContentDigest();
+            Semaphore permits = new Semaphore(BlobTransferExecutor.getParallelism());
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            List<BlockEntry> blockEntries = new ArrayList<BlockEntry>();
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+            try {
+                long position = 0;
+
+                while (position < length) {
+                    permits.acquire();
+
+                    if (failure.get() != null) {
+                        permits.release();
+                        break;
+                    }
+
+                    BlobTransferJournal.JournalBlock uploadedBlock = uploadedBlocks.get(position);
+                    String blockId;
+                    int size;
+
+                    if (uploadedBlock != null) {
+                        // the block is still read for the MD5 of the file and only uploaded again
+                        // if the file changed
+                        blockId = uploadedBlock.getId();
+                        size = uploadedBlock.getSize();
+                    } else {
+                        // new blocks end where the next block that is already uploaded starts
+                        Long next = uploadedBlocks.higherKey(position);
+                        long limit = (next != null ? next : length) - position;
+                        size = (int) Math.min(getBlockSize(length - position, blockEntries.size()), limit);
+                        blockId = getBlockId(position);
+                    }
+
+                    blockEntries.add(new BlockEntry(blockId, BlockSearchMode.UNCOMMITTED));
+                    futures.add(BlobTransferExecutor.getExecutor().submit(new BlockUpload(channel, journal,
+                            contentDigest, blockId, position, size,
+                            uploadedBlock != null ? uploadedBlock.getMd5() : null, permits, failure)));
+                    position += size;
+                }
+
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ignored) {
+                        // recorded in "failure"
+                    }
+                }
+            } catch (InterruptedException e) {
+                contentDigest.abort();
+
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+
+                throw e;
+            }
+
+            if (failure.get() != null) {
+                Throwable t = failure.get();
+                throw t instanceof Exception ? (Exception) t : new ExecutionException(t);
+            }
+
+            // committed with the block list, the service keeps it as the Content-MD5 of the blob
+            blob.getProperties().setContentMD5(contentDigest.getMd5());
+            blob.commitBlockList(blockEntries);
+            journal.delete();
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+
+            try {
+                fis.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Returns the blocks recorded in the journal that may be reused: the service still holds them
+    // as uncommitted blocks. Whether the local file still has the same content for them is checked
+    // when the blocks are read.
+    @NotNull
+    private static TreeMap<Long, BlobTransferJournal.JournalBlock> getUploadedBlocks(@NotNull CloudBlockBlob blob,
+                                                                                  @NotNull BlobTransferJournal journal)
+            throws Exception {
+        TreeMap<Long, BlobTransferJournal.JournalBlock> res = new TreeMap<Long, BlobTransferJournal.JournalBlock>();
+
+        if (journal.getBlocks().isEmpty()) {
+            return res;
+        }
+
+        Map<String, Long> uncommittedBlocks = new HashMap<String, Long>();
+
+        try {
+            for (BlockEntry entry : blob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null)) {
+                uncommittedBlocks.put(entry.getId(), entry.getSize());
+            }
+        } catch (StorageException e) {
+            if (e.getHttpStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw e;
+            }
+        }
+
+        for (BlobTransferJournal.JournalBlock block : journal.getBlocks().values()) {
+            Long size = uncommittedBlocks.get(block.getId());
+
+            if (size != null && size == block.getSize()) {
+                res.put(block.getOffset(), block);
+            }
+        }
+
+        return res;
+    }
+
+    @NotNull
+    private static ByteBuffer read(@NotNull FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+
+        return buffer;
+    }
+
+    @NotNull
+    private static String getBufferMd5(@NotNull ByteBuffer buffer) throws NoSuchAlgorithmException {
+        return BlobTransferJournal.getMd5(buffer.array(), 0, buffer.limit());
+    }
+
+    // The IDs of all blocks of a blob must have the same length. Deriving them from the offset
+    // keeps the IDs of a resumed upload apart from those of the blocks it reuses.
+    @NotNull
+    private static String getBlockId(long offset) {
+        return Base64.encode(String.format("block-%015d", offset).getBytes());
+    }
+
+    private synchronized int getBlockSize(long remaining, int blockCount) {
+        long minBlockSize = (remaining + MAX_BLOCK_COUNT - blockCount - 1) / (MAX_BLOCK_COUNT - blockCount);
+
+        return (int) Math.max(blockSize, minBlockSize);
+    }
+
+    private synchronized void blockResumed(int size) throws Exception {
+        uploadedBytes += size;
+
+        if (processBlockEvent != null) {
+            processBlockEvent.call(uploadedBytes);
+        }
+    }
+
+    private synchronized long blockUploaded(int size, long elapsedMs) {
+        // an exponential moving average of the throughput (bytes per ms) evens out single slow blocks
+        double blockThroughput = (double) size / Math.max(elapsedMs, 1);
+        throughput = throughput == 0 ? blockThroughput : 0.7 * throughput + 0.3 * blockThroughput;
+
+        long target = (long) (throughput * TARGET_BLOCK_TIME_MS);
+        target = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, target));
+        blockSize = (int) (target / BLOCK_SIZE_UNIT * BLOCK_SIZE_UNIT);
+
+        uploadedBytes += size;
+
+        return uploadedBytes;
+    }
+
+    private class BlockUpload implements Callable<Void> {
+        private final FileChannel channel;
+        private final BlobTransferJournal journal;
+        private final BlobContentDigest contentDigest;
+        private final String blockId;
+        private final long position;
+        private final int size;
+        private final String uploadedMd5;
+        private final Semaphore permits;
+        private final AtomicReference<Throwable> failure;
+
+        private BlockUpload(FileChannel channel, BlobTransferJournal journal, BlobContentDigest contentDigest,
+                            String blockId, long position, int size, String uploadedMd5,
+                            Semaphore permits, AtomicReference<Throwable> failure) {
+            this.channel = channel;
+            this.journal = journal;
+            this.contentDigest = contentDigest;
+            this.blockId = blockId;
+            this.position = position;
+            this.size = size;
+            this.uploadedMd5 = uploadedMd5;
+            this.permits = permits;
+            this.failure = failure;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                if (failure.get() != null) {
+                    return null;
+                }
+
+                ByteBuffer buffer = read(channel, position, size);
+                contentDigest.update(position, buffer.array(), size);
+                String md5 = getBufferMd5(buffer);
+
+                if (md5.equals(uploadedMd5)) {
+                    blockResumed(size);
+                    return null;
+                }
+
+                // the service checks the block against its MD5 before storing it
+                BlobRequestOptions options = new BlobRequestOptions();
+                options.setUseTransactionalContentMD5(true);
+
+                // only the bytes that go over the wire count against the budget
+                BandwidthLimiter.getLimiter().consume(size);
+
+                long start = System.currentTimeMillis();
+                container.getBlockBlobReference(blobName).uploadBlock(blockId,
+                        new ByteArrayInputStream(buffer.array()), size, null, options, null);
+                long elapsed = System.currentTimeMillis() - start;
+
+                journal.blockTransferred(blockId, position, size, md5);
+
+                // report under the lock so that the progress never goes backwards
+                synchronized (BlobUploader.this) {
+                    long uploaded = blockUploaded(size, elapsed);
+
+                    if (processBlockEvent != null) {
+                        processBlockEvent.call(uploaded);
+                    }
+                }
+
+                return null;
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                contentDigest.abort();
+                throw e;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
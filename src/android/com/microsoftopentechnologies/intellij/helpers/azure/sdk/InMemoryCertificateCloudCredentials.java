@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoft.windowsazure.core.pipeline.apache.ApacheConfigurationProperties;
+import com.microsoft.windowsazure.credentials.SubscriptionCloudCredentials;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+
+import javax.net.ssl.SSLContext;
+import java.util.Map;
+
+// Certificate based credentials for an SSL context that has been built from a key store held
+// in memory; the SDK's own CertificateCloudCredentials insist on reading the key store from disk.
+public class InMemoryCertificateCloudCredentials extends SubscriptionCloudCredentials {
+    private final String subscriptionId;
+    private final SSLConnectionSocketFactory socketFactory;
+
+    public InMemoryCertificateCloudCredentials(String subscriptionId, SSLContext sslContext) {
+        this.subscriptionId = subscriptionId;
+        this.socketFactory = new SSLConnectionSocketFactory(sslContext);
+    }
+
+    @Override
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    @Override
+    public <T> void applyConfig(String profile, Map<String, Object> properties) {
+        properties.put(profile + ApacheConfigurationProperties.PROPERTY_SSL_CONNECTION_SOCKET_FACTORY, socketFactory);
+    }
+}
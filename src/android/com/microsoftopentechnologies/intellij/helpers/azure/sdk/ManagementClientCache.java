@@ -0,0 +1,264 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoft.windowsazure.Configuration;
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one management client per subscription and client type so that consecutive operations
+// reuse the client's HTTP connection pool instead of building a new one every time. Clients are
+// handed out with acquire() and must be given back with release(); a client that has not been
+// leased for IDLE_TIMEOUT_MS is closed. The configuration, and with it the credentials, of a
+// subscription is cached and shared by all its clients. Everything is dropped when the
+// subscription registry reports a change; clients that are still leased are closed on release.
+public class ManagementClientCache {
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long EVICTION_PERIOD_MS = TimeUnit.MINUTES.toMillis(1);
+
+    public interface ConfigurationProvider {
+        @Nullable
+        Configuration getConfiguration(@NotNull String subscriptionId) throws Exception;
+    }
+
+    public interface ClientFactory<T extends Closeable> {
+        @NotNull
+        T create(@NotNull Configuration configuration) throws Exception;
+    }
+
+    private static class CachedClient {
+        private final Closeable client;
+        private int leases = 0;
+        private long lastReleased = System.currentTimeMillis();
+        private boolean evicted = false;
+
+        private CachedClient(Closeable client) {
+            this.client = client;
+        }
+    }
+
+    private final ConfigurationProvider configurationProvider;
+    private final ScheduledExecutorService evictor;
+
+    // all state below is guarded by "this"
+    private final Map<String, Configuration> configurations = new HashMap<String, Configuration>();
+    private final Map<String, CachedClient> clients = new HashMap<String, CachedClient>();
+    private final Map<Closeable, CachedClient> leasedClients = new IdentityHashMap<Closeable, CachedClient>();
+    // bumped by invalidate() so that clients that were being built at the time aren't cached
+    private int generation = 0;
+
+    public ManagementClientCache(@NotNull ConfigurationProvider configurationProvider) {
+        this.configurationProvider = configurationProvider;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Azure Management Client Evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleClients();
+            }
+        }, EVICTION_PERIOD_MS, EVICTION_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+        SubscriptionRegistry.getRegistry().addListener(new SubscriptionRegistry.Listener() {
+            @Override
+            public void subscriptionsChanged() {
+                invalidate();
+            }
+        });
+    }
+
+    // Returns the cached client of the given type for the subscription, creating it if needed,
+    // or null if no configuration is available for the subscription.
+    @Nullable
+    public <T extends Closeable> T acquire(@NotNull String subscriptionId, @NotNull Class<T> type,
+                                           @NotNull ClientFactory<T> factory)
+            throws AzureCmdException {
+        String key = subscriptionId + "/" + type.getName();
+        Configuration configuration;
+        int generation;
+
+        synchronized (this) {
+            CachedClient cachedClient = clients.get(key);
+
+            if (cachedClient != null) {
+                return type.cast(lease(cachedClient));
+            }
+
+            configuration = configurations.get(subscriptionId);
+            generation = this.generation;
+        }
+
+        // The configuration and the client are built outside of the lock so that a slow
+        // credential or SSL setup for one subscription doesn't hold up the others. When two
+        // threads build the same client the first one to publish it wins and the other one is
+        // closed.
+        Closeable client;
+
+        try {
+            if (configuration == null) {
+                configuration = configurationProvider.getConfiguration(subscriptionId);
+
+                if (configuration == null) {
+                    return null;
+                }
+            }
+
+            client = factory.create(configuration);
+        } catch (Exception e) {
+            throw new AzureCmdException("Error creating the management client", e);
+        }
+
+        Closeable unused = null;
+        CachedClient cachedClient;
+
+        synchronized (this) {
+            // everything built from before an invalidate() is stale; such a client is only used
+            // by this caller and closed on release
+            boolean current = generation == this.generation;
+
+            if (current && !configurations.containsKey(subscriptionId)) {
+                configurations.put(subscriptionId, configuration);
+            }
+
+            cachedClient = clients.get(key);
+
+            if (cachedClient != null) {
+                unused = client;
+            } else {
+                cachedClient = new CachedClient(client);
+
+                if (current) {
+                    clients.put(key, cachedClient);
+                } else {
+                    cachedClient.evicted = true;
+                }
+            }
+
+            lease(cachedClient);
+        }
+
+        if (unused != null) {
+            close(unused);
+        }
+
+        return type.cast(cachedClient.client);
+    }
+
+    // guarded by "this"
+    @NotNull
+    private Closeable lease(@NotNull CachedClient cachedClient) {
+        cachedClient.leases++;
+        leasedClients.put(cachedClient.client, cachedClient);
+
+        return cachedClient.client;
+    }
+
+    public void release(@Nullable Closeable client) {
+        if (client == null) {
+            return;
+        }
+
+        boolean close = false;
+
+        synchronized (this) {
+            CachedClient cachedClient = leasedClients.get(client);
+
+            if (cachedClient == null) {
+                // not one of ours
+                close = true;
+            } else if (--cachedClient.leases == 0) {
+                leasedClients.remove(client);
+                cachedClient.lastReleased = System.currentTimeMillis();
+                close = cachedClient.evicted;
+            }
+        }
+
+        if (close) {
+            close(client);
+        }
+    }
+
+    // Drops all configurations and clients; idle clients are closed right away.
+    public void invalidate() {
+        List<Closeable> closeable = new ArrayList<Closeable>();
+
+        synchronized (this) {
+            generation++;
+            configurations.clear();
+
+            for (CachedClient cachedClient : clients.values()) {
+                cachedClient.evicted = true;
+
+                if (cachedClient.leases == 0) {
+                    closeable.add(cachedClient.client);
+                }
+            }
+
+            clients.clear();
+        }
+
+        for (Closeable client : closeable) {
+            close(client);
+        }
+    }
+
+    private void evictIdleClients() {
+        List<Closeable> closeable = new ArrayList<Closeable>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Iterator<CachedClient> iterator = clients.values().iterator();
+
+            while (iterator.hasNext()) {
+                CachedClient cachedClient = iterator.next();
+
+                if (cachedClient.leases == 0 && now - cachedClient.lastReleased >= IDLE_TIMEOUT_MS) {
+                    cachedClient.evicted = true;
+                    closeable.add(cachedClient.client);
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (Closeable client : closeable) {
+            close(client);
+        }
+    }
+
+    private static void close(@NotNull Closeable client) {
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
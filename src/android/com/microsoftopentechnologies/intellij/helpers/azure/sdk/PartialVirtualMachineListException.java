@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.model.vm.VirtualMachine;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+
+// Thrown when the VMs of some cloud services could not be loaded; it carries the VMs of the
+// cloud services that could and the error of each cloud service that failed, by name.
+public class PartialVirtualMachineListException extends AzureCmdException {
+    private final List<VirtualMachine> virtualMachines;
+    private final Map<String, Throwable> failedCloudServices;
+
+    public PartialVirtualMachineListException(@NotNull String message,
+                                              @NotNull String errorLog,
+                                              @NotNull List<VirtualMachine> virtualMachines,
+                                              @NotNull Map<String, Throwable> failedCloudServices) {
+        super(message, errorLog);
+
+        this.virtualMachines = virtualMachines;
+        this.failedCloudServices = failedCloudServices;
+    }
+
+    @NotNull
+    public List<VirtualMachine> getVirtualMachines() {
+        return virtualMachines;
+    }
+
+    @NotNull
+    public Map<String, Throwable> getFailedCloudServices() {
+        return failedCloudServices;
+    }
+}
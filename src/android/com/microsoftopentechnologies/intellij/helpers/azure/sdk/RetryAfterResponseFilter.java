@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.microsoft.windowsazure.core.pipeline.filter.ServiceRequestContext;
+import com.microsoft.windowsazure.core.pipeline.filter.ServiceResponseFilter;
+import com.microsoft.windowsazure.core.pipeline.filter.ServiceResponseContext;
+
+import java.util.concurrent.TimeUnit;
+
+// The SDK's response objects don't carry the HTTP headers, so this filter remembers the
+// "Retry-After" header of the last response received on the current thread. SDK calls run
+// synchronously on the calling thread which can pick the value up right after the call returns.
+public class RetryAfterResponseFilter implements ServiceResponseFilter {
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private static final ThreadLocal<Long> retryAfter = new ThreadLocal<Long>();
+
+    @Override
+    public void filter(ServiceRequestContext request, ServiceResponseContext response) {
+        String value = response.getHeader(RETRY_AFTER_HEADER);
+        retryAfter.remove();
+
+        if (value != null) {
+            try {
+                retryAfter.set(TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim())));
+            } catch (NumberFormatException ignored) {
+                // HTTP dates are not used by the management API
+            }
+        }
+    }
+
+    // Returns the delay in milliseconds requested by the last response received on this thread,
+    // or -1 if it didn't ask for one, and forgets it.
+    public static long consumeRetryAfter() {
+        Long value = retryAfter.get();
+        retryAfter.remove();
+
+        return value != null ? value : -1;
+    }
+}
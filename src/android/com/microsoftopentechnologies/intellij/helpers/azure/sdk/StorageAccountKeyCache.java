@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.azure.sdk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.management.storage.StorageManagementClient;
+import com.microsoft.windowsazure.management.storage.models.StorageAccountGetKeysResponse;
+import com.microsoftopentechnologies.intellij.helpers.azure.SubscriptionRegistry;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Storage account keys are only needed for data operations (blob explorer, uploads and the like)
+// so they are fetched on first use rather than when the storage accounts are listed. Fetches run
+// on the bounded SDK executor and concurrent requests for the same account share one fetch.
+// The keys stay cached until the account is invalidated, e.g. because its keys were regenerated,
+// or the subscriptions change.
+public class StorageAccountKeyCache {
+    // singleton cache instance
+    private static StorageAccountKeyCache cache = null;
+
+    // key fetches by "subscription/account"
+    private final ConcurrentMap<String, ListenableFuture<StorageAccountGetKeysResponse>> keys =
+            new ConcurrentHashMap<String, ListenableFuture<StorageAccountGetKeysResponse>>();
+
+    private StorageAccountKeyCache() {
+        SubscriptionRegistry.getRegistry().addListener(new SubscriptionRegistry.Listener() {
+            @Override
+            public void subscriptionsChanged() {
+                invalidateAll();
+            }
+        });
+    }
+
+    @NotNull
+    public static synchronized StorageAccountKeyCache getCache() {
+        if (cache == null) {
+            cache = new StorageAccountKeyCache();
+        }
+
+        return cache;
+    }
+
+    @NotNull
+    public ListenableFuture<StorageAccountGetKeysResponse> getKeys(@NotNull final String subscriptionId,
+                                                                   @NotNull final String accountName) {
+        final String key = getKey(subscriptionId, accountName);
+        ListenableFuture<StorageAccountGetKeysResponse> future = keys.get(key);
+
+        if (future != null) {
+            return future;
+        }
+
+        final SettableFuture<StorageAccountGetKeysResponse> newFuture = SettableFuture.create();
+        future = keys.putIfAbsent(key, newFuture);
+
+        if (future != null) {
+            return future;
+        }
+
+        AzureSDKExecutor.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    newFuture.set(fetchKeys(subscriptionId, accountName));
+                } catch (Throwable t) {
+                    // failed fetches are not cached so that the next caller tries again
+                    keys.remove(key, newFuture);
+                    newFuture.setException(t);
+                }
+            }
+        });
+
+        return newFuture;
+    }
+
+    public void invalidate(@NotNull String subscriptionId, @NotNull String accountName) {
+        keys.remove(getKey(subscriptionId, accountName));
+    }
+
+    public void invalidateAll() {
+        keys.clear();
+    }
+
+    @NotNull
+    private static StorageAccountGetKeysResponse fetchKeys(@NotNull String subscriptionId, @NotNull String accountName)
+            throws Exception {
+        StorageManagementClient client = AzureSDKHelper.getStorageManagementClient(subscriptionId);
+
+        if (client == null) {
+            throw new Exception("Unable to instantiate Storage Management client");
+        }
+
+        try {
+            StorageAccountGetKeysResponse sagkr = client.getStorageAccountsOperations().getKeys(accountName);
+
+            if (sagkr == null) {
+                throw new Exception("Unable to retrieve Storage Account Keys information");
+            }
+
+            return sagkr;
+        } finally {
+            AzureSDKHelper.releaseClient(client);
+        }
+    }
+
+    @NotNull
+    private static String getKey(@NotNull String subscriptionId, @NotNull String accountName) {
+        return subscriptionId + "/" + accountName;
+    }
+}
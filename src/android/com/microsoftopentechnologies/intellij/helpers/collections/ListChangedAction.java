@@ -18,5 +18,6 @@ package com.microsoftopentechnologies.intellij.helpers.collections;
 
 public enum ListChangedAction {
     add,
-    remove
+    remove,
+    replace
 }
@@ -23,16 +23,27 @@ public class ListChangedEvent extends EventObject {
     private ListChangedAction action;
     private Collection<?> newItems;
     private Collection<?> oldItems;
+    private int index;
 
     public ListChangedEvent(
             ObservableList<?> source,
             ListChangedAction action,
             Collection<?> newItems,
             Collection<?> oldItems) {
+        this(source, action, newItems, oldItems, -1);
+    }
+
+    public ListChangedEvent(
+            ObservableList<?> source,
+            ListChangedAction action,
+            Collection<?> newItems,
+            Collection<?> oldItems,
+            int index) {
         super(source);
         this.action = action;
         this.newItems = newItems;
         this.oldItems = oldItems;
+        this.index = index;
     }
 
     public ListChangedAction getAction() {
@@ -46,4 +57,10 @@ public class ListChangedEvent extends EventObject {
     public Collection<?> getOldItems() {
         return oldItems;
     }
+
+    // the position of the first new item in the list for additions and replacements, -1 for
+    // removals
+    public int getIndex() {
+        return index;
+    }
 }
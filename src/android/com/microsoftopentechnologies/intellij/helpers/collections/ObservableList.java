@@ -13,7 +13,6 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-
 package com.microsoftopentechnologies.intellij.helpers.collections;
 
 import com.google.common.collect.ForwardingList;
@@ -21,12 +20,25 @@ import com.google.common.collect.ForwardingList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
+// A list that notifies its listeners of every change. Nodes are loaded on background threads
+// while the view reads them on the event dispatch thread, so all access goes through the lock of
+// the list. Changes are queued under the lock and the listeners are notified of them in order
+// once it has been released, so a listener never runs while the list is locked. Iterating goes
+// over a copy of the items; views that follow the list take their copy with "observe" so that
+// no change falls between the copy and the first notification.
 public class ObservableList<E> extends ForwardingList<E> {
     private final List<E> delegate = new ArrayList<E>();
     protected List<ListChangeListener> changeListeners = new ArrayList<ListChangeListener>();
-    private boolean freezeEvents = false;
+
+    // changes waiting for their listeners to be notified; guarded by "this"
+    private final LinkedList<PendingEvent> pendingEvents = new LinkedList<PendingEvent>();
+    private boolean delivering = false;
 
     @Override
     protected List<E> delegate() {
@@ -35,106 +47,334 @@ public class ObservableList<E> extends ForwardingList<E> {
 
     @Override
     public boolean add(E element) {
-        return standardAdd(element);
+        synchronized (this) {
+            delegate.add(element);
+
+            // notify post-add
+            queueEvent(ListChangedAction.add, Arrays.asList(element), null, delegate.size() - 1);
+        }
+
+        deliverEvents();
+        return true;
     }
 
     @Override
     public boolean addAll(Collection<? extends E> c) {
-        freezeEvents = true;
-        boolean changed = standardAddAll(c);
-        if(changed) {
-            freezeEvents = false;
-            fireChangeListenerEvent(ListChangedAction.add, c, null);
+        List<E> added = new ArrayList<E>(c);
+        boolean changed;
+
+        synchronized (this) {
+            changed = insert(delegate.size(), added);
         }
 
+        deliverEvents();
         return changed;
     }
 
     @Override
     public boolean addAll(int index, Collection<? extends E> c) {
-        freezeEvents = true;
-        boolean changed = standardAddAll(index, c);
-        if(changed) {
-            freezeEvents = false;
-            fireChangeListenerEvent(ListChangedAction.add, c, null);
+        List<E> added = new ArrayList<E>(c);
+        boolean changed;
+
+        synchronized (this) {
+            changed = insert(index, added);
         }
 
+        deliverEvents();
         return changed;
     }
 
     @Override
     public void add(int index, E element) {
-        super.add(index, element);
+        synchronized (this) {
+            delegate.add(index, element);
+
+            // notify post-add
+            queueEvent(ListChangedAction.add, Arrays.asList(element), null, index);
+        }
 
-        // notify post-add
-        fireChangeListenerEvent(
-                ListChangedAction.add,
-                Arrays.asList(element),
-                null);
+        deliverEvents();
     }
 
     @Override
     public boolean remove(Object o) {
-        int index = indexOf(o);
-        if(index > -1)
-            remove(index);
-        return index != -1;
+        boolean changed;
+
+        synchronized (this) {
+            int index = delegate.indexOf(o);
+            changed = index != -1;
+
+            if(changed) {
+                queueEvent(ListChangedAction.remove, null, Arrays.asList(delegate.remove(index)), -1);
+            }
+        }
+
+        deliverEvents();
+        return changed;
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
-        freezeEvents = true;
-        boolean changed = standardRemoveAll(c);
-        if(changed) {
-            freezeEvents = false;
-            fireChangeListenerEvent(ListChangedAction.remove, null, c);
+        return removeIf(c, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return removeIf(c, false);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            if(!delegate.isEmpty()) {
+                queueEvent(ListChangedAction.remove, null, new ArrayList<E>(delegate), -1);
+                delegate.clear();
+            }
         }
 
-        return standardRemoveAll(c);
+        deliverEvents();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E replaced;
+
+        synchronized (this) {
+            replaced = delegate.set(index, element);
+
+            // notify post-replace; the new and old items are at the same positions
+            queueEvent(ListChangedAction.replace, Arrays.asList(element), Arrays.asList(replaced), index);
+        }
+
+        deliverEvents();
+        return replaced;
     }
 
     @Override
     public E remove(int index) {
-        E removed = super.remove(index);
+        E removed;
+
+        synchronized (this) {
+            removed = delegate.remove(index);
 
-        // notify post-remove
-        fireChangeListenerEvent(
-                ListChangedAction.remove,
-                null,
-                Arrays.asList(removed));
+            // notify post-remove
+            queueEvent(ListChangedAction.remove, null, Arrays.asList(removed), -1);
+        }
 
+        deliverEvents();
         return removed;
     }
 
-    private void fireChangeListenerEvent(ListChangedAction action,
-                                         Collection<?> newItems,
-                                         Collection<?> oldItems) {
-        if(!changeListeners.isEmpty() && !freezeEvents) {
-            ListChangedEvent listChangedEvent = new ListChangedEvent(
-                    this,
-                    action,
-                    newItems,
-                    oldItems);
-            for (ListChangeListener listener : changeListeners) {
-                listener.listChanged(listChangedEvent);
+    // Makes several changes as one: "changes" runs under the lock of the list, so no other thread
+    // sees the list half way through them, and the listeners are notified once it is released.
+    public void change(Runnable changes) {
+        synchronized (this) {
+            changes.run();
+        }
+
+        deliverEvents();
+    }
+
+    @Override
+    public synchronized E get(int index) {
+        return delegate.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        return delegate.contains(o);
+    }
+
+    @Override
+    public synchronized boolean containsAll(Collection<?> c) {
+        return delegate.containsAll(c);
+    }
+
+    @Override
+    public synchronized int indexOf(Object o) {
+        return delegate.indexOf(o);
+    }
+
+    @Override
+    public synchronized int lastIndexOf(Object o) {
+        return delegate.lastIndexOf(o);
+    }
+
+    @Override
+    public synchronized Object[] toArray() {
+        return delegate.toArray();
+    }
+
+    @Override
+    public synchronized <T> T[] toArray(T[] array) {
+        return delegate.toArray(array);
+    }
+
+    @Override
+    public synchronized boolean equals(Object o) {
+        return o == this || delegate.equals(o);
+    }
+
+    @Override
+    public synchronized int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return delegate.toString();
+    }
+
+    // The iterators and sub-lists are read-only copies; changes go through the methods of the
+    // list so that they are locked and observed.
+    @Override
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList(snapshot()).iterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return Collections.unmodifiableList(snapshot()).listIterator(index);
+    }
+
+    @Override
+    public synchronized List<E> subList(int fromIndex, int toIndex) {
+        return Collections.unmodifiableList(new ArrayList<E>(delegate.subList(fromIndex, toIndex)));
+    }
+
+    // the items of the list at this moment
+    public synchronized List<E> snapshot() {
+        return new ArrayList<E>(delegate);
+    }
+
+    // Adds "listener" and returns the items of the list at that moment; every change made after
+    // that reaches the listener.
+    public synchronized List<E> observe(ListChangeListener listener) {
+        changeListeners.add(listener);
+        return snapshot();
+    }
+
+    // inserts "added" with a single event
+    private boolean insert(int index, List<E> added) {
+        boolean changed = delegate.addAll(index, added);
+
+        if(changed) {
+            queueEvent(ListChangedAction.add, added, null, index);
+        }
+
+        return changed;
+    }
+
+    // removes the items that are in "c" if "inC" is true and the others otherwise
+    private boolean removeIf(Collection<?> c, boolean inC) {
+        synchronized (this) {
+            List<E> removed = new ArrayList<E>();
+
+            for(Iterator<E> iterator = delegate.iterator(); iterator.hasNext(); ) {
+                E item = iterator.next();
+
+                if(c.contains(item) == inC) {
+                    iterator.remove();
+                    removed.add(item);
+                }
+            }
+
+            if(removed.isEmpty()) {
+                return false;
+            }
+
+            queueEvent(ListChangedAction.remove, null, removed, -1);
+        }
+
+        deliverEvents();
+        return true;
+    }
+
+    // Called with the lock held. The event goes to the listeners registered at the time of the
+    // change that are still registered when it is delivered.
+    private void queueEvent(ListChangedAction action,
+                            Collection<?> newItems,
+                            Collection<?> oldItems,
+                            int index) {
+        if(!changeListeners.isEmpty()) {
+            pendingEvents.addLast(new PendingEvent(
+                    new ListChangedEvent(this, action, newItems, oldItems, index),
+                    new ArrayList<ListChangeListener>(changeListeners)));
+        }
+    }
+
+    // Notifies the listeners of the queued changes in the order in which they were made. Only one
+    // thread notifies at a time; the changes made meanwhile are left to it. A change made inside
+    // "change" is delivered once the whole block has run.
+    private void deliverEvents() {
+        if(Thread.holdsLock(this)) {
+            return;
+        }
+
+        while(true) {
+            PendingEvent pendingEvent;
+
+            synchronized (this) {
+                if(delivering || pendingEvents.isEmpty()) {
+                    return;
+                }
+
+                delivering = true;
+                pendingEvent = pendingEvents.removeFirst();
+            }
+
+            try {
+                for (ListChangeListener listener : pendingEvent.listeners) {
+                    if(isListening(listener)) {
+                        listener.listChanged(pendingEvent.event);
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    delivering = false;
+                }
             }
         }
     }
 
-    public void addChangeListener(ListChangeListener listener) {
+    private synchronized boolean isListening(ListChangeListener listener) {
+        return changeListeners.contains(listener);
+    }
+
+    public synchronized void addChangeListener(ListChangeListener listener) {
         changeListeners.add(listener);
     }
 
-    public void removeChangeListener(ListChangeListener listener) {
+    public synchronized void removeChangeListener(ListChangeListener listener) {
         changeListeners.remove(listener);
     }
 
-    public void removeAllChangeListeners() {
-        // we remove items from the collection one by one instead
-        // of simply calling "clear" because we want the "remove" event
-        // to fire for each item that's removed
-        while(!changeListeners.isEmpty()) {
-            changeListeners.remove(0);
+    public synchronized void removeAllChangeListeners() {
+        changeListeners.clear();
+    }
+
+    private static class PendingEvent {
+        private final ListChangedEvent event;
+        private final List<ListChangeListener> listeners;
+
+        private PendingEvent(ListChangedEvent event, List<ListChangeListener> listeners) {
+            this.event = event;
+            this.listeners = listeners;
         }
     }
 }
@@ -16,6 +16,8 @@
 
 package com.microsoftopentechnologies.intellij.helpers.storage;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.intellij.codeHighlighting.BackgroundEditorHighlighter;
 import com.intellij.ide.structureView.StructureViewBuilder;
 import com.intellij.openapi.application.ApplicationManager;
@@ -28,44 +30,56 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.microsoftopentechnologies.intellij.components.BlobTransfersToolWindowFactory;
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.components.PluginSettings;
 import com.microsoftopentechnologies.intellij.forms.UploadBlobFileForm;
 import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
 import com.microsoftopentechnologies.intellij.helpers.UIHelper;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
 import com.microsoftopentechnologies.intellij.helpers.azure.sdk.AzureSDKManagerImpl;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.BlobTransfer;
+import com.microsoftopentechnologies.intellij.helpers.azure.sdk.BlobTransferManager;
 import com.microsoftopentechnologies.intellij.model.storage.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
+import javax.swing.table.TableCellRenderer;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.beans.PropertyChangeListener;
 import java.io.*;
-import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.*;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 
 public class BlobExplorerFileEditor implements FileEditor {
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int DEFAULT_PAGE_WINDOW = 10;
+    private static final int LISTING_ORDER = -1;
+    private static final int MAX_DELETE_ERRORS_SHOWN = 5;
+
     private JPanel mainPanel;
     private JTextField queryTextField;
+    private JCheckBox flatListingCheckBox;
+    private JScrollPane blobListScrollPane;
     private JTable blobListTable;
     private JButton queryButton;
     private JButton refreshButton;
     private JButton uploadButton;
+    private JButton uploadFolderButton;
     private JButton deleteButton;
     private JButton openButton;
     private JButton saveAsButton;
@@ -77,30 +91,58 @@ public class BlobExplorerFileEditor implements FileEditor {
     private Project project;
 
     private LinkedList<BlobDirectory> directoryQueue = new LinkedList<BlobDirectory>();
-    private List<BlobItem> blobItems;
+
+    // The directory is listed a page at a time as the user scrolls and only a window of pages is
+    // kept in the table. The continuation token that starts every page seen so far is kept, so
+    // pages that dropped out of the window can be listed again when the user scrolls back.
+    // All of the paging state is only touched on the event dispatch thread.
+    private List<String> pageTokens = new ArrayList<String>();
+    private LinkedList<List<BlobItem>> loadedPages = new LinkedList<List<BlobItem>>();
+    private int firstLoadedPage;
+    private boolean loadingPage;
+    // when each page was last listed, or checked for the pages of a cached listing; the first
+    // unverifiedPages pages came from the cache and haven't been checked yet
+    private Map<Integer, Long> pageTimestamps = new HashMap<Integer, Long>();
+    private int unverifiedPages;
+    private int listingGeneration;
+    private String listingPrefix;
+    private boolean flatListing;
+    private BlobListingCache listingCache = new BlobListingCache();
+
+    // The rows are the items of the loaded pages, in the order the service lists them or sorted
+    // on a pooled thread. A sort mixes the rows of all pages, so while one is active no page is
+    // dropped from the window and the rest of the listing is loaded for the sort to be complete.
+    // Loading past the window takes memory the window is meant to bound, so the user is asked
+    // first; sortWholeListing is null until then, and if the user declines only the loaded items
+    // are sorted and the path label says so.
+    private BlobTableModel tableModel = new BlobTableModel();
+    private int sortColumn = LISTING_ORDER;
+    private boolean sortAscending = true;
+    private Boolean sortWholeListing;
+    private int rowsGeneration;
+    private int pendingScrollRows;
 
     public BlobExplorerFileEditor() {
-        blobListTable.getSelectionModel().setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        blobListTable.getSelectionModel().setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 
-        DefaultTableModel model =  new DefaultTableModel() {
+        blobListTable.setAutoCreateRowSorter(false);
+        blobListTable.setModel(tableModel);
+        blobListTable.setDefaultRenderer(Long.class, new DefaultTableCellRenderer() {
             @Override
-            public boolean isCellEditable(int i, int i1) {
-                return false;
+            protected void setValue(Object value) {
+                setText(value == null ? "" : UIHelper.readableFileSize((Long) value));
             }
+        });
 
-            public Class getColumnClass(int column) {
-                return (column == 0) ? Icon.class : String.class;
+        // renderers only run on the event dispatch thread, so the format can be shared
+        final SimpleDateFormat dateFormat = new SimpleDateFormat();
+        blobListTable.setDefaultRenderer(Date.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setText(value == null ? "" : dateFormat.format((Date) value));
             }
-        };
-
-        model.addColumn("");
-        model.addColumn("Name");
-        model.addColumn("Size");
-        model.addColumn("Last Modified (UTC)");
-        model.addColumn("Content Type");
-        model.addColumn("URL");
+        });
 
-        blobListTable.setModel(model);
         blobListTable.getColumnModel().getColumn(0).setMinWidth(20);
         blobListTable.getColumnModel().getColumn(0).setMaxWidth(20);
         blobListTable.getColumnModel().getColumn(1).setPreferredWidth(100);
@@ -109,37 +151,75 @@ public class BlobExplorerFileEditor implements FileEditor {
         blobListTable.getColumnModel().getColumn(4).setPreferredWidth(40);
 
 
-        JTableHeader tableHeader = blobListTable.getTableHeader();
+        final JTableHeader tableHeader = blobListTable.getTableHeader();
         Dimension headerSize = tableHeader.getPreferredSize();
         headerSize.setSize(headerSize.getWidth(), 18);
         tableHeader.setPreferredSize(headerSize);
 
+        final TableCellRenderer headerRenderer = tableHeader.getDefaultRenderer();
+        tableHeader.setDefaultRenderer(new TableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                Component component = headerRenderer.getTableCellRendererComponent(table, value, isSelected,
+                        hasFocus, row, column);
+
+                if (component instanceof JLabel) {
+                    JLabel label = (JLabel) component;
+                    boolean sorted = table.convertColumnIndexToModel(column) == sortColumn;
+
+                    label.setIcon(sorted ? UIManager.getIcon(sortAscending
+                            ? "Table.ascendingSortIcon" : "Table.descendingSortIcon") : null);
+                    label.setHorizontalTextPosition(SwingConstants.LEADING);
+                }
+
+                return component;
+            }
+        });
+
         blobListTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
             @Override
             public void valueChanged(ListSelectionEvent listSelectionEvent) {
-                boolean directorySelected = isDirectorySelected() && blobListTable.getSelectedRow() >= 0;
+                boolean singleFileSelected = blobListTable.getSelectedRowCount() == 1 && getFileSelection() != null;
 
-                deleteButton.setEnabled(!directorySelected);
-                openButton.setEnabled(!directorySelected);
-                saveAsButton.setEnabled(!directorySelected);
+                deleteButton.setEnabled(blobListTable.getSelectedRowCount() > 0);
+                openButton.setEnabled(singleFileSelected);
+                saveAsButton.setEnabled(singleFileSelected);
             }
         });
 
-        TableRowSorter<TableModel> sorter = new TableRowSorter<TableModel>(model);
-        blobListTable.setRowSorter(sorter);
-        List<RowSorter.SortKey> sortKeys = new ArrayList<RowSorter.SortKey>();
+        tableHeader.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent mouseEvent) {
+                int column = blobListTable.convertColumnIndexToModel(blobListTable.columnAtPoint(mouseEvent.getPoint()));
+
+                if (column >= 0) {
+                    // clicks on the same column go from ascending to descending and back to the
+                    // order of the listing
+                    if (column != sortColumn) {
+                        sortColumn = column;
+                        sortAscending = true;
+                    } else if (sortAscending) {
+                        sortAscending = false;
+                    } else {
+                        sortColumn = LISTING_ORDER;
+                        sortWholeListing = null;
+                        trimPages();
+                    }
 
-        sortKeys.add(new RowSorter.SortKey(0, SortOrder.DESCENDING));
-        sortKeys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
-        sorter.setSortKeys(sortKeys);
-        sorter.sort();
+                    tableHeader.repaint();
+                    updatePathLabel();
+                    updateRows(0);
+                }
+            }
+        });
 
         backButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
                 directoryQueue.pollLast();
 
-                fillGrid();
+                fillGrid(true);
             }
         });
 
@@ -148,14 +228,23 @@ public class BlobExplorerFileEditor implements FileEditor {
                 if(me.getComponent() instanceof JTable) {
                     int r = blobListTable.rowAtPoint(me.getPoint());
                     if (r >= 0 && r < blobListTable.getRowCount()) {
-                        blobListTable.setRowSelectionInterval(r, r);
+                        // clicks that extend the selection are left to the table
+                        if (!blobListTable.isRowSelected(r) && !me.isControlDown() && !me.isShiftDown()) {
+                            blobListTable.setRowSelectionInterval(r, r);
+                        }
                     } else {
                         blobListTable.clearSelection();
                     }
 
                     int rowIndex = blobListTable.getSelectedRow();
-                    if (rowIndex < 0)
+                    if (rowIndex < 0) {
+                        if (me.getButton() == 3) {
+                            JPopupMenu popup = createPrefixPopUp();
+                            popup.show(me.getComponent(), me.getX(), me.getY());
+                        }
+
                         return;
+                    }
 
                     if (me.getClickCount() == 2) {
                         tableSelection();
@@ -164,15 +253,28 @@ public class BlobExplorerFileEditor implements FileEditor {
                     if(me.getButton() == 3) {
 
                         BlobFile fileSelection = getFileSelection();
-                        if(fileSelection != null) {
+                        if(blobListTable.getSelectedRowCount() > 1) {
+                            JPopupMenu popup = createSelectionPopUp();
+                            popup.show(me.getComponent(), me.getX(), me.getY());
+                        } else if(fileSelection != null) {
                             JPopupMenu popup = createTablePopUp();
                             popup.show(me.getComponent(), me.getX(), me.getY());
+                        } else if(getFolderSelection() != null) {
+                            JPopupMenu popup = createFolderPopUp();
+                            popup.show(me.getComponent(), me.getX(), me.getY());
                         }
                     }
                 }
             }
         });
 
+        blobListScrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent changeEvent) {
+                loadVisiblePages();
+            }
+        });
+
         blobListTable.addKeyListener(new KeyListener() {
             @Override
             public void keyTyped(KeyEvent keyEvent) {}
@@ -191,17 +293,23 @@ public class BlobExplorerFileEditor implements FileEditor {
         ActionListener queryAction = new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
-                fillGrid();
+                fillGrid(true);
             }
         };
 
-        refreshButton.addActionListener(queryAction);
+        refreshButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                fillGrid();
+            }
+        });
         queryButton.addActionListener(queryAction);
+        queryTextField.addActionListener(queryAction);
 
         deleteButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
-                deleteSelectedFile();
+                deleteSelectedItems();
             }
         });
 
@@ -225,12 +333,93 @@ public class BlobExplorerFileEditor implements FileEditor {
                 uploadFile();
             }
         });
+
+        uploadFolderButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                uploadFolder();
+            }
+        });
     }
 
     public void fillGrid() {
+        fillGrid(false);
+    }
 
+    // Shows the listing of the current directory. With useCache a cached listing is shown right
+    // away and then its pages are checked against the service one after the other, otherwise the
+    // directory is listed again.
+    private void fillGrid(boolean useCache) {
         setUIState(true);
 
+        // the query is a prefix the storage service matches, so only matching blobs are listed
+        listingGeneration++;
+        listingPrefix = queryTextField.getText().isEmpty() ? null : queryTextField.getText();
+        flatListing = flatListingCheckBox.isSelected();
+        loadingPage = false;
+        unverifiedPages = 0;
+        sortWholeListing = null;
+
+        BlobDirectory directory = directoryQueue.peekLast();
+        BlobListingCache.Listing listing = null;
+
+        if (directory != null) {
+            String key = BlobListingCache.getKey(directory, listingPrefix, flatListing);
+
+            if (useCache) {
+                listing = listingCache.get(key);
+            } else {
+                listingCache.invalidate(key);
+            }
+        }
+
+        if (listing != null) {
+            showListing(directory, listing);
+            unverifiedPages = loadedPages.size();
+            loadPage(0, true);
+        } else {
+            pageTokens.clear();
+            pageTokens.add(null);
+            loadedPages.clear();
+            pageTimestamps.clear();
+            firstLoadedPage = 0;
+
+            loadPage(0, false);
+        }
+    }
+
+    private void showListing(@NotNull BlobDirectory directory, @NotNull BlobListingCache.Listing listing) {
+        pageTokens.clear();
+        pageTokens.addAll(listing.getPageTokens());
+        loadedPages.clear();
+        pageTimestamps.clear();
+        firstLoadedPage = 0;
+
+        updatePathLabel();
+
+        for (List<BlobItem> page : listing.getPages()) {
+            pageTimestamps.put(loadedPages.size(), listing.getPageTimestamps().get(loadedPages.size()));
+            addPage(new ArrayList<BlobItem>(page), false);
+        }
+
+        updateRows(0);
+        setUIState(false);
+
+        blobListTable.clearSelection();
+    }
+
+    // Lists the page with the given index and adds it to the window: at the end if it follows the
+    // last page in the window, at the start if it precedes the first one. Pages that no longer
+    // fit in the window are dropped from the other end. With revalidate the page is one of a
+    // cached listing that is already shown and is checked against the service instead.
+    private void loadPage(final int pageIndex, final boolean revalidate) {
+        loadingPage = true;
+
+        final int generation = listingGeneration;
+        final String continuationToken = pageTokens.get(pageIndex);
+        final String prefix = listingPrefix;
+        final boolean flat = flatListing;
+
         ProgressManager.getInstance().run(new Task.Backgroundable(project, "Loading blobs...", false) {
 
             @Override
@@ -242,65 +431,383 @@ public class BlobExplorerFileEditor implements FileEditor {
                         directoryQueue.addLast(AzureSDKManagerImpl.getManager().getRootDirectory(storageAccount, blobContainer));
                     }
 
-                    blobItems = AzureSDKManagerImpl.getManager().getBlobItems(storageAccount, directoryQueue.peekLast());
-                    if(!queryTextField.getText().isEmpty()) {
-                        for (int i = blobItems.size() - 1; i >= 0; i--) {
-                            BlobItem blobItem = blobItems.get(i);
-                            if(blobItem instanceof BlobFile && !blobItem.getName().startsWith(queryTextField.getText())) {
-                                blobItems.remove(i);
-                            }
-                        }
-
-                    }
-
+                    final BlobItemPage page = AzureSDKManagerImpl.getManager().getBlobItemPage(storageAccount,
+                            directoryQueue.peekLast(), prefix, flat, continuationToken, getPageSize());
+                    final List<BlobItem> blobItems = page.getItems();
 
                     ApplicationManager.getApplication().invokeLater(new Runnable() {
                         @Override
                         public void run() {
+                            // the listing was restarted while this page was loading
+                            if (generation != listingGeneration) {
+                                return;
+                            }
 
-                            pathLabel.setText(directoryQueue.peekLast().getPath());
-                            DefaultTableModel model = (DefaultTableModel) blobListTable.getModel();
+                            if (revalidate) {
+                                revalidatePage(pageIndex, page);
+                                return;
+                            }
 
-                            while(model.getRowCount() > 0) {
-                                model.removeRow(0);
+                            if (pageIndex == pageTokens.size() - 1 && page.hasMoreItems()) {
+                                pageTokens.add(page.getContinuationToken());
                             }
 
-                            for (BlobItem blobItem : blobItems) {
-                                if(blobItem instanceof BlobDirectory) {
-                                    model.addRow(new Object[]{
-                                            UIHelper.loadIcon("storagefolder.png"),
-                                            blobItem.getName(),
-                                            "",
-                                            "",
-                                            "",
-                                            blobItem.getUri()
-                                    });
-                                } else {
-                                    BlobFile blobFile = (BlobFile) blobItem;
-
-                                    model.addRow(new String[]{
-                                            "",
-                                            blobFile.getName(),
-                                            UIHelper.readableFileSize(blobFile.getSize()),
-                                            new SimpleDateFormat().format(blobFile.getLastModified().getTime()),
-                                            blobFile.getContentType(),
-                                            blobFile.getUri()
-                                    });
-                                }
+                            pageTimestamps.put(pageIndex, System.currentTimeMillis());
+
+                            if (pageIndex == 0 && loadedPages.isEmpty()) {
+                                updatePathLabel();
+
+                                updateRows(addPage(blobItems, false));
+
+                                setUIState(false);
+
+                                blobListTable.clearSelection();
+                            } else {
+                                updateRows(addPage(blobItems, pageIndex < firstLoadedPage));
                             }
 
-                            setUIState(false);
+                            storeListing();
+                            loadingPage = false;
 
-                            blobListTable.clearSelection();
+                            // keep going until the visible part of the table is filled
+                            loadVisiblePages();
                         }
                     });
 
                 } catch (AzureCmdException ex) {
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == listingGeneration) {
+                                loadingPage = false;
+                                unverifiedPages = 0;
+                                setUIState(false);
+                            }
+                        }
+                    });
+
                     UIHelper.showException("Error querying blob list.", ex, "Error querying blobs", false, true);
                 }
             }
         });
+    }
+
+    // Checks a page of the cached listing that is shown against the service. A page that is the
+    // same is only marked as checked. One that changed replaces the cached page, and the cached
+    // pages after it are dropped since they continue where the old page ended; they are listed
+    // again as the user scrolls.
+    private void revalidatePage(int pageIndex, @NotNull BlobItemPage page) {
+        int index = pageIndex - firstLoadedPage;
+
+        // a sort may have dropped the page from the window, it is listed again when it's needed
+        if (index < 0 || index >= loadedPages.size()) {
+            unverifiedPages = 0;
+            loadingPage = false;
+            loadVisiblePages();
+            return;
+        }
+
+        boolean hadMoreItems = pageIndex + 1 < pageTokens.size();
+
+        if (isSameListing(loadedPages.get(index), page.getItems()) && hadMoreItems == page.hasMoreItems()) {
+            pageTimestamps.put(pageIndex, System.currentTimeMillis());
+        } else {
+            loadedPages.set(index, page.getItems());
+
+            while (loadedPages.size() > index + 1) {
+                loadedPages.removeLast();
+            }
+
+            pageTokens.subList(pageIndex + 1, pageTokens.size()).clear();
+
+            if (page.hasMoreItems()) {
+                pageTokens.add(page.getContinuationToken());
+            }
+
+            for (Iterator<Integer> iterator = pageTimestamps.keySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next() > pageIndex) {
+                    iterator.remove();
+                }
+            }
+
+            pageTimestamps.put(pageIndex, System.currentTimeMillis());
+            unverifiedPages = Math.min(unverifiedPages, pageIndex + 1);
+
+            updateRows(0);
+        }
+
+        storeListing();
+
+        if (pageIndex + 1 < unverifiedPages) {
+            loadPage(pageIndex + 1, true);
+        } else {
+            unverifiedPages = 0;
+            loadingPage = false;
+            loadVisiblePages();
+        }
+    }
+
+    // only listings that still start at the first page are cached
+    private void storeListing() {
+        BlobDirectory directory = directoryQueue.peekLast();
+
+        if (directory != null && firstLoadedPage == 0) {
+            List<Long> timestamps = new ArrayList<Long>();
+
+            for (int i = 0; i < loadedPages.size(); i++) {
+                Long timestamp = pageTimestamps.get(i);
+                timestamps.add(timestamp != null ? timestamp : 0L);
+            }
+
+            listingCache.put(BlobListingCache.getKey(directory, listingPrefix, flatListing), directory,
+                    listingPrefix, flatListing, loadedPages, pageTokens, timestamps);
+        }
+    }
+
+    private static boolean isSameListing(@NotNull List<BlobItem> cachedItems, @NotNull List<BlobItem> blobItems) {
+        if (cachedItems.size() != blobItems.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < cachedItems.size(); i++) {
+            BlobItem cachedItem = cachedItems.get(i);
+            BlobItem blobItem = blobItems.get(i);
+
+            if (!cachedItem.getPath().equals(blobItem.getPath()) ||
+                    cachedItem.getItemType() != blobItem.getItemType()) {
+                return false;
+            }
+
+            if (cachedItem instanceof BlobFile) {
+                String cachedETag = ((BlobFile) cachedItem).getETag();
+                String eTag = ((BlobFile) blobItem).getETag();
+
+                if (cachedETag != null ? !cachedETag.equals(eTag) : eTag != null) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void removeBlobItems(@NotNull List<BlobFile> blobFiles) {
+        Set<String> paths = new HashSet<String>();
+
+        for (BlobFile blobFile : blobFiles) {
+            paths.add(blobFile.getPath());
+        }
+
+        boolean removed = false;
+
+        for (List<BlobItem> page : loadedPages) {
+            for (Iterator<BlobItem> iterator = page.iterator(); iterator.hasNext(); ) {
+                BlobItem item = iterator.next();
+
+                if (item instanceof BlobFile && paths.contains(item.getPath())) {
+                    iterator.remove();
+                    removed = true;
+                }
+            }
+        }
+
+        if (removed) {
+            updateRows(0);
+        }
+    }
+
+    // Adds a page to the window and returns the number of rows the view has to move for the rows
+    // the user is looking at to stay in place.
+    private int addPage(@NotNull List<BlobItem> blobItems, boolean atStart) {
+        int scrollRows = 0;
+
+        if (atStart) {
+            loadedPages.addFirst(blobItems);
+            firstLoadedPage--;
+            scrollRows += blobItems.size();
+        } else {
+            loadedPages.addLast(blobItems);
+        }
+
+        // the rows of sorted pages aren't where the page is, so the view follows the rows the
+        // user is looking at instead
+        if (sortColumn != LISTING_ORDER) {
+            return 0;
+        }
+
+        while (loadedPages.size() > getPageWindow()) {
+            if (atStart) {
+                loadedPages.removeLast();
+            } else {
+                List<BlobItem> dropped = loadedPages.removeFirst();
+                firstLoadedPage++;
+                scrollRows -= dropped.size();
+            }
+        }
+
+        return scrollRows;
+    }
+
+    // drops the pages a sort kept beyond the window, the table starts over at its first row
+    private void trimPages() {
+        while (loadedPages.size() > getPageWindow()) {
+            loadedPages.removeLast();
+        }
+
+        pendingScrollRows = 0;
+        blobListScrollPane.getViewport().setViewPosition(new Point(0, 0));
+    }
+
+    // Sorts the items of the loaded pages on a pooled thread and then replaces the rows of the
+    // table with them in one go. Only the latest update is applied.
+    private void updateRows(int scrollRows) {
+        final int generation = ++rowsGeneration;
+        final List<BlobItem> blobItems = getLoadedBlobItems();
+        final Comparator<BlobItem> comparator = sortColumn != LISTING_ORDER
+                ? BlobTableModel.getComparator(sortColumn, sortAscending) : null;
+
+        pendingScrollRows += scrollRows;
+
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                if (comparator != null) {
+                    Collections.sort(blobItems, comparator);
+                }
+
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != rowsGeneration) {
+                            return;
+                        }
+
+                        int selectedRow = blobListTable.getSelectedRow();
+                        BlobItem selectedItem = selectedRow >= 0 ? tableModel.getItem(selectedRow) : null;
+
+                        // a sort puts new rows anywhere, so the first visible row is followed
+                        JViewport viewport = blobListScrollPane.getViewport();
+                        int topRow = comparator != null ? blobListTable.rowAtPoint(viewport.getViewPosition()) : -1;
+                        BlobItem topItem = topRow >= 0 ? tableModel.getItem(topRow) : null;
+
+                        tableModel.setItems(blobItems);
+
+                        int row = selectedItem != null ? blobItems.indexOf(selectedItem) : -1;
+
+                        if (row >= 0) {
+                            blobListTable.setRowSelectionInterval(row, row);
+                        }
+
+                        int newTopRow = topItem != null ? blobItems.indexOf(topItem) : -1;
+
+                        if (newTopRow >= 0) {
+                            scrollBy(newTopRow - topRow);
+                        } else if (pendingScrollRows != 0) {
+                            scrollBy(pendingScrollRows);
+                        }
+
+                        pendingScrollRows = 0;
+
+                        loadVisiblePages();
+                    }
+                });
+            }
+        });
+    }
+
+    // keeps the rows the user is looking at in place when rows are added or removed above them
+    private void scrollBy(int rows) {
+        JViewport viewport = blobListScrollPane.getViewport();
+        Point position = viewport.getViewPosition();
 
+        position.y = Math.max(0, position.y + rows * blobListTable.getRowHeight());
+        viewport.setViewPosition(position);
+    }
+
+    // Lists the next page when the user gets close to the last row in the window and the previous
+    // page when the user gets close to the first one. While the rows are sorted the pages that
+    // are missing are listed one after the other.
+    private void loadVisiblePages() {
+        if (loadingPage || loadedPages.isEmpty()) {
+            return;
+        }
+
+        if (sortColumn != LISTING_ORDER) {
+            boolean hasNextPage = firstLoadedPage + loadedPages.size() < pageTokens.size();
+
+            if ((hasNextPage || firstLoadedPage > 0) && canLoadPagesForSort()) {
+                loadPage(hasNextPage ? firstLoadedPage + loadedPages.size() : firstLoadedPage - 1, false);
+            }
+
+            return;
+        }
+
+        Rectangle visibleRect = blobListScrollPane.getViewport().getViewRect();
+        int threshold = getPageSize() / 4;
+        int firstVisibleRow = visibleRect.y / blobListTable.getRowHeight();
+        int lastVisibleRow = (visibleRect.y + visibleRect.height) / blobListTable.getRowHeight();
+        int nextPage = firstLoadedPage + loadedPages.size();
+
+        if (lastVisibleRow >= blobListTable.getRowCount() - threshold && nextPage < pageTokens.size()) {
+            loadPage(nextPage, false);
+        } else if (firstVisibleRow <= threshold && firstLoadedPage > 0) {
+            loadPage(firstLoadedPage - 1, false);
+        }
+    }
+
+    // Pages are loaded for a sort until the window is full; past that the user decides once per
+    // listing whether to load the whole listing.
+    private boolean canLoadPagesForSort() {
+        if (loadedPages.size() < getPageWindow()) {
+            return true;
+        }
+
+        if (sortWholeListing == null) {
+            // the dialog lets other events through, they must not ask again
+            sortWholeListing = false;
+            sortWholeListing = JOptionPane.showConfirmDialog(mainPanel,
+                    String.format("This folder has more than %d blobs. Sorting all of them loads the whole listing " +
+                            "into memory. Do you want to load it?\nOtherwise only the loaded blobs are sorted.",
+                            getLoadedBlobItems().size()),
+                    "Sort Blobs", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION;
+
+            updatePathLabel();
+        }
+
+        return sortWholeListing;
+    }
+
+    private void updatePathLabel() {
+        BlobDirectory directory = directoryQueue.peekLast();
+        String path = directory != null ? directory.getPath() : "";
+
+        if (sortColumn != LISTING_ORDER && Boolean.FALSE.equals(sortWholeListing)) {
+            path = path + String.format(" (only the %d loaded blobs are sorted)", getLoadedBlobItems().size());
+        }
+
+        pathLabel.setText(path);
+    }
+
+    private static int getPageSize() {
+        PluginSettings settings = getSettings();
+
+        return settings != null && settings.getBlobListPageSize() > 0
+                ? settings.getBlobListPageSize() : DEFAULT_PAGE_SIZE;
+    }
+
+    // the number of pages kept in the table, which bounds the memory used for large directories
+    private static int getPageWindow() {
+        PluginSettings settings = getSettings();
+
+        return settings != null && settings.getBlobListPageWindow() > 0
+                ? settings.getBlobListPageWindow() : DEFAULT_PAGE_WINDOW;
+    }
+
+    @Nullable
+    private static PluginSettings getSettings() {
+        MSOpenTechToolsApplication application = MSOpenTechToolsApplication.getCurrent();
+
+        return application != null ? application.getSettings() : null;
     }
 
     private void setUIState(boolean loading) {
@@ -310,6 +817,7 @@ public class BlobExplorerFileEditor implements FileEditor {
             queryButton.setEnabled(false);
             refreshButton.setEnabled(false);
             uploadButton.setEnabled(false);
+            uploadFolderButton.setEnabled(false);
             deleteButton.setEnabled(false);
             openButton.setEnabled(false);
             saveAsButton.setEnabled(false);
@@ -320,6 +828,7 @@ public class BlobExplorerFileEditor implements FileEditor {
             queryButton.setEnabled(true);
             refreshButton.setEnabled(true);
             uploadButton.setEnabled(true);
+            uploadFolderButton.setEnabled(true);
             blobListTable.setEnabled(true);
 
             backButton.setEnabled(directoryQueue.size() > 1);
@@ -327,42 +836,39 @@ public class BlobExplorerFileEditor implements FileEditor {
     }
 
     private BlobDirectory getFolderSelection() {
-        if(blobListTable.getSelectedRow() >= 0) {
-            String name = blobListTable.getValueAt(blobListTable.getSelectedRow(), 1).toString();
+        int selectedRow = blobListTable.getSelectedRow();
 
-            for (BlobItem item : blobItems) {
-                if (item instanceof BlobDirectory && item.getName().equals(name)) {
-                    return (BlobDirectory) item;
-                }
-            }
+        if(selectedRow >= 0 && tableModel.getItem(selectedRow) instanceof BlobDirectory) {
+            return (BlobDirectory) tableModel.getItem(selectedRow);
         }
         return null;
     }
 
 
     private BlobFile getFileSelection() {
+        int selectedRow = blobListTable.getSelectedRow();
 
-        if(blobListTable.getSelectedRow() >= 0) {
-            String name = blobListTable.getValueAt(blobListTable.getSelectedRow(), 1).toString();
-
-            for (BlobItem item : blobItems) {
-                if (item instanceof BlobFile && item.getName().equals(name)) {
-                    return (BlobFile) item;
-                }
-            }
+        if(selectedRow >= 0 && tableModel.getItem(selectedRow) instanceof BlobFile) {
+            return (BlobFile) tableModel.getItem(selectedRow);
         }
         return null;
     }
 
+    @NotNull
+    private List<BlobItem> getLoadedBlobItems() {
+        List<BlobItem> blobItems = new ArrayList<BlobItem>();
+
+        for (List<BlobItem> page : loadedPages) {
+            blobItems.addAll(page);
+        }
+
+        return blobItems;
+    }
+
     private boolean isDirectorySelected() {
         int selectedRow = blobListTable.getSelectedRow();
 
-        if(selectedRow < 0) {
-            return false;
-        } else {
-            Object icon = blobListTable.getValueAt(selectedRow, 0);
-            return icon instanceof Icon;
-        }
+        return selectedRow >= 0 && tableModel.getItem(selectedRow) instanceof BlobDirectory;
     }
 
     private void tableSelection() {
@@ -371,7 +877,7 @@ public class BlobExplorerFileEditor implements FileEditor {
 
             if (item != null) {
                 directoryQueue.addLast(item);
-                fillGrid();
+                fillGrid(true);
             }
         }
     }
@@ -403,49 +909,273 @@ public class BlobExplorerFileEditor implements FileEditor {
             }
         });
 
-        JMenuItem deleteMenu = new JMenuItem("Delete");
+        menu.add(openMenu);
+        menu.add(saveAsMenu);
+        menu.add(copyMenu);
+        menu.add(createDeleteMenu("Delete"));
+        menu.add(createDeletePrefixMenu());
+
+        return menu;
+    }
+
+    private JPopupMenu createSelectionPopUp() {
+        JPopupMenu menu = new JPopupMenu();
+
+        menu.add(createDeleteMenu("Delete Selected"));
+        menu.add(createDeletePrefixMenu());
+
+        return menu;
+    }
+
+    private JPopupMenu createPrefixPopUp() {
+        JPopupMenu menu = new JPopupMenu();
+
+        menu.add(createDeletePrefixMenu());
+
+        return menu;
+    }
+
+    private JMenuItem createDeleteMenu(String text) {
+        JMenuItem deleteMenu = new JMenuItem(text);
         deleteMenu.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
-                deleteSelectedFile();
+                deleteSelectedItems();
+            }
+        });
+
+        return deleteMenu;
+    }
+
+    private JMenuItem createDeletePrefixMenu() {
+        JMenuItem deletePrefixMenu = new JMenuItem("Delete Blobs with Prefix...");
+        deletePrefixMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                deleteBlobsWithPrefix();
+            }
+        });
+
+        return deletePrefixMenu;
+    }
+
+    private JPopupMenu createFolderPopUp() {
+        JPopupMenu menu = new JPopupMenu();
+
+        JMenuItem openMenu = new JMenuItem("Open");
+        openMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                tableSelection();
+            }
+        });
+
+        JMenuItem downloadMenu = new JMenuItem("Download Folder...");
+        downloadMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                downloadSelectedFolder();
             }
         });
 
         menu.add(openMenu);
-        menu.add(saveAsMenu);
-        menu.add(copyMenu);
-        menu.add(deleteMenu);
+        menu.add(downloadMenu);
+        menu.add(createDeleteMenu("Delete Folder"));
 
         return menu;
     }
 
-    private void deleteSelectedFile() {
-        final BlobFile blobItem = getFileSelection();
+    // Deletes the selected blobs and all blobs under the selected folders.
+    private void deleteSelectedItems() {
+        final List<BlobFile> blobFiles = new ArrayList<BlobFile>();
+        final List<BlobDirectory> blobDirectories = new ArrayList<BlobDirectory>();
 
-        if(blobItem != null) {
-            if(JOptionPane.showConfirmDialog(mainPanel, "Are you sure you want to delete this blob?", "Delete Blob",JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE) == JOptionPane.OK_OPTION) {
-                setUIState(true);
+        for (int row : blobListTable.getSelectedRows()) {
+            BlobItem item = tableModel.getItem(row);
+
+            if (item instanceof BlobFile) {
+                blobFiles.add((BlobFile) item);
+            } else if (item instanceof BlobDirectory) {
+                blobDirectories.add((BlobDirectory) item);
+            }
+        }
 
-                ProgressManager.getInstance().run(new Task.Backgroundable(project, "Deleting blob...", false) {
+        if (blobFiles.isEmpty() && blobDirectories.isEmpty()) {
+            return;
+        }
+
+        String message;
+
+        if (blobDirectories.isEmpty()) {
+            message = blobFiles.size() == 1 ? "Are you sure you want to delete this blob?"
+                    : String.format("Are you sure you want to delete these %d blobs?", blobFiles.size());
+        } else {
+            message = String.format("Are you sure you want to delete %d blobs and all blobs in %d folders?",
+                    blobFiles.size(), blobDirectories.size());
+        }
+
+        if(JOptionPane.showConfirmDialog(mainPanel, message, "Delete Blobs", JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE) == JOptionPane.OK_OPTION) {
+            deleteBlobs(blobFiles, blobDirectories, null);
+        }
+    }
+
+    // Deletes the blobs in the shown directory and its subdirectories whose path relative to the
+    // directory starts with a prefix, e.g. to clean up a build output.
+    private void deleteBlobsWithPrefix() {
+        BlobDirectory directory = directoryQueue.peekLast();
+
+        if (directory == null) {
+            return;
+        }
+
+        String prefix = (String) JOptionPane.showInputDialog(mainPanel,
+                "Delete all blobs in \"" + (directory.getPath().isEmpty() ? blobContainer.getName() : directory.getPath()) +
+                        "\" and its subfolders whose path starts with:", "Delete Blobs with Prefix",
+                JOptionPane.WARNING_MESSAGE, null, null, queryTextField.getText());
+
+        if (prefix == null || prefix.isEmpty()) {
+            return;
+        }
+
+        if(JOptionPane.showConfirmDialog(mainPanel, String.format("Are you sure you want to delete all blobs starting with \"%s\"?", prefix),
+                "Delete Blobs with Prefix", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.OK_OPTION) {
+            deleteBlobs(Collections.<BlobFile>emptyList(), Collections.singletonList(directory), prefix);
+        }
+    }
+
+    // Deletes the given blobs and all blobs under the given directories, those starting with the
+    // prefix if there is one. Blobs that could not be deleted are offered for deleting them again.
+    private void deleteBlobs(@NotNull final List<BlobFile> blobFiles, @NotNull final List<BlobDirectory> blobDirectories,
+                             @Nullable final String prefix) {
+        setUIState(true);
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Deleting blobs...", true) {
+            @Override
+            public void run(@NotNull final ProgressIndicator progressIndicator) {
+                progressIndicator.setIndeterminate(blobFiles.isEmpty() || !blobDirectories.isEmpty());
+
+                final Map<BlobFile, Exception> failedBlobFiles = new LinkedHashMap<BlobFile, Exception>();
+                final int[] deletedCount = new int[1];
+                final int[] batchCount = new int[1];
+
+                // progress is reported as a count, the size of a prefix isn't known up front; the
+                // deletes stop when the user cancels
+                CallableSingleArg<Void, Integer> callable = new CallableSingleArg<Void, Integer>() {
                     @Override
-                    public void run(@NotNull ProgressIndicator progressIndicator) {
-                        progressIndicator.setIndeterminate(true);
-                        try {
-                            AzureSDKManagerImpl.getManager().deleteBlobFile(storageAccount, blobItem);
-
-                            ApplicationManager.getApplication().invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    fillGrid();
-                                }
-                            });
+                    public Void call(Integer deleted) throws Exception {
+                        progressIndicator.checkCanceled();
 
-                        } catch (AzureCmdException ex) {
-                            UIHelper.showException("Error deleting blob.", ex, "Error deleting blob", false, true);
+                        synchronized (deletedCount) {
+                            deletedCount[0] = Math.max(deletedCount[0], batchCount[0] + deleted);
+                            progressIndicator.setText2(String.format("%d blobs deleted", deletedCount[0]));
+
+                            if (!progressIndicator.isIndeterminate()) {
+                                progressIndicator.setFraction((double) deletedCount[0] / blobFiles.size());
+                            }
                         }
+
+                        return null;
                     }
-                });
+                };
+
+                boolean completed = false;
+
+                try {
+                    if (!blobFiles.isEmpty()) {
+                        failedBlobFiles.putAll(AzureSDKManagerImpl.getManager().deleteBlobFiles(storageAccount,
+                                blobFiles, callable));
+                    }
+
+                    for (BlobDirectory blobDirectory : blobDirectories) {
+                        if (progressIndicator.isCanceled()) {
+                            return;
+                        }
+
+                        synchronized (deletedCount) {
+                            batchCount[0] = deletedCount[0];
+                        }
+
+                        failedBlobFiles.putAll(AzureSDKManagerImpl.getManager().deleteBlobDirectory(storageAccount,
+                                blobDirectory, prefix, callable));
+                    }
+
+                    completed = !progressIndicator.isCanceled();
+                } catch (AzureCmdException e) {
+                    // the deletes in flight when the user cancelled still finish, the rest are dropped
+                    if (!progressIndicator.isCanceled()) {
+                        UIHelper.showException("Error deleting blobs.", e, "Error deleting blobs", false, true);
+                    }
+                } finally {
+                    final boolean succeeded = completed;
+
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            deleteCompleted(blobFiles, blobDirectories, succeeded ? failedBlobFiles : null);
+                        }
+                    });
+                }
             }
+        });
+    }
+
+    // failedBlobFiles is null if the deletes were cancelled or failed and it isn't known which
+    // blobs are gone
+    private void deleteCompleted(@NotNull List<BlobFile> blobFiles, @NotNull List<BlobDirectory> blobDirectories,
+                                 @Nullable Map<BlobFile, Exception> failedBlobFiles) {
+        if (failedBlobFiles == null) {
+            listingCache.clear();
+            fillGrid();
+            return;
+        }
+
+        if (blobDirectories.isEmpty()) {
+            Set<String> failedPaths = new HashSet<String>();
+
+            for (BlobFile blobFile : failedBlobFiles.keySet()) {
+                failedPaths.add(blobFile.getPath());
+            }
+
+            List<BlobFile> deletedBlobFiles = new ArrayList<BlobFile>();
+
+            for (BlobFile blobFile : blobFiles) {
+                if (!failedPaths.contains(blobFile.getPath())) {
+                    listingCache.removeBlob(blobFile);
+                    deletedBlobFiles.add(blobFile);
+                }
+            }
+
+            removeBlobItems(deletedBlobFiles);
+            setUIState(false);
+        } else {
+            // whole directories may be gone, the listings can't be patched in place
+            listingCache.clear();
+            fillGrid();
+        }
+
+        if (failedBlobFiles.isEmpty()) {
+            return;
+        }
+
+        // the first few errors tell the user whether trying again can help
+        StringBuilder message = new StringBuilder(String.format("%d blobs could not be deleted:\n",
+                failedBlobFiles.size()));
+        int shownErrors = 0;
+
+        for (Map.Entry<BlobFile, Exception> entry : failedBlobFiles.entrySet()) {
+            if (shownErrors++ == MAX_DELETE_ERRORS_SHOWN) {
+                message.append("...\n");
+                break;
+            }
+
+            message.append(entry.getKey().getPath()).append(": ").append(entry.getValue().getMessage()).append("\n");
+        }
+
+        message.append("\nDo you want to try deleting them again?");
+
+        if (JOptionPane.showConfirmDialog(mainPanel, message.toString(), "Delete Blobs", JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE) == JOptionPane.OK_OPTION) {
+            deleteBlobs(new ArrayList<BlobFile>(failedBlobFiles.keySet()), Collections.<BlobDirectory>emptyList(), null);
         }
     }
 
@@ -461,7 +1191,7 @@ public class BlobExplorerFileEditor implements FileEditor {
     private void saveAsSelectedFile() {
         BlobFile fileSelection = getFileSelection();
 
-        JFileChooser jFileChooser = new JFileChooser(new File(fileSelection.getName()));
+        JFileChooser jFileChooser = new JFileChooser(new File(new File(fileSelection.getName()).getName()));
         jFileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
         int saveDialog = jFileChooser.showSaveDialog(this.mainPanel);
 
@@ -474,7 +1204,7 @@ public class BlobExplorerFileEditor implements FileEditor {
         String defaultFolder = System.getProperty("user.home") + File.separator + "Downloads";
         BlobFile fileSelection = getFileSelection();
         if(fileSelection != null) {
-            downloadSelectedFile(new File(defaultFolder + File.separator + fileSelection.getName()));
+            downloadSelectedFile(new File(defaultFolder + File.separator + new File(fileSelection.getName()).getName()));
         }
     }
 
@@ -482,74 +1212,38 @@ public class BlobExplorerFileEditor implements FileEditor {
         final BlobFile fileSelection = getFileSelection();
 
         if(fileSelection != null) {
-            ProgressManager.getInstance().run(new Task.Backgroundable(project, "Downloading blob...", true) {
-
-                @Override
-                public void run(@NotNull final ProgressIndicator progressIndicator) {
-
-
-                    try {
-
-                        progressIndicator.setIndeterminate(false);
-
-                        if (!targetFile.exists()) {
-                            if(!targetFile.createNewFile()){
-                                throw new IOException("File not created");
-                            }
-                        }
-
-                        final BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(targetFile), 65536) {
-                            private long runningCount = 0;
-
-                            @Override
-                            public synchronized void write(@NotNull byte[] bytes, int i, int i1) throws IOException {
-                                super.write(bytes, i, i1);
-
-                                runningCount += i1;
-
-                                double progress = (double) runningCount / fileSelection.getSize();
-                                progressIndicator.setFraction(progress);
-                                progressIndicator.setText2(String.format("%s%% downloaded", (int) (progress * 100)));
-                            }
-
-                        };
-                        try {
-
-                            Future<?> future = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
-                                @Override
-                                public void run() {
-
-                                    try {
-                                        AzureSDKManagerImpl.getManager().downloadBlobFileContent(storageAccount, fileSelection, bufferedOutputStream);
+            BlobTransferManager.getManager().download(storageAccount, fileSelection, targetFile);
+            showTransfers();
+        }
+    }
 
-                                    } catch (AzureCmdException e) {
-                                        Throwable connectionFault = e.getCause().getCause();
+    private void downloadSelectedFolder() {
+        final BlobDirectory folderSelection = getFolderSelection();
 
-                                        progressIndicator.setText("Error downloading Blob");
-                                        progressIndicator.setText2((connectionFault instanceof SocketTimeoutException) ? "Connection timed out" : connectionFault.getMessage());
-                                    }
-                                }
-                            });
+        if(folderSelection != null) {
+            JFileChooser jFileChooser = new JFileChooser(System.getProperty("user.home") + File.separator + "Downloads");
+            jFileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            jFileChooser.setDialogTitle("Download Folder");
 
-                            while (!future.isDone()) {
-                                progressIndicator.checkCanceled();
-                                if (progressIndicator.isCanceled()) {
-                                    future.cancel(true);
-                                }
-                            }
+            if(jFileChooser.showSaveDialog(this.mainPanel) == JFileChooser.APPROVE_OPTION) {
+                File targetFolder = new File(jFileChooser.getSelectedFile(), folderSelection.getName());
 
-                        } finally {
-                            bufferedOutputStream.close();
-                        }
+                Futures.addCallback(BlobTransferManager.getManager().downloadDirectory(storageAccount, folderSelection,
+                        targetFolder), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                    }
 
-                    } catch (IOException e) {
-                        UIHelper.showException("Error downloading Blob", e, "Error downloading Blob", false, true);
+                    @Override
+                    public void onFailure(@NotNull Throwable throwable) {
+                        UIHelper.showException("Error listing the blobs to download.", throwable,
+                                "Error downloading folder", false, true);
                     }
-                }
+                });
 
-            });
+                showTransfers();
+            }
         }
-
     }
 
 
@@ -579,117 +1273,139 @@ public class BlobExplorerFileEditor implements FileEditor {
         form.setVisible(true);
     }
 
-    private void uploadFile(final String path, final File selectedFile)
-    {
+    private void uploadFile(final String path, final File selectedFile) {
+        BlobTransfer transfer = BlobTransferManager.getManager().upload(storageAccount, blobContainer, path, selectedFile);
+
+        Futures.addCallback(transfer.getCompletion(), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                // the blob is listed as the service has it, with its size and ETag, and put into
+                // the cached listings in place
+                ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final BlobFile blobFile = getUploadedBlob(path);
+
+                        ApplicationManager.getApplication().invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (blobFile != null) {
+                                    listingCache.putBlob(blobFile, blobContainer.getUri());
+                                } else {
+                                    listingCache.invalidateBlobPath(path);
+                                }
 
-        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Uploading blob...", true) {
+                                openBlobDirectory(path);
+                                fillGrid(true);
+                            }
+                        });
+                    }
+                });
+            }
 
             @Override
-            public void run(@NotNull final ProgressIndicator progressIndicator) {
-                try {
+            public void onFailure(@NotNull Throwable throwable) {
+                // the transfers tool window shows why the upload failed
+            }
+        });
 
-                    final BlobDirectory blobDirectory = directoryQueue.peekLast();
+        showTransfers();
+    }
 
-                    final BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(selectedFile));
+    // uploads a local folder with its subfolders into the directory that is shown
+    private void uploadFolder() {
+        JFileChooser jFileChooser = new JFileChooser();
+        jFileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        jFileChooser.setDialogTitle("Upload Folder");
 
-                    progressIndicator.setIndeterminate(false);
-                    progressIndicator.setText("Uploading blob...");
-                    progressIndicator.setText2("0% uploaded");
+        if(jFileChooser.showOpenDialog(this.mainPanel) == JFileChooser.APPROVE_OPTION) {
+            File folder = jFileChooser.getSelectedFile();
+            BlobDirectory directory = directoryQueue.peekLast();
+            final String folderName = folder.getName();
+            final String prefix = (directory != null ? directory.getPath() : "") + folderName + "/";
 
-                    try {
+            Futures.addCallback(BlobTransferManager.getManager().uploadFolder(storageAccount, blobContainer, folder,
+                    prefix), new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            listingCache.putDirectory(new BlobDirectory(folderName, blobContainer.getUri() + "/" +
+                                    prefix, blobContainer.getName(), prefix, storageAccount.getSubscriptionId()),
+                                    blobContainer.getUri());
+                            fillGrid(true);
+                        }
+                    });
+                }
 
-                        final CallableSingleArg<Void, Long> callable = new CallableSingleArg<Void, Long>() {
-                            @Override
-                            public Void call(Long uploadedBytes) throws Exception {
-                                double progress = ((double) uploadedBytes) / selectedFile.length();
+                @Override
+                public void onFailure(@NotNull Throwable throwable) {
+                    // the transfers tool window shows which files failed
+                }
+            });
 
-                                progressIndicator.setFraction(progress);
-                                progressIndicator.setText2(String.format("%s%% uploaded", (int) (progress * 100)));
+            showTransfers();
+        }
+    }
 
-                                return null;
-                            }
-                        };
+    // Lists the blob that was uploaded to the given path. A page of a single item is enough since
+    // the blob sorts before everything else that starts with its name.
+    @Nullable
+    private BlobFile getUploadedBlob(@NotNull String path) {
+        int separator = path.lastIndexOf('/');
+        int nameStart = path.lastIndexOf('/', separator - 1) + 1;
+        String directoryPath = path.substring(0, separator + 1);
+        BlobDirectory directory = new BlobDirectory(path.substring(nameStart, Math.max(separator, nameStart)),
+                blobContainer.getUri() + "/" + directoryPath,
+                blobContainer.getName(), directoryPath, storageAccount.getSubscriptionId());
+
+        try {
+            List<BlobItem> blobItems = AzureSDKManagerImpl.getManager().getBlobItemPage(storageAccount, directory,
+                    path.substring(separator + 1), false, null, 1).getItems();
+
+            if (!blobItems.isEmpty() && blobItems.get(0) instanceof BlobFile &&
+                    blobItems.get(0).getPath().equals(path)) {
+                return (BlobFile) blobItems.get(0);
+            }
+        } catch (AzureCmdException ignored) {
+            // the listings the blob shows up in are listed again instead
+        }
 
-                        Future<Void> future = ApplicationManager.getApplication().executeOnPooledThread(new Callable<Void>() {
-                            @Override
-                            public Void call() throws AzureCmdException {
-
-                                try {
-                                    AzureSDKManagerImpl.getManager().uploadBlobFileContent(
-                                            storageAccount,
-                                            blobContainer,
-                                            path,
-                                            bufferedInputStream,
-                                            callable,
-                                            1024 * 1024,
-                                            selectedFile.length());
-                                }  finally {
-                                    try {
-                                        bufferedInputStream.close();
-                                    } catch (IOException ignored) {
-                                    }
-                                }
+        return null;
+    }
 
-                                return null;
-                            }
-                        });
+    private void showTransfers() {
+        ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow(
+                BlobTransfersToolWindowFactory.TOOL_WINDOW_ID);
 
-                        while(!future.isDone()) {
-                            Thread.sleep(500);
-                            progressIndicator.checkCanceled();
-                            if(progressIndicator.isCanceled()) {
-                                future.cancel(true);
-                                bufferedInputStream.close();
-
-                                for (BlobItem blobItem : AzureSDKManagerImpl.getManager().getBlobItems(storageAccount, blobDirectory)) {
-                                    if(blobItem instanceof BlobFile && blobItem.getPath().equals(path)) {
-                                        AzureSDKManagerImpl.getManager().deleteBlobFile(storageAccount, (BlobFile) blobItem);
-                                    }
-                                }
-                            }
-                        }
+        if (toolWindow != null) {
+            toolWindow.show(null);
+        }
+    }
 
-                        try {
-                            directoryQueue.clear();
-                            directoryQueue.addLast(AzureSDKManagerImpl.getManager().getRootDirectory(storageAccount, blobContainer));
+    // Opens the directory a blob is stored in. The directories on the way are derived from the
+    // path of the blob, so nothing needs to be listed to get there.
+    private void openBlobDirectory(@NotNull String blobPath) {
+        BlobDirectory root = directoryQueue.peekFirst();
 
-                            for (String pathDir : path.split("/")) {
-                                for (BlobItem blobItem : AzureSDKManagerImpl.getManager().getBlobItems(storageAccount, directoryQueue.getLast()) ) {
-                                    if (blobItem instanceof BlobDirectory && blobItem.getName().equals(pathDir)) {
-                                        directoryQueue.addLast((BlobDirectory) blobItem);
-                                    }
-                                }
-                            }
-                        } catch (AzureCmdException e) {
-                            UIHelper.showException("Error showing new blob", e, "Error showing new blob", false, true);
-                        }
+        if (root == null) {
+            return;
+        }
 
-                        ApplicationManager.getApplication().invokeLater(new Runnable() {
-                            @Override
-                            public void run() {
-                                fillGrid();
-                            }
-                        });
+        directoryQueue.clear();
+        directoryQueue.addLast(root);
 
-                    } catch (Exception e) {
-                        Throwable connectionFault = e.getCause();
-                        Throwable realFault = null;
-                        if (connectionFault != null) {
-                            realFault = connectionFault.getCause();
-                        }
+        String[] segments = blobPath.split("/");
+        String directoryPath = "";
 
-                        progressIndicator.setText("Error uploading Blob");
-                        String message = realFault == null ? null : realFault.getMessage() ;
-                        if (connectionFault != null && message == null) {
-                            message = "Error type " + connectionFault.getClass().getName();
-                        }
-                        progressIndicator.setText2((connectionFault instanceof SocketTimeoutException) ? "Connection timed out" : message);
-                    }
-                } catch (IOException e) {
-                    UIHelper.showException("Error uploading Blob", e, "Error uploading Blob", false, true);
-                }
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (!segments[i].isEmpty()) {
+                directoryPath = directoryPath + segments[i] + "/";
+                directoryQueue.addLast(new BlobDirectory(segments[i], blobContainer.getUri() + "/" + directoryPath,
+                        root.getContainerName(), directoryPath, storageAccount.getSubscriptionId()));
             }
-        });
+        }
     }
 
     @NotNull
@@ -760,7 +1476,9 @@ public class BlobExplorerFileEditor implements FileEditor {
     }
 
     @Override
-    public void dispose() {}
+    public void dispose() {
+        listingCache.clear();
+    }
 
     @Nullable
     @Override
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.storage;
+
+import com.microsoftopentechnologies.intellij.model.storage.BlobDirectory;
+import com.microsoftopentechnologies.intellij.model.storage.BlobFile;
+import com.microsoftopentechnologies.intellij.model.storage.BlobItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the listings a blob explorer editor has recently shown so that navigating back to a
+// directory shows it right away; the editor still checks every cached page against the service
+// in the background. Listings are evicted least recently used first once there are more than
+// MAX_ENTRIES of them. A page that hasn't been listed or checked for MAX_AGE_MS is no longer
+// served, nor are the pages after it. Every editor has its own cache and only uses it on the
+// event dispatch thread.
+public class BlobListingCache {
+    private static final int MAX_ENTRIES = 16;
+    private static final long MAX_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    public static final class Listing {
+        private final String directoryPath;
+        private final String prefix;
+        private final boolean flatListing;
+        private final List<List<BlobItem>> pages;
+        private final List<String> pageTokens;
+        private final List<Long> pageTimestamps;
+
+        private Listing(String directoryPath, String prefix, boolean flatListing, List<List<BlobItem>> pages,
+                        List<String> pageTokens, List<Long> pageTimestamps) {
+            this.directoryPath = directoryPath;
+            this.prefix = prefix;
+            this.flatListing = flatListing;
+            this.pages = pages;
+            this.pageTokens = pageTokens;
+            this.pageTimestamps = pageTimestamps;
+        }
+
+        // the first pages of the listing
+        @NotNull
+        public List<List<BlobItem>> getPages() {
+            return pages;
+        }
+
+        // the continuation tokens that start the pages of the listing seen so far
+        @NotNull
+        public List<String> getPageTokens() {
+            return pageTokens;
+        }
+
+        // when each page was last listed or checked against the service
+        @NotNull
+        public List<Long> getPageTimestamps() {
+            return pageTimestamps;
+        }
+    }
+
+    private final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    @NotNull
+    public static String getKey(@NotNull BlobDirectory directory, @Nullable String prefix, boolean flatListing) {
+        return directory.getContainerName() + "|" + directory.getPath() + "|" + (prefix != null ? prefix : "") +
+                "|" + flatListing;
+    }
+
+    // Returns the pages of the listing that are still fresh. A page continues where the one
+    // before it ends, so the pages after one that expired are dropped with it.
+    @Nullable
+    public Listing get(@NotNull String key) {
+        Listing listing = listings.get(key);
+
+        if (listing == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        int freshPages = 0;
+
+        while (freshPages < listing.pages.size() && now - listing.pageTimestamps.get(freshPages) <= MAX_AGE_MS) {
+            freshPages++;
+        }
+
+        if (freshPages == 0) {
+            listings.remove(key);
+            return null;
+        }
+
+        if (freshPages < listing.pages.size()) {
+            listing.pages.subList(freshPages, listing.pages.size()).clear();
+            listing.pageTimestamps.subList(freshPages, listing.pageTimestamps.size()).clear();
+            // the token of the first dropped page still says there is more to list
+            listing.pageTokens.subList(freshPages + 1, listing.pageTokens.size()).clear();
+        }
+
+        return listing;
+    }
+
+    public void put(@NotNull String key, @NotNull BlobDirectory directory, @Nullable String prefix, boolean flatListing,
+                    @NotNull List<List<BlobItem>> pages, @NotNull List<String> pageTokens,
+                    @NotNull List<Long> pageTimestamps) {
+        List<List<BlobItem>> pagesCopy = new ArrayList<List<BlobItem>>();
+
+        for (List<BlobItem> page : pages) {
+            pagesCopy.add(new ArrayList<BlobItem>(page));
+        }
+
+        listings.put(key, new Listing(directory.getPath(), prefix != null ? prefix : "", flatListing, pagesCopy,
+                new ArrayList<String>(pageTokens), new ArrayList<Long>(pageTimestamps)));
+    }
+
+    public void invalidate(@NotNull String key) {
+        listings.remove(key);
+    }
+
+    // Puts an uploaded blob into the listings it shows up in, in place. A flat listing shows the
+    // blob itself, the listing of a directory above the one the blob is stored in shows the
+    // directory on the way instead, which is added if the listing doesn't have it yet.
+    public void putBlob(@NotNull BlobFile blobFile, @NotNull String containerUri) {
+        for (Listing listing : listings.values()) {
+            String relativePath = getRelativePath(listing, blobFile.getPath());
+
+            if (relativePath == null) {
+                continue;
+            }
+
+            int separator = relativePath.indexOf('/');
+
+            if (listing.flatListing) {
+                putItem(listing, new BlobFile(relativePath, blobFile.getUri(), blobFile.getContainerName(),
+                        blobFile.getPath(), blobFile.getType(), blobFile.getCacheControlHeader(),
+                        blobFile.getContentEncoding(), blobFile.getContentLanguage(), blobFile.getContentType(),
+                        blobFile.getContentMD5Header(), blobFile.getETag(), blobFile.getLastModified(),
+                        blobFile.getSize(), blobFile.getSubscriptionId()));
+            } else if (separator < 0) {
+                putItem(listing, blobFile);
+            } else {
+                putDirectoryItem(listing, relativePath.substring(0, separator), blobFile.getContainerName(),
+                        containerUri, blobFile.getSubscriptionId());
+            }
+        }
+    }
+
+    // Puts a directory a folder was uploaded to into the listings above it, in place. Nothing is
+    // known about what the directory holds, so the listings inside it and the flat listings that
+    // would show its blobs are dropped.
+    public void putDirectory(@NotNull BlobDirectory directory, @NotNull String containerUri) {
+        for (Iterator<Listing> iterator = listings.values().iterator(); iterator.hasNext(); ) {
+            Listing listing = iterator.next();
+
+            if (listing.directoryPath.startsWith(directory.getPath())) {
+                iterator.remove();
+                continue;
+            }
+
+            String relativePath = getRelativePath(listing, directory.getPath());
+
+            if (relativePath == null) {
+                continue;
+            }
+
+            if (listing.flatListing) {
+                iterator.remove();
+            } else {
+                putDirectoryItem(listing, relativePath.substring(0, relativePath.indexOf('/')),
+                        directory.getContainerName(), containerUri, directory.getSubscriptionId());
+            }
+        }
+    }
+
+    // Drops the listings a new blob with the given path can show up in: those of the directories
+    // it is stored under, at any depth. Used when the blob couldn't be listed to be put in place.
+    public void invalidateBlobPath(@NotNull String blobPath) {
+        for (Iterator<Listing> iterator = listings.values().iterator(); iterator.hasNext(); ) {
+            if (blobPath.startsWith(iterator.next().directoryPath)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // removes a deleted blob from the listings in place
+    public void removeBlob(@NotNull BlobFile blobFile) {
+        for (Listing listing : listings.values()) {
+            for (List<BlobItem> page : listing.pages) {
+                for (Iterator<BlobItem> iterator = page.iterator(); iterator.hasNext(); ) {
+                    BlobItem item = iterator.next();
+
+                    if (item instanceof BlobFile && item.getPath().equals(blobFile.getPath())) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        listings.clear();
+    }
+
+    // the path relative to the directory of the listing, if the listing matches it
+    @Nullable
+    private static String getRelativePath(@NotNull Listing listing, @NotNull String path) {
+        if (!path.startsWith(listing.directoryPath)) {
+            return null;
+        }
+
+        String relativePath = path.substring(listing.directoryPath.length());
+
+        return !relativePath.isEmpty() && relativePath.startsWith(listing.prefix) ? relativePath : null;
+    }
+
+    private static void putDirectoryItem(@NotNull Listing listing, @NotNull String name, @NotNull String containerName,
+                                         @NotNull String containerUri, @NotNull String subscriptionId) {
+        String path = listing.directoryPath + name + "/";
+
+        putItem(listing, new BlobDirectory(name, containerUri + "/" + path, containerName, path, subscriptionId));
+    }
+
+    // Replaces the item with the same path or inserts it where the service lists it, which is in
+    // the order of the paths. An item that goes after the cached pages is only added when the
+    // listing has no more pages.
+    private static void putItem(@NotNull Listing listing, @NotNull BlobItem item) {
+        for (List<BlobItem> page : listing.pages) {
+            for (int i = 0; i < page.size(); i++) {
+                BlobItem cachedItem = page.get(i);
+
+                if (cachedItem.getPath().equals(item.getPath()) && cachedItem.getItemType() == item.getItemType()) {
+                    if (item instanceof BlobFile) {
+                        page.set(i, item);
+                    }
+
+                    return;
+                }
+            }
+        }
+
+        for (List<BlobItem> page : listing.pages) {
+            for (int i = 0; i < page.size(); i++) {
+                if (page.get(i).getPath().compareTo(item.getPath()) > 0) {
+                    page.add(i, item);
+                    return;
+                }
+            }
+        }
+
+        if (!listing.pages.isEmpty() && listing.pageTokens.size() <= listing.pages.size()) {
+            listing.pages.get(listing.pages.size() - 1).add(item);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.helpers.storage;
+
+import com.microsoftopentechnologies.intellij.helpers.UIHelper;
+import com.microsoftopentechnologies.intellij.model.storage.BlobDirectory;
+import com.microsoftopentechnologies.intellij.model.storage.BlobFile;
+import com.microsoftopentechnologies.intellij.model.storage.BlobItem;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.text.Collator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+// Table model of the blob explorer backed directly by the listed blob items. The rows are
+// replaced all at once; cells hold the raw values, which the renderers of the table format when
+// the rows are painted.
+public class BlobTableModel extends AbstractTableModel {
+    public static final int ICON_COLUMN = 0;
+    public static final int NAME_COLUMN = 1;
+    public static final int SIZE_COLUMN = 2;
+    public static final int LAST_MODIFIED_COLUMN = 3;
+    public static final int CONTENT_TYPE_COLUMN = 4;
+    public static final int URL_COLUMN = 5;
+
+    private static final String[] COLUMN_NAMES = {"", "Name", "Size", "Last Modified (UTC)", "Content Type", "URL"};
+    private static final Class[] COLUMN_CLASSES = {Icon.class, String.class, Long.class, Date.class, String.class,
+            String.class};
+
+    // shared by all rows of all tables
+    private static Icon folderIcon = null;
+
+    private List<BlobItem> items = Collections.emptyList();
+
+    public void setItems(@NotNull List<BlobItem> items) {
+        this.items = items;
+        fireTableDataChanged();
+    }
+
+    @NotNull
+    public List<BlobItem> getItems() {
+        return items;
+    }
+
+    @NotNull
+    public BlobItem getItem(int row) {
+        return items.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return items.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        BlobItem item = items.get(row);
+
+        if (item instanceof BlobDirectory) {
+            switch (column) {
+                case ICON_COLUMN:
+                    return getFolderIcon();
+                case NAME_COLUMN:
+                    return item.getName();
+                case URL_COLUMN:
+                    return item.getUri();
+                default:
+                    return null;
+            }
+        }
+
+        BlobFile blobFile = (BlobFile) item;
+
+        switch (column) {
+            case NAME_COLUMN:
+                return blobFile.getName();
+            case SIZE_COLUMN:
+                return blobFile.getSize();
+            case LAST_MODIFIED_COLUMN:
+                return blobFile.getLastModified().getTime();
+            case CONTENT_TYPE_COLUMN:
+                return blobFile.getContentType();
+            case URL_COLUMN:
+                return blobFile.getUri();
+            default:
+                return null;
+        }
+    }
+
+    // Returns a comparator that orders the rows by the given column. Directories always come
+    // before blobs and rows with the same value are ordered by name. A comparator is meant to be
+    // used for one sort, on any thread.
+    @NotNull
+    public static Comparator<BlobItem> getComparator(final int column, final boolean ascending) {
+        final Collator collator = Collator.getInstance();
+
+        return new Comparator<BlobItem>() {
+            @Override
+            public int compare(BlobItem item1, BlobItem item2) {
+                boolean directory1 = item1 instanceof BlobDirectory;
+                boolean directory2 = item2 instanceof BlobDirectory;
+
+                if (directory1 != directory2) {
+                    return directory1 ? -1 : 1;
+                }
+
+                int res = 0;
+
+                if (!directory1) {
+                    BlobFile blobFile1 = (BlobFile) item1;
+                    BlobFile blobFile2 = (BlobFile) item2;
+
+                    switch (column) {
+                        case SIZE_COLUMN:
+                            res = blobFile1.getSize() < blobFile2.getSize() ? -1
+                                    : blobFile1.getSize() == blobFile2.getSize() ? 0 : 1;
+                            break;
+                        case LAST_MODIFIED_COLUMN:
+                            res = blobFile1.getLastModified().compareTo(blobFile2.getLastModified());
+                            break;
+                        case CONTENT_TYPE_COLUMN:
+                            res = collator.compare(blobFile1.getContentType(), blobFile2.getContentType());
+                            break;
+                        case URL_COLUMN:
+                            res = collator.compare(blobFile1.getUri(), blobFile2.getUri());
+                            break;
+                    }
+                }
+
+                if (res == 0) {
+                    res = collator.compare(item1.getName(), item2.getName());
+                }
+
+                return ascending ? res : -res;
+            }
+        };
+    }
+
+    @NotNull
+    private static synchronized Icon getFolderIcon() {
+        if (folderIcon == null) {
+            folderIcon = UIHelper.loadIcon("storagefolder.png");
+        }
+
+        return folderIcon;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.model.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+// One segment of a blob listing. The continuation token is the marker the storage service
+// returned for the segment that follows; it is null for the last segment of a listing.
+public class BlobItemPage {
+    private List<BlobItem> items;
+    private String continuationToken;
+
+    public BlobItemPage(@NotNull List<BlobItem> items, @Nullable String continuationToken) {
+        this.items = items;
+        this.continuationToken = continuationToken;
+    }
+
+    @NotNull
+    public List<BlobItem> getItems() {
+        return items;
+    }
+
+    @Nullable
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasMoreItems() {
+        return continuationToken != null;
+    }
+}
@@ -36,8 +36,12 @@ import java.beans.PropertyChangeSupport;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Node {
     private static final String CLICK_ACTION = "click";
@@ -58,6 +62,16 @@ public class Node {
 
     protected PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
 
+    // child nodes that come from refreshItems are only loaded when the node is
+    // expanded or refreshed; "childNodesRequested" keeps a node from being loaded
+    // twice and is cleared again if loading fails, "childNodesLoaded" is set once
+    // a load succeeded
+    private volatile boolean childNodesRequested = false;
+    private volatile boolean childNodesLoaded = false;
+
+    // the error of the last load if it failed; cleared when the next load starts
+    private volatile Throwable childNodesLoadError = null;
+
     private boolean hasRefreshAction;
 
     public Node(String id, String name) {
@@ -131,30 +145,178 @@ public class Node {
         return !childNodes.isEmpty();
     }
 
-    public void removeDirectChildNode(Node childNode) {
-        if (isDirectChild(childNode)) {
-            // remove this node's child nodes (so they get an
-            // opportunity to clean up after them)
-            childNode.removeAllChildNodes();
+    public void removeDirectChildNode(final Node childNode) {
+        childNodes.change(new Runnable() {
+            @Override
+            public void run() {
+                if (isDirectChild(childNode)) {
+                    // remove this node's child nodes (so they get an
+                    // opportunity to clean up after them)
+                    childNode.removeAllChildNodes();
+
+                    // this remove call should cause the NodeListChangeListener object
+                    // registered on it's child nodes to fire
+                    childNodes.remove(childNode);
+                }
+            }
+        });
+    }
+
+    public void removeAllChildNodes() {
+        childNodes.change(new Runnable() {
+            @Override
+            public void run() {
+                while (!childNodes.isEmpty()) {
+                    Node node = childNodes.get(0);
+
+                    // remove this node's child nodes (so they get an
+                    // opportunity to clean up after them)
+                    node.removeAllChildNodes();
 
-            // this remove call should cause the NodeListChangeListener object
-            // registered on it's child nodes to fire
-            childNodes.remove(childNode);
+                    // this remove call should cause the NodeListChangeListener object
+                    // registered on it's child nodes to fire
+                    childNodes.remove(0);
+                }
+            }
+        });
+    }
+
+    // Brings the child nodes of this node in line with "nodes", matching them by ID: children that
+    // are in "nodes" take the data of their new node in place (see "update"), new nodes are added
+    // and the other children are removed. A refresh that changes one item touches one tree row and
+    // keeps the expanded state and the loaded children of the rest.
+    public void syncChildNodes(final Collection<? extends Node> nodes) {
+        final Set<String> ids = new HashSet<String>();
+
+        for (Node node : nodes) {
+            ids.add(node.getId());
         }
+
+        childNodes.change(new Runnable() {
+            @Override
+            public void run() {
+                doRetainChildNodes(ids);
+                doMergeChildNodes(nodes);
+            }
+        });
     }
 
-    public void removeAllChildNodes() {
-        while (!childNodes.isEmpty()) {
-            Node node = childNodes.get(0);
+    // Updates the children that have the ID of one of "nodes" and adds the other nodes, all of
+    // them with one list change; no child is removed. Like the other changes to the child nodes
+    // this holds the lock of the list, so the view never sees half of it.
+    public void mergeChildNodes(final Collection<? extends Node> nodes) {
+        childNodes.change(new Runnable() {
+            @Override
+            public void run() {
+                doMergeChildNodes(nodes);
+            }
+        });
+    }
+
+    private void doMergeChildNodes(Collection<? extends Node> nodes) {
+        Map<String, Node> children = new HashMap<String, Node>();
+
+        for (Node child : childNodes) {
+            children.put(child.getId(), child);
+        }
+
+        List<Node> added = new ArrayList<Node>();
+
+        for (Node node : nodes) {
+            Node child = children.get(node.getId());
+
+            if (child != null) {
+                if (child.isStale()) {
+                    // a node restored from a snapshot can't take the data of a live
+                    // node; the live node takes its place
+                    child.removeAllChildNodes();
+                    childNodes.set(childNodes.indexOf(child), node);
+                    children.put(node.getId(), node);
+                } else if (!child.isLoading()) {
+                    // a child that is refreshing itself gets its own data
+                    child.update(node);
+                }
+            } else {
+                children.put(node.getId(), node);
+                added.add(node);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            childNodes.addAll(added);
+        }
+    }
+
+    // Removes the children whose IDs aren't in "ids" with one list change.
+    public void retainChildNodes(final Set<String> ids) {
+        childNodes.change(new Runnable() {
+            @Override
+            public void run() {
+                doRetainChildNodes(ids);
+            }
+        });
+    }
+
+    private void doRetainChildNodes(Set<String> ids) {
+        Set<Node> removed = new HashSet<Node>();
+
+        for (Node child : childNodes) {
+            if (!ids.contains(child.getId())) {
+                // remove the child's own child nodes (so they get an
+                // opportunity to clean up after them)
+                child.removeAllChildNodes();
+                removed.add(child);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            childNodes.removeAll(removed);
+        }
+    }
+
+    // Nodes restored from a ServiceExplorerSnapshot return true until they are replaced by the
+    // live nodes of the next refresh.
+    public boolean isStale() {
+        return false;
+    }
+
+    // A few properties of the resource this node shows that are kept in the service explorer
+    // snapshot along with its ID, name and icon; null if there are none.
+    public Map<String, String> getSnapshotProperties() {
+        return null;
+    }
 
-            // remove this node's child nodes (so they get an
-            // opportunity to clean up after them)
-            node.removeAllChildNodes();
+    // The ID of the subscription the resource this node shows belongs to, or null if the node
+    // doesn't belong to a single subscription.
+    public String getSubscriptionId() {
+        return null;
+    }
+
+    // Nodes that only make sense for the current session, e.g. errors, return false.
+    public boolean includeInSnapshot() {
+        return true;
+    }
+
+    public String getToolTip() {
+        return getName();
+    }
 
-            // this remove call should cause the NodeListChangeListener object
-            // registered on it's child nodes to fire
-            childNodes.remove(0);
+    public Node findChildNodeById(String id) {
+        for (Node child : childNodes) {
+            if (child.getId().equals(id)) {
+                return child;
+            }
         }
+
+        return null;
+    }
+
+    // Called by syncChildNodes and mergeChildNodes with a freshly loaded node that has the ID of
+    // this one. Sub-classes that keep the model object they show are expected to override this
+    // and take the new one. Setting the name and icon only notifies the view if they changed.
+    protected void update(Node node) {
+        setName(node.getName());
+        setIconPath(node.getIconPath());
     }
 
     public String getIconPath() {
@@ -201,16 +363,8 @@ public class Node {
             addAction("Refresh", new NodeActionListener() {
                 @Override
                 public void actionPerformed(NodeActionEvent e) {
-                    Futures.addCallback(load(), new FutureCallback<List<Node>>() {
-                        @Override
-                        public void onSuccess(List<Node> nodes) {
-                        }
-
-                        @Override
-                        public void onFailure(Throwable throwable) {
-                            UIHelper.showException("An error occurred while refreshing the service.", throwable);
-                        }
-                    });
+                    // the background loader reports a failed load
+                    load();
                 }
             });
         }
@@ -359,6 +513,21 @@ public class Node {
 
     public ListenableFuture<List<Node>> load() {
         final SettableFuture<List<Node>> future = SettableFuture.create();
+        childNodesRequested = true;
+        setChildNodesLoadError(null);
+
+        Futures.addCallback(future, new FutureCallback<List<Node>>() {
+            @Override
+            public void onSuccess(List<Node> nodes) {
+                setChildNodesLoaded(true);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                childNodesRequested = childNodesLoaded;
+                setChildNodesLoadError(throwable);
+            }
+        });
 
         // background tasks via ProgressManager can be scheduled only on the
         // dispatch thread
@@ -373,12 +542,66 @@ public class Node {
         return future;
     }
 
+    // Sub-classes that load their child nodes in refreshItems are expected to override this
+    // method and return true. The view then shows them as expandable and only loads them when
+    // they are expanded for the first time.
+    public boolean hasLazyChildNodes() {
+        return false;
+    }
+
+    // Nodes whose child nodes take many remote calls to load, e.g. one per subscription, return
+    // false; the view then only loads them when they are expanded, never ahead of time.
+    public boolean canPrefetchChildNodes() {
+        return true;
+    }
+
+    // Loads the child nodes if they are loaded lazily and haven't been asked for yet; returns
+    // null if there is nothing to load.
+    public ListenableFuture<List<Node>> loadChildNodesIfNeeded() {
+        synchronized (this) {
+            if (!hasLazyChildNodes() || childNodesRequested) {
+                return null;
+            }
+
+            childNodesRequested = true;
+        }
+
+        return load();
+    }
+
+    public boolean isChildNodesRequested() {
+        return childNodesRequested;
+    }
+
+    public boolean isChildNodesLoaded() {
+        return childNodesLoaded;
+    }
+
+    public Throwable getChildNodesLoadError() {
+        return childNodesLoadError;
+    }
+
+    private void setChildNodesLoadError(Throwable childNodesLoadError) {
+        Throwable oldValue = this.childNodesLoadError;
+        this.childNodesLoadError = childNodesLoadError;
+        propertyChangeSupport.firePropertyChange("childNodesLoadError", oldValue, childNodesLoadError);
+    }
+
+    protected void setChildNodesLoaded(boolean childNodesLoaded) {
+        boolean oldValue = this.childNodesLoaded;
+        this.childNodesLoaded = childNodesLoaded;
+        childNodesRequested |= childNodesLoaded;
+        propertyChangeSupport.firePropertyChange("childNodesLoaded", oldValue, childNodesLoaded);
+    }
+
     public boolean isLoading() {
         return loading;
     }
 
     public void setLoading(boolean loading) {
+        boolean oldValue = this.loading;
         this.loading = loading;
+        propertyChangeSupport.firePropertyChange("loading", oldValue, loading);
     }
 
     class BackgroundLoader extends Task.Backgroundable {
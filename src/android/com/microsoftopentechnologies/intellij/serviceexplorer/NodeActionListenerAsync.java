@@ -16,6 +16,8 @@
 
 package com.microsoftopentechnologies.intellij.serviceexplorer;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.progress.ProgressIndicator;
@@ -39,8 +41,17 @@ public abstract class NodeActionListenerAsync extends NodeActionListener {
             @Override
             public void run(@NotNull ProgressIndicator progressIndicator) {
                 try {
-                    runInBackground(actionEvent);
-                    future.set(null);
+                    Futures.addCallback(runInBackgroundAsync(actionEvent), new FutureCallback<Void>() {
+                        @Override
+                        public void onSuccess(Void result) {
+                            future.set(null);
+                        }
+
+                        @Override
+                        public void onFailure(@NotNull Throwable throwable) {
+                            future.setException(throwable);
+                        }
+                    });
                 } catch (AzureCmdException e) {
                     future.setException(e);
                 }
@@ -51,4 +62,13 @@ public abstract class NodeActionListenerAsync extends NodeActionListener {
     }
 
     protected void runInBackground(NodeActionEvent actionEvent) throws AzureCmdException {}
+
+    // Sub-classes that start an operation which completes later, e.g. a long running Azure
+    // operation, override this method and return a future that completes with the operation. The
+    // node stays busy until then, but the background task ends as soon as the operation has
+    // been started.
+    protected ListenableFuture<Void> runInBackgroundAsync(NodeActionEvent actionEvent) throws AzureCmdException {
+        runInBackground(actionEvent);
+        return Futures.immediateFuture(null);
+    }
 }
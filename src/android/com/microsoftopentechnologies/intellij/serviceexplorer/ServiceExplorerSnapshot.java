@@ -0,0 +1,193 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.serviceexplorer;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Last known state of the service explorer tree of a project, kept as JSON in the IDE's system
+// directory so that the tree can be shown as soon as the project is opened again. The snapshot
+// holds the nodes below the service modules with their IDs, names, types, icons and a few
+// properties of the resources they show. They are restored as SnapshotNodes, which the next
+// refresh of their module replaces with live nodes through the usual diff by ID.
+public class ServiceExplorerSnapshot {
+    private static final String SNAPSHOT_DIRECTORY = "azure-service-explorer";
+    private static final String SNAPSHOT_EXTENSION = ".json";
+
+    private static class Entry {
+        private String id;
+        private String name;
+        private String type;
+        private String iconPath;
+        private String subscriptionId;
+        private Map<String, String> properties;
+        private List<Entry> children;
+    }
+
+    private long timestamp;
+
+    // one entry per service module; their children are the nodes of the module
+    private List<Entry> modules;
+
+    private ServiceExplorerSnapshot() {
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // Records the nodes below the service modules, i.e. the child nodes of "root".
+    @NotNull
+    public static ServiceExplorerSnapshot create(@NotNull Node root) {
+        ServiceExplorerSnapshot snapshot = new ServiceExplorerSnapshot();
+        snapshot.timestamp = System.currentTimeMillis();
+        snapshot.modules = createEntries(root);
+
+        return snapshot;
+    }
+
+    @NotNull
+    private static List<Entry> createEntries(@NotNull Node node) {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        // the nodes may be changed by background refreshes while they are recorded; every
+        // level is recorded from a copy of its child nodes taken under the lock of their list
+        for (Node childNode : node.getChildNodes().snapshot()) {
+            if (!childNode.includeInSnapshot()) {
+                continue;
+            }
+
+            Entry entry = new Entry();
+            entry.id = childNode.getId();
+            entry.name = childNode.getName();
+            entry.type = childNode instanceof SnapshotNode ?
+                    ((SnapshotNode) childNode).getType() : childNode.getClass().getName();
+            entry.iconPath = childNode.getIconPath();
+            entry.subscriptionId = childNode.getSubscriptionId();
+            entry.properties = childNode.getSnapshotProperties();
+            entry.children = createEntries(childNode);
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    // Adds the recorded nodes to the service modules below "root" that have no child nodes yet
+    // and haven't been asked to load them, and returns the modules that got some.
+    @NotNull
+    public List<Node> restore(@NotNull Node root) {
+        List<Node> restored = new ArrayList<Node>();
+
+        if (modules == null) {
+            return restored;
+        }
+
+        for (Entry moduleEntry : modules) {
+            Node module = root.findChildNodeById(moduleEntry.id);
+
+            if (module != null && !module.hasChildNodes() && !module.isChildNodesRequested() &&
+                    moduleEntry.children != null && !moduleEntry.children.isEmpty()) {
+                module.mergeChildNodes(restoreNodes(module, moduleEntry.children));
+                restored.add(module);
+            }
+        }
+
+        return restored;
+    }
+
+    @NotNull
+    private List<Node> restoreNodes(@NotNull Node parent, @NotNull List<Entry> entries) {
+        List<Node> nodes = new ArrayList<Node>();
+
+        for (Entry entry : entries) {
+            Node node = new SnapshotNode(parent, entry.id, entry.name, entry.type, entry.iconPath,
+                    entry.subscriptionId, entry.properties, timestamp);
+
+            if (entry.children != null && !entry.children.isEmpty()) {
+                node.mergeChildNodes(restoreNodes(node, entry.children));
+            }
+
+            nodes.add(node);
+        }
+
+        return nodes;
+    }
+
+    // Returns the snapshot of "project", or null if there is none or it can't be read.
+    @Nullable
+    public static ServiceExplorerSnapshot read(@NotNull Project project) {
+        File file = getFile(project);
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
+
+            try {
+                return new Gson().fromJson(reader, ServiceExplorerSnapshot.class);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ignored) {
+        } catch (JsonParseException ignored) {
+        }
+
+        // the snapshot is only a cache; one that can't be read is dropped
+        file.delete();
+        return null;
+    }
+
+    public void write(@NotNull Project project) throws IOException {
+        File file = getFile(project);
+        File directory = file.getParentFile();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the service explorer snapshot directory " + directory.getPath());
+        }
+
+        // written next to the snapshot and renamed over it so that a crash never leaves half of one
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), Charsets.UTF_8);
+
+        try {
+            new Gson().toJson(this, writer);
+        } finally {
+            writer.close();
+        }
+
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            throw new IOException("Unable to write the service explorer snapshot " + file.getPath());
+        }
+    }
+
+    @NotNull
+    private static File getFile(@NotNull Project project) {
+        return new File(new File(PathManager.getSystemPath(), SNAPSHOT_DIRECTORY),
+                project.getLocationHash() + SNAPSHOT_EXTENSION);
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.microsoftopentechnologies.intellij.serviceexplorer;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Map;
+
+// A node restored from a ServiceExplorerSnapshot. It only knows what the snapshot recorded: it has
+// no actions and is replaced by the live node with the same ID when its parent is refreshed.
+public class SnapshotNode extends Node {
+    private final String type;
+    private final String subscriptionId;
+    private final Map<String, String> properties;
+    private final long timestamp;
+
+    public SnapshotNode(Node parent, String id, String name, String type, String iconPath, String subscriptionId,
+                        Map<String, String> properties, long timestamp) {
+        super(id, name, parent, iconPath, false);
+        this.type = type;
+        this.subscriptionId = subscriptionId;
+        this.properties = properties;
+        this.timestamp = timestamp;
+    }
+
+    // the class name of the node this one was recorded from
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    @Override
+    public boolean isStale() {
+        return true;
+    }
+
+    @Override
+    public Map<String, String> getSnapshotProperties() {
+        return properties;
+    }
+
+    @Override
+    public String getToolTip() {
+        StringBuilder sb = new StringBuilder(getName());
+
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                sb.append(", ").append(property.getKey()).append(": ").append(property.getValue());
+            }
+        }
+
+        return sb.append(" (as of ").append(DateFormat.getDateTimeInstance().format(new Date(timestamp))).append(")")
+                .toString();
+    }
+}
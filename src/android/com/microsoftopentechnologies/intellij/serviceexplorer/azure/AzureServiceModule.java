@@ -22,9 +22,11 @@ import com.microsoftopentechnologies.intellij.helpers.UIHelper;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionListener;
+import com.microsoftopentechnologies.intellij.serviceexplorer.ServiceExplorerSnapshot;
 import com.microsoftopentechnologies.intellij.serviceexplorer.azure.mobileservice.MobileServiceModule;
 import com.microsoftopentechnologies.intellij.serviceexplorer.azure.storage.StorageModule;
 import com.microsoftopentechnologies.intellij.serviceexplorer.azure.vm.VMServiceModule;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.Map;
 
@@ -64,36 +66,50 @@ public class AzureServiceModule extends Node {
         }
     }
 
+    @Override
+    public boolean hasLazyChildNodes() {
+        return true;
+    }
+
     @Override
     protected void refreshItems() {
-        // add the mobile service module; we check if the node has
-        // already been added first because this method can be called
-        // multiple times when the user clicks the "Refresh" context
-        // menu item
-
-        if(!mobileServiceModule.isLoading()) {
-            if (!isDirectChild(mobileServiceModule)) {
-                addChildNode(mobileServiceModule);
-            }
-            mobileServiceModule.load();
-        }
+        addModules();
 
-        if(!vmServiceModule.isLoading()) {
-            if (!isDirectChild(vmServiceModule)) {
-                addChildNode(vmServiceModule);
+        // the modules load their own child nodes when they are expanded; a
+        // refresh only reloads the ones that have been loaded before
+        for (Node module : getModules()) {
+            if (module.isChildNodesRequested() && !module.isLoading()) {
+                module.load();
             }
-            vmServiceModule.load();
         }
+    }
 
+    // Shows the nodes recorded in "snapshot" right away and refreshes the modules they belong to
+    // in the background.
+    public void restore(@NotNull ServiceExplorerSnapshot snapshot) {
+        addModules();
+        setChildNodesLoaded(true);
 
-        if(!storageServiceModule.isLoading()) {
-            if (!isDirectChild(storageServiceModule)) {
-                addChildNode(storageServiceModule);
+        for (Node module : snapshot.restore(this)) {
+            module.load();
+        }
+    }
+
+    private void addModules() {
+        // add the service modules; we check if the node has already been
+        // added first because this method can be called multiple times when
+        // the user clicks the "Refresh" context menu item
+        for (Node module : getModules()) {
+            if (!isDirectChild(module)) {
+                addChildNode(module);
             }
-            storageServiceModule.load();
         }
     }
 
+    private Node[] getModules() {
+        return new Node[]{mobileServiceModule, vmServiceModule, storageServiceModule};
+    }
+
     @Override
     public Project getProject() {
         return project;
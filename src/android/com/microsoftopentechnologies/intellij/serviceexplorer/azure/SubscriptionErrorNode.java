@@ -0,0 +1,70 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.microsoftopentechnologies.intellij.serviceexplorer.azure;
+
+import com.microsoftopentechnologies.intellij.helpers.UIHelper;
+import com.microsoftopentechnologies.intellij.model.ms.Subscription;
+import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
+import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
+
+// Stands in for the nodes of a subscription that could not be loaded; clicking it shows the error.
+public class SubscriptionErrorNode extends Node {
+    private static final String ICON_PATH = "logerr.png";
+
+    private final Subscription subscription;
+    private Throwable error;
+
+    public SubscriptionErrorNode(Node parent, Subscription subscription, Throwable error) {
+        super(parent.getId() + "/error/" + subscription.getId(),
+                subscription.getName() + " (Error: " + getMessage(error) + ")", parent, ICON_PATH, false);
+        this.subscription = subscription;
+        this.error = error;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    // a load that fails again replaces the node with one for the new error
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+
+        if (node instanceof SubscriptionErrorNode) {
+            error = ((SubscriptionErrorNode) node).getError();
+        }
+    }
+
+    @Override
+    public boolean includeInSnapshot() {
+        return false;
+    }
+
+    @Override
+    protected void onNodeClick(NodeActionEvent e) {
+        UIHelper.showException("An error occurred while loading " + parent.getName() + " of the subscription " +
+                subscription.getName() + ".", error);
+    }
+
+    private static String getMessage(Throwable error) {
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+}
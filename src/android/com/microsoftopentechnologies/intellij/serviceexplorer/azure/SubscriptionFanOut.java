@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014 Microsoft Open Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.microsoftopentechnologies.intellij.serviceexplorer.azure;
+
+import com.microsoftopentechnologies.intellij.components.MSOpenTechToolsApplication;
+import com.microsoftopentechnologies.intellij.helpers.ExecutorHelper;
+import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
+import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManagerImpl;
+import com.microsoftopentechnologies.intellij.model.ms.Subscription;
+import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Loads the nodes a service explorer module shows for each subscription. All subscriptions are
+// queried at the same time, at most maxParallelSubscriptions of them across all modules, and the
+// nodes of a subscription are merged into the module as soon as they arrive: nodes the module
+// already shows are updated in place by ID and only new ones are added. Nodes that no subscription
+// returned anymore are removed once all of them are done. A subscription that fails shows up as a
+// SubscriptionErrorNode instead of failing the whole module and keeps the nodes it had until it
+// can be loaded again, so a transient error doesn't collapse its part of the tree. The queries
+// run on a pool of their own: they fan out on the SDK executor themselves and must not hold
+// its threads while they wait.
+public class SubscriptionFanOut {
+    private static final int DEFAULT_MAX_PARALLEL_SUBSCRIPTIONS = 8;
+
+    public interface SubscriptionLoader {
+        // loads the nodes of a subscription and adds them with addNodes, in parts if they come in parts
+        void load(@NotNull Subscription subscription, @NotNull SubscriptionFanOut fanOut) throws Exception;
+    }
+
+    // singleton executor instance
+    private static ExecutorService executor = null;
+
+    private final Node module;
+
+    // the IDs of the nodes loaded so far and the subscriptions that failed; guarded by "this"
+    private final Set<String> loadedIds = new HashSet<String>();
+    private final Set<String> failedSubscriptionIds = new HashSet<String>();
+
+    private SubscriptionFanOut(@NotNull Node module) {
+        this.module = module;
+    }
+
+    // Loads the nodes of all subscriptions into the module and returns when all of them are done.
+    // Only failing to list the subscriptions fails the load.
+    public static void load(@NotNull final Node module, @NotNull final SubscriptionLoader loader)
+            throws AzureCmdException {
+        List<Subscription> subscriptions = AzureRestAPIManagerImpl.getManager().getSubscriptionList();
+
+        if (subscriptions == null) {
+            module.syncChildNodes(Collections.<Node>emptyList());
+            return;
+        }
+
+        final SubscriptionFanOut fanOut = new SubscriptionFanOut(module);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (final Subscription subscription : subscriptions) {
+            futures.add(getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loader.load(subscription, fanOut);
+                    } catch (Throwable t) {
+                        fanOut.addError(subscription, t);
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ignored) {
+                    // the loaders report their errors as error nodes
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+
+            // what was loaded so far is merged, the other nodes stay until the next refresh
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        fanOut.retainLoadedNodes();
+    }
+
+    // removes the nodes that no subscription returned anymore, except those of the subscriptions
+    // that failed: it's not known whether they still exist
+    private void retainLoadedNodes() {
+        synchronized (this) {
+            Set<String> retainedIds = new HashSet<String>(loadedIds);
+
+            for (Node childNode : module.getChildNodes().snapshot()) {
+                if (childNode.getSubscriptionId() != null &&
+                        failedSubscriptionIds.contains(childNode.getSubscriptionId())) {
+                    retainedIds.add(childNode.getId());
+                }
+            }
+
+            module.retainChildNodes(retainedIds);
+        }
+    }
+
+    private void addError(@NotNull Subscription subscription, @NotNull Throwable error) {
+        synchronized (this) {
+            failedSubscriptionIds.add(subscription.getId().toString());
+        }
+
+        addNodes(Collections.singletonList(new SubscriptionErrorNode(module, subscription, error)));
+    }
+
+    // called from the threads of all subscriptions at once
+    public void addNodes(@NotNull Collection<? extends Node> nodes) {
+        synchronized (this) {
+            for (Node node : nodes) {
+                loadedIds.add(node.getId());
+            }
+
+            module.mergeChildNodes(nodes);
+        }
+    }
+
+    @NotNull
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int parallelism = DEFAULT_MAX_PARALLEL_SUBSCRIPTIONS;
+
+            if (MSOpenTechToolsApplication.getCurrent() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings() != null &&
+                    MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelSubscriptions() > 0) {
+                parallelism = MSOpenTechToolsApplication.getCurrent().getSettings().getMaxParallelSubscriptions();
+            }
+
+            executor = ExecutorHelper.newBoundedExecutor("Azure Subscription Loader", parallelism);
+        }
+
+        return executor;
+    }
+}
@@ -51,6 +51,12 @@ public class CustomAPINode extends ScriptNodeBase {
         this.customAPI = customAPI;
     }
 
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        customAPI = ((CustomAPINode) node).customAPI;
+    }
+
     @Override
     protected Map<String, Class<? extends NodeActionListener>> initActions() {
         // register actions
@@ -28,6 +28,8 @@ import com.microsoftopentechnologies.intellij.model.ms.Subscription;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionListener;
+import com.microsoftopentechnologies.intellij.serviceexplorer.azure.SubscriptionFanOut;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -43,20 +45,33 @@ public class MobileServiceModule extends Node {
     }
 
     @Override
-    protected void refreshItems() throws AzureCmdException {
-        // remove all child mobile service nodes
-        removeAllChildNodes();
+    public boolean hasLazyChildNodes() {
+        return true;
+    }
+
+    // loading the module queries every subscription
+    @Override
+    public boolean canPrefetchChildNodes() {
+        return false;
+    }
 
-        // load all mobile services
-        ArrayList<Subscription> subscriptionList = AzureRestAPIManagerImpl.getManager().getSubscriptionList();
-        if(subscriptionList != null) {
-            for (Subscription subscription : subscriptionList) {
+    @Override
+    protected void refreshItems() throws AzureCmdException {
+        // load the mobile services of all subscriptions at once
+        SubscriptionFanOut.load(this, new SubscriptionFanOut.SubscriptionLoader() {
+            @Override
+            public void load(@NotNull Subscription subscription, @NotNull SubscriptionFanOut fanOut)
+                    throws Exception {
                 List<MobileService> mobileServices = AzureRestAPIManagerImpl.getManager().getServiceList(subscription.getId());
+                List<Node> nodes = new ArrayList<Node>();
+
                 for(MobileService mobileService : mobileServices) {
-                    addChildNode(new MobileServiceNode(this, mobileService));
+                    nodes.add(new MobileServiceNode(MobileServiceModule.this, mobileService));
                 }
+
+                fanOut.addNodes(nodes);
             }
-        }
+        });
     }
 
     @Override
@@ -17,8 +17,6 @@
 package com.microsoftopentechnologies.intellij.serviceexplorer.azure.mobileservice;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
 import com.intellij.openapi.application.ApplicationManager;
 import com.microsoftopentechnologies.intellij.forms.CustomAPIForm;
 import com.microsoftopentechnologies.intellij.forms.JobForm;
@@ -41,6 +39,7 @@ import javax.swing.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -52,7 +51,6 @@ public class MobileServiceNode extends Node {
     public static final String SCHEDULED_JOBS = "Scheduled Jobs";
 
     protected MobileService mobileService;
-    protected boolean childNodesLoaded = false;
 
     protected Node tablesNode;      // the parent node for all table nodes
     protected Node customAPIsNode;  // the parent node for all custom api nodes
@@ -64,6 +62,11 @@ public class MobileServiceNode extends Node {
         loadActions();
     }
 
+    @Override
+    public boolean hasLazyChildNodes() {
+        return isNodeRuntime();
+    }
+
     @Override
     protected void refreshItems() throws AzureCmdException {
         if (AzureRestAPIHelper.existsMobileService(mobileService.getName())) {
@@ -137,26 +140,25 @@ public class MobileServiceNode extends Node {
             Class<N> nodeClass,
             Class<E> modelClass) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
 
-        // create and add a new parent node for this item; we add the "node"
-        // variable as a child *before* adding the element nodes so that the
-        // service explorer tool window is automatically notified when they are
-        // added; if we called "addChildNode" after the children of "node"
-        // have been added then the service explorer tool window will not be
-        // notified of those new nodes
+        // create and add a new parent node for this item; the service explorer
+        // tool window takes the child nodes a node has when it starts showing
+        // it and is notified of the ones added after that, so the element
+        // nodes may be added before or after the parent node
         if (parentNode == null) {
             parentNode = new Node(mobileService.getName() + idSuffix, displayName, this, null, false);
             addChildNode(parentNode);
-        } else {
-            // clear the parent node since we are re-initializing it
-            parentNode.removeAllChildNodes();
         }
 
-        // create child table nodes for this node
+        // create child table nodes for this node; the nodes that are already
+        // there are updated in place
         Constructor<N> constructor = nodeClass.getConstructor(Node.class, modelClass);
+        List<Node> nodes = new ArrayList<Node>();
         for (E nodeElement : nodesList) {
-            parentNode.addChildNode((Node) constructor.newInstance(parentNode, nodeElement));
+            nodes.add((Node) constructor.newInstance(parentNode, nodeElement));
         }
 
+        parentNode.syncChildNodes(nodes);
+
         return parentNode;
     }
 
@@ -178,18 +180,26 @@ public class MobileServiceNode extends Node {
     protected void onNodeClick(NodeActionEvent event) {
         // we attempt loading the services only if we haven't already
         // loaded them
-        if (!childNodesLoaded) {
-            Futures.addCallback(load(), new FutureCallback<List<Node>>() {
-                @Override
-                public void onSuccess(List<Node> nodes) {
-                    childNodesLoaded = true;
-                }
+        loadChildNodesIfNeeded();
+    }
 
-                @Override
-                public void onFailure(Throwable throwable) {
-                }
-            });
-        }
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        mobileService = ((MobileServiceNode) node).mobileService;
+    }
+
+    @Override
+    public String getSubscriptionId() {
+        return mobileService.getSubcriptionId() != null ? mobileService.getSubcriptionId().toString() : null;
+    }
+
+    @Override
+    public Map<String, String> getSnapshotProperties() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("State", mobileService.getState());
+        properties.put("Region", mobileService.getRegion());
+        return properties;
     }
 
     public MobileService getMobileService() {
@@ -214,7 +224,6 @@ public class MobileServiceNode extends Node {
                 @Override
                 public void run() {
                     // refresh the tables node
-                    tablesNode.removeAllChildNodes();
                     try {
                         loadServiceNode(
                                 AzureRestAPIManagerImpl.getManager().getTableList(
@@ -256,7 +265,6 @@ public class MobileServiceNode extends Node {
                 @Override
                 public void run() {
                     // refresh the apis node
-                    customAPIsNode.removeAllChildNodes();
                     try {
                         loadServiceNode(
                                 AzureRestAPIManagerImpl.getManager().getAPIList(
@@ -298,7 +306,6 @@ public class MobileServiceNode extends Node {
                 @Override
                 public void run() {
                     // refresh the jobs node
-                    jobsNode.removeAllChildNodes();
                     try {
                         loadServiceNode(
                                 AzureRestAPIManagerImpl.getManager().listJobs(
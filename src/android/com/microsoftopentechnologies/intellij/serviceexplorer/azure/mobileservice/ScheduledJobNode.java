@@ -49,6 +49,12 @@ public class ScheduledJobNode extends ScriptNodeBase {
         this.job = job;
     }
 
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        job = ((ScheduledJobNode) node).job;
+    }
+
     @Override
     protected Map<String, Class<? extends NodeActionListener>> initActions() {
         // register actions
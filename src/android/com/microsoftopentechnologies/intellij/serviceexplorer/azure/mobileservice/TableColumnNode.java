@@ -27,4 +27,10 @@ public class TableColumnNode extends Node {
         super(column.getName(), column.toString(), parent, ICON_PATH, false);
         this.column = column;
     }
+
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        column = ((TableColumnNode) node).column;
+    }
 }
\ No newline at end of file
@@ -16,8 +16,6 @@
 
 package com.microsoftopentechnologies.intellij.serviceexplorer.azure.mobileservice;
 
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
 import com.microsoftopentechnologies.intellij.forms.TableForm;
 import com.microsoftopentechnologies.intellij.helpers.UIHelper;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
@@ -30,6 +28,7 @@ import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionListener;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -38,7 +37,6 @@ public class TableNode extends Node {
     public static final String SCRIPTS = "Scripts";
     public static final String COLUMNS = "Columns";
     protected Table table;
-    protected boolean childNodesLoaded = false;
 
     protected Node scriptsNode; // parent node for all script nodes
     protected Node columnsNode; // parent node for all column nodes
@@ -48,6 +46,17 @@ public class TableNode extends Node {
         this.table = table;
     }
 
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        table = ((TableNode) node).table;
+    }
+
+    @Override
+    public boolean hasLazyChildNodes() {
+        return true;
+    }
+
     @Override
     protected void refreshItems() throws AzureCmdException {
         // get the parent MobileServiceNode node
@@ -73,19 +82,17 @@ public class TableNode extends Node {
     }
 
     protected Node loadScriptNode(Table tableInfo) {
-        // create and add a new parent node for this item; we add the "node"
-        // variable as a child *before* adding the element nodes so that the
-        // service explorer tool window is automatically notified when they are
-        // added; if we called "addChildNode" after the children of "node"
-        // have been added then the service explorer tool window will not be
-        // notified of those new nodes
+        // create and add a new parent node for this item; the service explorer
+        // tool window takes the child nodes a node has when it starts showing
+        // it and is notified of the ones added after that, so the element
+        // nodes may be added before or after the parent node
         if(scriptsNode == null) {
             scriptsNode = new Node(table.getName() + "_script", SCRIPTS, this, null, false);
             addChildNode(scriptsNode);
-        } else {
-            scriptsNode.removeAllChildNodes();
         }
 
+        List<Node> scriptNodes = new ArrayList<Node>();
+
         for (String operation : Script.getOperationList()) {
             Script s = new Script();
             s.setOperation(operation);
@@ -98,32 +105,34 @@ public class TableNode extends Node {
                 }
             }
 
-            scriptsNode.addChildNode(new TableScriptNode(scriptsNode, s));
+            scriptNodes.add(new TableScriptNode(scriptsNode, s));
         }
 
+        scriptsNode.syncChildNodes(scriptNodes);
+
         return scriptsNode;
     }
 
     protected Node loadColumnNode(Table tableInfo) {
-        // create and add a new parent node for this item; we add the "node"
-        // variable as a child *before* adding the element nodes so that the
-        // service explorer tool window is automatically notified when they are
-        // added; if we called "addChildNode" after the children of "node"
-        // have been added then the service explorer tool window will not be
-        // notified of those new nodes
+        // create and add a new parent node for this item; the service explorer
+        // tool window takes the child nodes a node has when it starts showing
+        // it and is notified of the ones added after that, so the element
+        // nodes may be added before or after the parent node
         if(columnsNode == null) {
             columnsNode = new Node(table.getName() + "_column", COLUMNS, this, null, false);
             addChildNode(columnsNode);
-        } else {
-            columnsNode.removeAllChildNodes();
         }
 
+        List<Node> columnNodes = new ArrayList<Node>();
+
         for (Column col : tableInfo.getColumns()) {
             if (!col.getName().startsWith("__")) {
-                columnsNode.addChildNode(new TableColumnNode(columnsNode, col));
+                columnNodes.add(new TableColumnNode(columnsNode, col));
             }
         }
 
+        columnsNode.syncChildNodes(columnNodes);
+
         return columnsNode;
     }
 
@@ -131,18 +140,7 @@ public class TableNode extends Node {
     protected void onNodeClick(NodeActionEvent event) {
         // we attempt loading the services only if we haven't already
         // loaded them
-        if(!childNodesLoaded) {
-            Futures.addCallback(load(), new FutureCallback<List<Node>>() {
-                @Override
-                public void onSuccess(List<Node> nodes) {
-                    childNodesLoaded = true;
-                }
-
-                @Override
-                public void onFailure(Throwable throwable) {
-                }
-            });
-        }
+        loadChildNodesIfNeeded();
     }
 
     public class EditTableAction extends NodeActionListener {
@@ -49,6 +49,12 @@ public class TableScriptNode extends ScriptNodeBase {
         this.script = script;
     }
 
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        script = ((TableScriptNode) node).script;
+    }
+
     @Override
     protected void onNodeClick(NodeActionEvent event) {
         onNodeClickInternal(script);
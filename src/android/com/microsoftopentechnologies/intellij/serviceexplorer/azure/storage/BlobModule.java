@@ -56,7 +56,6 @@ public class BlobModule extends Node {
             form.setOnCreate(new Runnable() {
                 @Override
                 public void run() {
-                    parent.removeAllChildNodes();
                     parent.load();
                 }
             });
@@ -48,11 +48,11 @@ public class ContainerNode extends Node {
     private static final String ICON_PATH = "container.png";
     private static final String ACTION_DELETE = "Delete";
 
-    private final BlobContainer blobContainer;
-    private final StorageAccount storageAccount;
+    private BlobContainer blobContainer;
+    private StorageAccount storageAccount;
 
     public ContainerNode(final Node parent, StorageAccount sa, BlobContainer bc) {
-        super(CONTAINER_MODULE_ID, bc.getName(), parent, ICON_PATH, true);
+        super(CONTAINER_MODULE_ID + "/" + bc.getName(), bc.getName(), parent, ICON_PATH, true);
 
         blobContainer = bc;
         storageAccount = sa;
@@ -135,6 +135,13 @@ public class ContainerNode extends Node {
         super.addAction(action);
     }
 
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        blobContainer = ((ContainerNode) node).blobContainer;
+        storageAccount = ((ContainerNode) node).storageAccount;
+    }
+
 
     @Override
     protected Map<String, Class<? extends NodeActionListener>> initActions() {
@@ -164,7 +171,6 @@ public class ContainerNode extends Node {
                         try {
                             AzureSDKManagerImpl.getManager().deleteBlobContainer(storageAccount, blobContainer);
 
-                            parent.removeAllChildNodes();
                             parent.load();
                         } catch (AzureCmdException ex) {
                             UIHelper.showException("Error deleting blob storage", ex, "Service explorer", false, true);
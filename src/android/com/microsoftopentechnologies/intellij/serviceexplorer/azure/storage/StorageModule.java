@@ -20,14 +20,14 @@ import com.intellij.openapi.project.Project;
 import com.microsoftopentechnologies.intellij.forms.CreateStorageAccountForm;
 import com.microsoftopentechnologies.intellij.helpers.UIHelper;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
-import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManager;
-import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManagerImpl;
 import com.microsoftopentechnologies.intellij.helpers.azure.sdk.AzureSDKManagerImpl;
 import com.microsoftopentechnologies.intellij.model.ms.Subscription;
 import com.microsoftopentechnologies.intellij.model.storage.StorageAccount;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionListener;
+import com.microsoftopentechnologies.intellij.serviceexplorer.azure.SubscriptionFanOut;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -54,20 +54,33 @@ public class StorageModule extends Node {
     }
 
     @Override
-    protected void refreshItems() throws AzureCmdException {
-        removeAllChildNodes();
+    public boolean hasLazyChildNodes() {
+        return true;
+    }
+
+    // loading the module queries every subscription
+    @Override
+    public boolean canPrefetchChildNodes() {
+        return false;
+    }
 
-        // load all VMs
-        ArrayList<Subscription> subscriptionList = AzureRestAPIManagerImpl.getManager().getSubscriptionList();
-        if(subscriptionList != null) {
-            for (Subscription subscription : subscriptionList) {
+    @Override
+    protected void refreshItems() throws AzureCmdException {
+        // load the storage accounts of all subscriptions at once
+        SubscriptionFanOut.load(this, new SubscriptionFanOut.SubscriptionLoader() {
+            @Override
+            public void load(@NotNull Subscription subscription, @NotNull SubscriptionFanOut fanOut)
+                    throws Exception {
                 List<StorageAccount> storageAccounts = AzureSDKManagerImpl.getManager().getStorageAccounts(subscription.getId().toString());
+                List<Node> nodes = new ArrayList<Node>();
+
                 for (StorageAccount sm : storageAccounts) {
-                    addChildNode(new StorageNode(this, sm));
+                    nodes.add(new StorageNode(StorageModule.this, sm));
                 }
-            }
-        }
 
+                fanOut.addNodes(nodes);
+            }
+        });
     }
 
     private class CreateStorageAccountAction extends NodeActionListener {
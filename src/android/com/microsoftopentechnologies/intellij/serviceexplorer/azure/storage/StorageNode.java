@@ -28,7 +28,7 @@ import java.util.*;
 
 public class StorageNode extends Node {
     private static final String WAIT_ICON_PATH = "storageaccount.png";
-    private final StorageAccount storageAccount;
+    private StorageAccount storageAccount;
 
     public StorageNode(Node parent, StorageAccount sm) {
         super(sm.getName(), sm.getName(), parent, WAIT_ICON_PATH, true);
@@ -37,21 +37,51 @@ public class StorageNode extends Node {
 
     @Override
     protected void onNodeClick(NodeActionEvent e) {
-        this.load();
+        loadChildNodesIfNeeded();
+    }
+
+    @Override
+    public boolean hasLazyChildNodes() {
+        return true;
     }
 
     @Override
     protected void refreshItems() throws AzureCmdException {
+        List<Node> containerNodes = new ArrayList<Node>();
 
-        removeAllChildNodes();
+        for (BlobContainer blobContainer : AzureSDKManagerImpl.getManager().getBlobContainers(storageAccount)) {
+            containerNodes.add(new ContainerNode(this, storageAccount, blobContainer));
+        }
 
+        // the containers that are already shown are kept
         Node blobsNode = new BlobModule(this, storageAccount);
+        Node existingBlobsNode = findChildNodeById(blobsNode.getId());
 
-        for (BlobContainer blobContainer : AzureSDKManagerImpl.getManager().getBlobContainers(storageAccount)) {
-            blobsNode.addChildNode(new ContainerNode(this, storageAccount, blobContainer));
+        if (existingBlobsNode != null) {
+            existingBlobsNode.syncChildNodes(containerNodes);
+        } else {
+            blobsNode.syncChildNodes(containerNodes);
+            addChildNode(blobsNode);
         }
+    }
 
-        addChildNode(blobsNode);
+    @Override
+    public String getSubscriptionId() {
+        return storageAccount.getSubscriptionId();
+    }
+
+    @Override
+    public Map<String, String> getSnapshotProperties() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("Type", storageAccount.getType());
+        properties.put("Location", storageAccount.getLocation());
+        return properties;
+    }
+
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        storageAccount = ((StorageNode) node).storageAccount;
     }
 
 }
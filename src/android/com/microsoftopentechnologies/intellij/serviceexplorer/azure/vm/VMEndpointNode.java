@@ -20,6 +20,8 @@ import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
 import com.microsoftopentechnologies.intellij.model.vm.Endpoint;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 
+import java.util.Arrays;
+
 public class VMEndpointNode extends Node {
     public static final String ICON_PATH = "endpoint.png";
     protected Endpoint endpoint;
@@ -27,22 +29,37 @@ public class VMEndpointNode extends Node {
     public VMEndpointNode(Node parent, Endpoint endpoint) {
         super(endpoint.getName(), endpoint.getName(), parent, ICON_PATH, false);
         this.endpoint = endpoint;
+
+        refreshItemsInternal();
     }
 
     @Override
     protected void refreshItems() throws AzureCmdException {
+        refreshItemsInternal();
+    }
+
+    @Override
+    protected void update(Node node) {
+        super.update(node);
+        endpoint = ((VMEndpointNode) node).endpoint;
+
+        refreshItemsInternal();
+    }
+
+    private void refreshItemsInternal() {
         // create child nodes for the protocol, public and private ports
-        addChildNode(new Node(
-                getName() + "_protocol",
-                "Protocol: " + endpoint.getProtocol(),
-                this, null, false));
-        addChildNode(new Node(
-                getName() + "_public_port",
-                "Public Port: " + endpoint.getPublicPort(),
-                this, null, false));
-        addChildNode(new Node(
-                getName() + "_private_port",
-                "Private Port: " + endpoint.getPrivatePort(),
-                this, null, false));
+        syncChildNodes(Arrays.asList(
+                new Node(
+                        getName() + "_protocol",
+                        "Protocol: " + endpoint.getProtocol(),
+                        this, null, false),
+                new Node(
+                        getName() + "_public_port",
+                        "Public Port: " + endpoint.getPublicPort(),
+                        this, null, false),
+                new Node(
+                        getName() + "_private_port",
+                        "Private Port: " + endpoint.getPrivatePort(),
+                        this, null, false)));
     }
 }
@@ -16,6 +16,10 @@
 package com.microsoftopentechnologies.intellij.serviceexplorer.azure.vm;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.microsoftopentechnologies.intellij.helpers.UIHelper;
@@ -25,10 +29,13 @@ import com.microsoftopentechnologies.intellij.model.vm.Endpoint;
 import com.microsoftopentechnologies.intellij.model.vm.VirtualMachine;
 import com.microsoftopentechnologies.intellij.model.vm.VirtualMachine.Status;
 import com.microsoftopentechnologies.intellij.serviceexplorer.*;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,7 +53,8 @@ public class VMNode extends Node {
     protected VirtualMachine virtualMachine;
 
     public VMNode(Node parent, VirtualMachine virtualMachine) throws AzureCmdException {
-        super(virtualMachine.getName(), virtualMachine.getName(), parent, WAIT_ICON_PATH, true);
+        super(virtualMachine.getSubscriptionId() + "/" + virtualMachine.getServiceName() + "/" + virtualMachine.getName(),
+                virtualMachine.getName(), parent, WAIT_ICON_PATH, true);
         this.virtualMachine = virtualMachine;
 
         // update vm icon based on vm status
@@ -73,19 +81,40 @@ public class VMNode extends Node {
         refreshItemsInternal();
     }
 
-    private void refreshItemsInternal() throws AzureCmdException {
+    @Override
+    protected void update(Node node) {
+        virtualMachine = ((VMNode) node).virtualMachine;
+
+        refreshItemsInternal();
+    }
+
+    private void refreshItemsInternal() {
         // update vm name and status icon
         setName(virtualMachine.getName());
         setIconPath(getVMIconPath());
 
         // load up the endpoint nodes
-        removeAllChildNodes();
+        List<Node> endpointNodes = new ArrayList<Node>();
 
         for (Endpoint endpoint : virtualMachine.getEndpoints()) {
-            VMEndpointNode vmEndPoint = new VMEndpointNode(this, endpoint);
-            addChildNode(vmEndPoint);
-            vmEndPoint.refreshItems();
+            endpointNodes.add(new VMEndpointNode(this, endpoint));
         }
+
+        syncChildNodes(endpointNodes);
+    }
+
+    @Override
+    public String getSubscriptionId() {
+        return virtualMachine.getSubscriptionId();
+    }
+
+    @Override
+    public Map<String, String> getSnapshotProperties() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("Status", virtualMachine.getStatus().toString());
+        properties.put("Cloud service", virtualMachine.getServiceName());
+        properties.put("Size", virtualMachine.getSize());
+        return properties;
     }
 
     @Override
@@ -130,7 +159,7 @@ public class VMNode extends Node {
         }
 
         @Override
-        protected void runInBackground(NodeActionEvent e) throws AzureCmdException {
+        protected ListenableFuture<Void> runInBackgroundAsync(NodeActionEvent e) throws AzureCmdException {
             ApplicationManager.getApplication().invokeAndWait(new Runnable() {
                 @Override
                 public void run() {
@@ -147,21 +176,40 @@ public class VMNode extends Node {
                 }
             }, ModalityState.any());
 
-            if (optionDialog == JOptionPane.YES_OPTION) {
-                try {
-                    AzureSDKManagerImpl.getManager().deleteVirtualMachine(virtualMachine, false);
-                    ApplicationManager.getApplication().invokeLater(new Runnable() {
-                        @Override
-                        public void run() {
-                            // instruct parent node to remove this node
-                            getParent().removeDirectChildNode(VMNode.this);
-                        }
-                    });
-                } catch (AzureCmdException ex) {
-                    UIHelper.showException("Error deleting virtual machine", ex);
-                    throw ex;
-                }
+            if (optionDialog != JOptionPane.YES_OPTION) {
+                return Futures.immediateFuture(null);
             }
+
+            final SettableFuture<Void> future = SettableFuture.create();
+
+            try {
+                Futures.addCallback(AzureSDKManagerImpl.getManager().deleteVirtualMachine(virtualMachine, false),
+                        new FutureCallback<Void>() {
+                            @Override
+                            public void onSuccess(Void result) {
+                                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        // instruct parent node to remove this node
+                                        getParent().removeDirectChildNode(VMNode.this);
+                                    }
+                                });
+
+                                future.set(null);
+                            }
+
+                            @Override
+                            public void onFailure(@NotNull Throwable throwable) {
+                                UIHelper.showException("Error deleting virtual machine", throwable);
+                                future.setException(throwable);
+                            }
+                        });
+            } catch (AzureCmdException ex) {
+                UIHelper.showException("Error deleting virtual machine", ex);
+                throw ex;
+            }
+
+            return future;
         }
     }
 
@@ -200,7 +248,7 @@ public class VMNode extends Node {
         }
 
         @Override
-        protected void runInBackground(NodeActionEvent e) throws AzureCmdException {
+        protected ListenableFuture<Void> runInBackgroundAsync(NodeActionEvent e) throws AzureCmdException {
             ApplicationManager.getApplication().invokeAndWait(new Runnable() {
                 @Override
                 public void run() {
@@ -215,21 +263,41 @@ public class VMNode extends Node {
                 }
             }, ModalityState.any());
 
-            if (optionDialog == JOptionPane.YES_OPTION) {
-                try {
-                    runVMAction();
+            if (optionDialog != JOptionPane.YES_OPTION) {
+                return Futures.immediateFuture(null);
+            }
 
-                    // reload vm details
-                    refreshItems();
-                } catch (AzureCmdException ex) {
-                    UIHelper.showException("Error " + progressMessage + " " + virtualMachine.getName(), ex);
-                    throw ex;
-                }
+            final SettableFuture<Void> future = SettableFuture.create();
+
+            try {
+                // the node stays busy while Azure runs the operation
+                Futures.addCallback(runVMAction(), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        try {
+                            // reload vm details
+                            refreshItems();
+                            future.set(null);
+                        } catch (AzureCmdException ex) {
+                            onFailure(ex);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NotNull Throwable throwable) {
+                        UIHelper.showException("Error " + progressMessage + " " + virtualMachine.getName(), throwable);
+                        future.setException(throwable);
+                    }
+                });
+            } catch (AzureCmdException ex) {
+                UIHelper.showException("Error " + progressMessage + " " + virtualMachine.getName(), ex);
+                throw ex;
             }
-        }
 
-        protected void runVMAction() throws AzureCmdException {
+            return future;
         }
+
+        protected abstract ListenableFuture<Void> runVMAction() throws AzureCmdException;
     }
 
     public class ShutdownVMAction extends VMNodeActionListener {
@@ -242,8 +310,8 @@ public class VMNode extends Node {
         }
 
         @Override
-        protected void runVMAction() throws AzureCmdException {
-            AzureSDKManagerImpl.getManager().shutdownVirtualMachine(virtualMachine, true);
+        protected ListenableFuture<Void> runVMAction() throws AzureCmdException {
+            return AzureSDKManagerImpl.getManager().shutdownVirtualMachine(virtualMachine, true);
         }
     }
 
@@ -256,8 +324,8 @@ public class VMNode extends Node {
         }
 
         @Override
-        protected void runVMAction() throws AzureCmdException {
-            AzureSDKManagerImpl.getManager().startVirtualMachine(virtualMachine);
+        protected ListenableFuture<Void> runVMAction() throws AzureCmdException {
+            return AzureSDKManagerImpl.getManager().startVirtualMachine(virtualMachine);
         }
     }
 
@@ -270,8 +338,8 @@ public class VMNode extends Node {
         }
 
         @Override
-        protected void runVMAction() throws AzureCmdException {
-            AzureSDKManagerImpl.getManager().restartVirtualMachine(virtualMachine);
+        protected ListenableFuture<Void> runVMAction() throws AzureCmdException {
+            return AzureSDKManagerImpl.getManager().restartVirtualMachine(virtualMachine);
         }
     }
 }
\ No newline at end of file
@@ -16,15 +16,17 @@
 
 package com.microsoftopentechnologies.intellij.serviceexplorer.azure.vm;
 
+import com.microsoftopentechnologies.intellij.helpers.CallableSingleArg;
 import com.microsoftopentechnologies.intellij.helpers.azure.AzureCmdException;
-import com.microsoftopentechnologies.intellij.helpers.azure.rest.AzureRestAPIManagerImpl;
 import com.microsoftopentechnologies.intellij.helpers.azure.sdk.AzureSDKManagerImpl;
 import com.microsoftopentechnologies.intellij.model.ms.Subscription;
 import com.microsoftopentechnologies.intellij.model.vm.VirtualMachine;
 import com.microsoftopentechnologies.intellij.serviceexplorer.Node;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionEvent;
 import com.microsoftopentechnologies.intellij.serviceexplorer.NodeActionListener;
+import com.microsoftopentechnologies.intellij.serviceexplorer.azure.SubscriptionFanOut;
 import com.microsoftopentechnologies.intellij.wizards.createvm.CreateVMWizard;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,21 +41,42 @@ public class VMServiceModule extends Node {
         super(VM_SERVICE_MODULE_ID, BASE_MODULE_NAME, parent, ICON_PATH, true);
     }
 
+    @Override
+    public boolean hasLazyChildNodes() {
+        return true;
+    }
+
+    // loading the module queries every subscription
+    @Override
+    public boolean canPrefetchChildNodes() {
+        return false;
+    }
+
     @Override
     protected void refreshItems() throws AzureCmdException {
-        // remove all child nodes
-        removeAllChildNodes();
+        // load the VMs of all subscriptions at once
+        SubscriptionFanOut.load(this, new SubscriptionFanOut.SubscriptionLoader() {
+            @Override
+            public void load(@NotNull Subscription subscription, @NotNull final SubscriptionFanOut fanOut)
+                    throws Exception {
+                // VMs show up as soon as the cloud service they belong to has been loaded
+                AzureSDKManagerImpl.getManager().getVirtualMachines(subscription.getId().toString(),
+                        new CallableSingleArg<Void, List<VirtualMachine>>() {
+                            @Override
+                            public Void call(List<VirtualMachine> virtualMachines) throws Exception {
+                                List<Node> nodes = new ArrayList<Node>();
+
+                                for (VirtualMachine vm : virtualMachines) {
+                                    nodes.add(new VMNode(VMServiceModule.this, vm));
+                                }
 
-        // load all VMs
-        ArrayList<Subscription> subscriptionList = AzureRestAPIManagerImpl.getManager().getSubscriptionList();
-        if(subscriptionList != null) {
-            for (Subscription subscription : subscriptionList) {
-                List<VirtualMachine> virtualMachines = AzureSDKManagerImpl.getManager().getVirtualMachines(subscription.getId().toString());
-                for (VirtualMachine vm : virtualMachines) {
-                    addChildNode(new VMNode(this, vm));
-                }
+                                fanOut.addNodes(nodes);
+
+                                return null;
+                            }
+                        });
             }
-        }
+        });
     }
 
     @Override
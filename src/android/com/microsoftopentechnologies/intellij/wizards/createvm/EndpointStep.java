@@ -48,6 +48,7 @@ import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Vector;
 
 public class EndpointStep extends WizardStep<CreateVMWizardModel> {
@@ -255,7 +256,7 @@ public class EndpointStep extends WizardStep<CreateVMWizardModel> {
                         @Override
                         public void run() {
                             try {
-                                node.addChildNode(new VMNode(node, vm));
+                                node.mergeChildNodes(Collections.singletonList(new VMNode(node, vm)));
                             } catch (AzureCmdException e) {
                                 UIHelper.showException("An error occurred while trying to refresh the list of virtual machines",
                                         e,